@@ -0,0 +1,429 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package midsem.part2;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Builds convex hulls of large point sets (10^8 points and more) with Andrew's monotone chain
+ * algorithm. Points come as parallel arrays of coordinates, x (e.g. latitude) and y (e.g.
+ * longitude), so no object is made per point. Points are ordered by x, then y, with a stable
+ * radix sort of their indices, 16 bits of a coordinate per pass, and the lower and upper hulls
+ * are then built in one sweep each. Points inside the octagon of the extreme points are
+ * dropped before sorting. Orientation tests are exact: with 128-bit products for int
+ * and long coordinates, and with a floating point filter backed by BigDecimal for doubles.
+ *
+ * A hull is returned as the indices of its vertices in counterclockwise order, starting at the
+ * point with the smallest x (and the smallest y among those). Points on the hull's edges but
+ * not at its corners, and repeated points, are left out.
+ *
+ * @author aladago
+ */
+public class MonotoneChainHull {
+
+    private static final int RADIX_BITS = 16;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int DIGIT_MASK = RADIX - 1;
+    private static final int FILTER_SAMPLE_SIZE = 1024;
+    // Shewchuk's bound on the rounding error of a double orientation test, relative to its terms
+    private static final double ORIENTATION_ERROR = (3 + 16 * Math.ulp(0.5)) * Math.ulp(0.5);
+
+    /**
+     * The turn the path a, b, c takes: positive to the left, negative to the right, 0 for none
+     */
+    private interface Orientation {
+
+        int turn(int a, int b, int c);
+    }
+
+    /**
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @return the indices of the hull's vertices, counterclockwise
+     */
+    public int[] hull(int[] xs, int[] ys) {
+        int n = checkLengths(xs.length, ys.length);
+        // differences of ints fit in a long, their products need 128 bits
+        Orientation orientation = (a, b, c) -> compareProducts(
+                (long) xs[b] - xs[a], (long) ys[c] - ys[a], (long) ys[b] - ys[a], (long) xs[c] - xs[a]);
+        int[] order = new int[n + 2];
+        int m = candidates(order, n, extremes(xs, ys), orientation);
+        int[] temp = new int[m + 2];
+        int[] counts = new int[RADIX + 1];
+        // least significant digits first, so the sort ends ordered by x, then y
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, ys, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, xs, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        return this.chain(order, temp, m, isSamePoint(order, m, xs, ys), orientation);
+    }
+
+    /**
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @return the indices of the hull's vertices, counterclockwise
+     */
+    public int[] hull(long[] xs, long[] ys) {
+        int n = checkLengths(xs.length, ys.length);
+        Orientation orientation = (a, b, c) -> turn(xs[a], ys[a], xs[b], ys[b], xs[c], ys[c]);
+        int[] order = new int[n + 2];
+        int m = candidates(order, n, extremes(xs, ys), orientation);
+        int[] temp = new int[m + 2];
+        int[] counts = new int[RADIX + 1];
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, ys, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, xs, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        return this.chain(order, temp, m, isSamePoint(order, m, xs, ys), orientation);
+    }
+
+    /**
+     * @param xs the x coordinates of the points, all finite
+     * @param ys the y coordinates of the points, all finite
+     * @return the indices of the hull's vertices, counterclockwise
+     */
+    public int[] hull(double[] xs, double[] ys) {
+        int n = checkLengths(xs.length, ys.length);
+        for (int i = 0; i < n; i++) {
+            if (!Double.isFinite(xs[i]) || !Double.isFinite(ys[i])) {
+                throw new RuntimeException("Point " + i + " (" + xs[i] + ", " + ys[i] + ") isn't finite");
+            }
+        }
+        Orientation orientation = (a, b, c) -> turn(xs[a], ys[a], xs[b], ys[b], xs[c], ys[c]);
+        int[] order = new int[n + 2];
+        int m = candidates(order, n, extremes(xs, ys), orientation);
+        int[] temp = new int[m + 2];
+        int[] counts = new int[RADIX + 1];
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, ys, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            if (radixPass(order, temp, m, xs, shift, counts)) {
+                int[] swap = order;
+                order = temp;
+                temp = swap;
+            }
+        }
+        return this.chain(order, temp, m, isSamePoint(order, m, xs, ys), orientation);
+    }
+
+    /**
+     * Andrew's monotone chain over points sorted by x, then y
+     *
+     * @param sorted the indices of the points in order
+     * @param hull room for the hull while it's built, at least n + 2 long
+     * @param samePoint whether the first and the last point, and so all, are the same
+     * @return the hull
+     */
+    private int[] chain(int[] sorted, int[] hull, int n, boolean samePoint, Orientation orientation) {
+        if (n == 0) {
+            return new int[0];
+        }
+        if (samePoint) {
+            return new int[]{sorted[0]};
+        }
+
+        // the lower hull, left to right, keeping only left turns
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int point = sorted[i];
+            while (size >= 2 && orientation.turn(hull[size - 2], hull[size - 1], point) <= 0) {
+                size--;
+            }
+            hull[size++] = point;
+        }
+        // the upper hull, right to left, on top of it
+        int lowerSize = size + 1;
+        for (int i = n - 2; i >= 0; i--) {
+            int point = sorted[i];
+            while (size >= lowerSize && orientation.turn(hull[size - 2], hull[size - 1], point) <= 0) {
+                size--;
+            }
+            hull[size++] = point;
+        }
+        // the first point closes the upper hull as well
+        return Arrays.copyOf(hull, size - 1);
+    }
+
+    /**
+     * Sorted by x, then y, all points are the same only if the first and the last are
+     */
+    private static boolean isSamePoint(int[] sorted, int n, int[] xs, int[] ys) {
+        return n > 0 && xs[sorted[0]] == xs[sorted[n - 1]] && ys[sorted[0]] == ys[sorted[n - 1]];
+    }
+
+    private static boolean isSamePoint(int[] sorted, int n, long[] xs, long[] ys) {
+        return n > 0 && xs[sorted[0]] == xs[sorted[n - 1]] && ys[sorted[0]] == ys[sorted[n - 1]];
+    }
+
+    private static boolean isSamePoint(int[] sorted, int n, double[] xs, double[] ys) {
+        return n > 0 && xs[sorted[0]] == xs[sorted[n - 1]] && ys[sorted[0]] == ys[sorted[n - 1]];
+    }
+
+    private static int checkLengths(int xLength, int yLength) {
+        if (xLength != yLength) {
+            throw new RuntimeException(xLength + " x coordinates don't match " + yLength + " y coordinates");
+        }
+        return xLength;
+    }
+
+    /**
+     * Drops the points strictly inside the octagon of the extreme points, which can't be on the
+     * hull (Akl and Toussaint's heuristic). For points spread evenly over a square or a disk,
+     * most points are dropped before sorting. A point strictly left of every edge of a closed
+     * path through some of the points is inside their hull, so ties and rounding in picking the
+     * extreme points can't drop a hull point. When a sample of the points shows that few
+     * would be dropped, all are kept without testing them
+     *
+     * @param candidates where to put the indices of the points kept
+     * @return how many points are kept
+     */
+    private static int candidates(int[] candidates, int n, int[] extremes, Orientation orientation) {
+        // points on a circle, say, are all on the hull; then testing them is a waste
+        int step = Math.max(1, n / FILTER_SAMPLE_SIZE);
+        int sampled = 0;
+        int inside = 0;
+        for (int i = 0; i < n; i += step) {
+            sampled++;
+            if (isInside(i, extremes, orientation)) {
+                inside++;
+            }
+        }
+        int m = 0;
+        if (inside * 4 < sampled) {
+            for (int i = 0; i < n; i++) {
+                candidates[m++] = i;
+            }
+            return m;
+        }
+        for (int i = 0; i < n; i++) {
+            if (!isInside(i, extremes, orientation)) {
+                candidates[m++] = i;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return whether a point is strictly left of every edge of the octagon
+     */
+    private static boolean isInside(int point, int[] extremes, Orientation orientation) {
+        int previous = extremes[extremes.length - 1];
+        for (int extreme : extremes) {
+            if (orientation.turn(previous, extreme, point) <= 0) {
+                return false;
+            }
+            previous = extreme;
+        }
+        return true;
+    }
+
+    /**
+     * @return the points farthest in 8 directions, counterclockwise around the hull from the
+     * one with the smallest x. Exact for int coordinates, which are all a double holds
+     */
+    private static int[] extremes(int[] xs, int[] ys) {
+        double[] directionX = {-1, -1, 0, 1, 1, 1, 0, -1};
+        double[] directionY = {0, -1, -1, -1, 0, 1, 1, 1};
+        int[] extremes = new int[directionX.length];
+        double[] farthest = new double[directionX.length];
+        Arrays.fill(farthest, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            for (int d = 0; d < directionX.length; d++) {
+                double distance = directionX[d] * x + directionY[d] * y;
+                if (distance > farthest[d]) {
+                    farthest[d] = distance;
+                    extremes[d] = i;
+                }
+            }
+        }
+        return extremes;
+    }
+
+    private static int[] extremes(long[] xs, long[] ys) {
+        double[] directionX = {-1, -1, 0, 1, 1, 1, 0, -1};
+        double[] directionY = {0, -1, -1, -1, 0, 1, 1, 1};
+        int[] extremes = new int[directionX.length];
+        double[] farthest = new double[directionX.length];
+        Arrays.fill(farthest, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            for (int d = 0; d < directionX.length; d++) {
+                double distance = directionX[d] * x + directionY[d] * y;
+                if (distance > farthest[d]) {
+                    farthest[d] = distance;
+                    extremes[d] = i;
+                }
+            }
+        }
+        return extremes;
+    }
+
+    private static int[] extremes(double[] xs, double[] ys) {
+        double[] directionX = {-1, -1, 0, 1, 1, 1, 0, -1};
+        double[] directionY = {0, -1, -1, -1, 0, 1, 1, 1};
+        int[] extremes = new int[directionX.length];
+        double[] farthest = new double[directionX.length];
+        Arrays.fill(farthest, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            for (int d = 0; d < directionX.length; d++) {
+                double distance = directionX[d] * x + directionY[d] * y;
+                if (distance > farthest[d]) {
+                    farthest[d] = distance;
+                    extremes[d] = i;
+                }
+            }
+        }
+        return extremes;
+    }
+
+    /**
+     * Stably sorts point indices by one 16 bit digit of a coordinate, flipping the sign bit so
+     * negative coordinates come first
+     *
+     * @return false, without moving anything, if every point has the same digit
+     */
+    private static boolean radixPass(int[] from, int[] to, int n, int[] coordinates, int shift, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < n; i++) {
+            counts[(((coordinates[from[i]] ^ Integer.MIN_VALUE) >>> shift) & DIGIT_MASK) + 1]++;
+        }
+        if (!isSpread(counts, n)) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            to[counts[((coordinates[from[i]] ^ Integer.MIN_VALUE) >>> shift) & DIGIT_MASK]++] = from[i];
+        }
+        return true;
+    }
+
+    private static boolean radixPass(int[] from, int[] to, int n, long[] coordinates, int shift, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < n; i++) {
+            counts[(int) (((coordinates[from[i]] ^ Long.MIN_VALUE) >>> shift) & DIGIT_MASK) + 1]++;
+        }
+        if (!isSpread(counts, n)) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            to[counts[(int) (((coordinates[from[i]] ^ Long.MIN_VALUE) >>> shift) & DIGIT_MASK)]++] = from[i];
+        }
+        return true;
+    }
+
+    /**
+     * Doubles are sorted by bit patterns whose unsigned order is their numeric order
+     */
+    private static boolean radixPass(int[] from, int[] to, int n, double[] coordinates, int shift, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < n; i++) {
+            counts[(int) ((sortableBits(coordinates[from[i]]) >>> shift) & DIGIT_MASK) + 1]++;
+        }
+        if (!isSpread(counts, n)) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            to[counts[(int) ((sortableBits(coordinates[from[i]]) >>> shift) & DIGIT_MASK)]++] = from[i];
+        }
+        return true;
+    }
+
+    private static long sortableBits(double value) {
+        // 0.0 stands for -0.0 too, they are the same coordinate
+        long bits = Double.doubleToRawLongBits(value + 0.0);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Turns the counts of digits (shifted by one) into the first index of every digit
+     *
+     * @return false if all n points have the same digit
+     */
+    private static boolean isSpread(int[] counts, int n) {
+        for (int digit = 1; digit <= RADIX; digit++) {
+            if (counts[digit] == n) {
+                return false;
+            }
+            counts[digit] += counts[digit - 1];
+        }
+        return true;
+    }
+
+    /**
+     * @return the sign of a * b - c * d, computed with 128 bit products
+     */
+    private static int compareProducts(long a, long b, long c, long d) {
+        long high = Math.multiplyHigh(a, b);
+        long otherHigh = Math.multiplyHigh(c, d);
+        if (high != otherHigh) {
+            return high < otherHigh ? -1 : 1;
+        }
+        return Long.compareUnsigned(a * b, c * d);
+    }
+
+    private static int turn(long ax, long ay, long bx, long by, long cx, long cy) {
+        long bax = bx - ax;
+        long cay = cy - ay;
+        long bay = by - ay;
+        long cax = cx - ax;
+        // differences of longs can overflow, then BigInteger takes over
+        if (((bx ^ ax) & (bx ^ bax)) < 0 || ((cy ^ ay) & (cy ^ cay)) < 0
+                || ((by ^ ay) & (by ^ bay)) < 0 || ((cx ^ ax) & (cx ^ cax)) < 0) {
+            BigInteger x = BigInteger.valueOf(ax);
+            BigInteger y = BigInteger.valueOf(ay);
+            return BigInteger.valueOf(bx).subtract(x).multiply(BigInteger.valueOf(cy).subtract(y))
+                    .subtract(BigInteger.valueOf(by).subtract(y).multiply(BigInteger.valueOf(cx).subtract(x)))
+                    .signum();
+        }
+        return compareProducts(bax, cay, bay, cax);
+    }
+
+    private static int turn(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (bx - ax) * (cy - ay);
+        double right = (by - ay) * (cx - ax);
+        double determinant = left - right;
+        // trust the sign only if the rounding error can't reach it
+        if (Math.abs(determinant) > ORIENTATION_ERROR * (Math.abs(left) + Math.abs(right))) {
+            return determinant > 0 ? 1 : -1;
+        }
+        BigDecimal x = new BigDecimal(ax);
+        BigDecimal y = new BigDecimal(ay);
+        return new BigDecimal(bx).subtract(x).multiply(new BigDecimal(cy).subtract(y))
+                .subtract(new BigDecimal(by).subtract(y).multiply(new BigDecimal(cx).subtract(x)))
+                .signum();
+    }
+}
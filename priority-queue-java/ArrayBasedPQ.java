@@ -1,4 +1,10 @@
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+
 /**
  *
  * @author aladago
@@ -6,12 +12,13 @@
  * @param <V> the value of the item
  */
 public class ArrayBasedPQ<E extends Comparable<? super E>, V>
-        implements PriorityQueue<E, V> {
+        implements PriorityQueue<E, V>, PQMetrics.Reporter {
 
     private Entity<E, V>[] entities;
     private static final int INITIAL_SIZE = 10;
     public static final int INDEX_OF_MAX_ENTITY = 0;
     private int numEntities;
+    private PQMetrics metrics;
 
     private static class Entity<E, V> {
 
@@ -78,6 +85,9 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
                     indexOfMaxEntity = i;
                 }
             }
+            if (this.metrics != null) {
+                this.metrics.comparisons(this.numEntities - 2);
+            }
             //once the maximum has been found, put the maximum at index 0
             //and replace the maximum by the last item in the array
             //reset the last item in the array to null
@@ -91,6 +101,38 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
         return maxEntity.value;
     }
 
+    /**
+     * Scans the array for the lowest priority in O(n)
+     *
+     * @return the item with the lowest priority
+     */
+    @Override
+    public V getMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get minimum entity from an empty queue");
+        }
+        return this.entities[this.indexOfMinEntity()].value;
+    }
+
+    /**
+     * Scans the array for the lowest priority and fills its place with the
+     * last item. The maximum stays at index 0
+     *
+     * @return the item with the lowest priority
+     */
+    @Override
+    public V removeMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove minimum entity from an empty queue");
+        }
+        int indexOfMinEntity = this.indexOfMinEntity();
+        V minEntity = this.entities[indexOfMinEntity].value;
+        this.entities[indexOfMinEntity] = this.entities[this.numEntities - 1];
+        this.entities[this.numEntities - 1] = null;
+        this.numEntities--;
+        return minEntity;
+    }
+
     /**
      * This method adds a new entity to the heap. post-condition: number of
      * entities increases by 1 and size of the array may increase
@@ -113,6 +155,9 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
         } else {
             this.entities[this.numEntities] = new Entity(p, data);
 
+            if (this.metrics != null) {
+                this.metrics.comparison();
+            }
             if (p.compareTo(this.entities[INDEX_OF_MAX_ENTITY].priority) == 1) {
                 this.swapEntities(INDEX_OF_MAX_ENTITY, numEntities);
             }
@@ -131,6 +176,16 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
         return this.numEntities;
     }
 
+    /**
+     * Starts or stops reporting comparisons and array resizes
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Reinitialize the queue
      */
@@ -156,6 +211,9 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
             if (this.entities[i].equals(entity)) {
                 this.entities[i].priority = newPriority;
 
+                if (this.metrics != null) {
+                    this.metrics.comparison();
+                }
                 //if the new priority is greater than the current highest priority, swap them
                 if (newPriority.compareTo(this.entities[INDEX_OF_MAX_ENTITY].priority) == 1) {
                     this.swapEntities(INDEX_OF_MAX_ENTITY, i);
@@ -164,6 +222,120 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
         }
     }
 
+    /**
+     * Adds many entities at once in O(n). The array is expanded at most once
+     * and the maximum is found with a single scan over the new entities
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+        if (priorities.length == 0) {
+            return;
+        }
+
+        int newSize = this.numEntities + priorities.length;
+        if (newSize > this.entities.length) {
+            this.expandHeap(Math.max(newSize, 2 * this.numEntities));
+        }
+
+        int indexOfMaxEntity = INDEX_OF_MAX_ENTITY;
+        for (int i = 0; i < priorities.length; i++) {
+            this.entities[this.numEntities + i] = new Entity<>(priorities[i], values[i]);
+            if (priorities[i].compareTo(this.entities[indexOfMaxEntity].priority) > 0) {
+                indexOfMaxEntity = this.numEntities + i;
+            }
+        }
+        this.swapEntities(INDEX_OF_MAX_ENTITY, indexOfMaxEntity);
+        this.numEntities = newSize;
+    }
+
+    /**
+     * Removes up to maxEntities entities in order of decreasing priority.
+     * Instead of scanning the whole array for every entity, the array is sorted
+     * once in O(n log n). The remaining entities stay sorted, so the maximum is
+     * still at index 0
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = Math.max(0, Math.min(maxEntities, this.numEntities));
+        if (drained == 0) {
+            return 0;
+        }
+
+        Arrays.sort(this.entities, 0, this.numEntities, (a, b) -> b.priority.compareTo(a.priority));
+        for (int i = 0; i < drained; i++) {
+            collection.add(this.entities[i].value);
+        }
+        System.arraycopy(this.entities, drained, this.entities, 0, this.numEntities - drained);
+        Arrays.fill(this.entities, this.numEntities - drained, this.numEntities, null);
+        this.numEntities -= drained;
+        return drained;
+    }
+
+    /**
+     * Visits the entities in array order, the maximum first
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (int i = 0; i < this.numEntities; i++) {
+            action.accept(this.entities[i].priority, this.entities[i].value);
+        }
+    }
+
+    /**
+     * Apart from the maximum the array is in no order, so this sorts a copy of
+     * the entities, O(n log n) before the first value
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        Entity<E, V>[] sorted = Arrays.copyOf(this.entities, this.numEntities);
+        Arrays.sort(sorted, (a, b) -> b.priority.compareTo(a.priority));
+        return Arrays.stream(sorted).map(entity -> entity.value).iterator();
+    }
+
+    /**
+     * Splits the array in place, without an encounter order
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        //only the spliterator of a parallel pipeline passes splits on to the array
+        return Arrays.stream(this.entities, 0, this.numEntities).parallel().unordered()
+                .map(entity -> entity.value).spliterator();
+    }
+
+    /**
+     * The maximum is at index 0, so with more than one item the minimum is
+     * among the others
+     */
+    private int indexOfMinEntity() {
+        int indexOfMinEntity = this.numEntities == 1 ? INDEX_OF_MAX_ENTITY : 1;
+        for (int i = 2; i < this.numEntities; i++) {
+            if (this.entities[i].priority.compareTo(this.entities[indexOfMinEntity].priority) < 0) {
+                indexOfMinEntity = i;
+            }
+        }
+        if (this.metrics != null) {
+            this.metrics.comparisons(Math.max(0, this.numEntities - 2));
+        }
+        return indexOfMinEntity;
+    }
+
     /**
      *
      * @param posOfFirstEntity
@@ -181,6 +353,9 @@ public class ArrayBasedPQ<E extends Comparable<? super E>, V>
      * new size of the array
      */
     private void expandHeap(int newSize) {
+        if (this.metrics != null) {
+            this.metrics.resize();
+        }
 
         Entity<E, V>[] updatedHeap = new Entity[newSize];
         System.arraycopy(this.entities, 0, updatedHeap, 0, this.numEntities);
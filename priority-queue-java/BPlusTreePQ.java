@@ -0,0 +1,713 @@
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An ordered priority queue for long priorities stored in a B+-tree. Unlike
+ * BSTBasedPQ, which allocates a node per entity and follows a pointer per
+ * comparison, every node holds up to 64 keys in contiguous primitive arrays,
+ * so a search touches a handful of cache lines per level and the tree is only
+ * log_64 n levels deep. The leaves are linked in both directions, giving
+ * ordered iteration, O(1) access to the maximum and the minimum, and range
+ * removal which unlinks whole subtrees at a time.
+ *
+ * Entities of equal priority are all kept, and removeMaxEntity returns them in
+ * the order they were added. Every entity gets a sequence number and the keys
+ * are ordered by priority and then by decreasing sequence number, so the
+ * earliest of the entities with the highest priority is the last key of the
+ * last leaf.
+ *
+ * Nodes are never merged; a node is freed when it becomes empty. For a queue,
+ * which removes from the ends, this keeps the tree as full as merging would
+ * at a fraction of the cost.
+ *
+ * @author aladago
+ * @param <V> the value of the entity
+ */
+public class BPlusTreePQ<V> implements PriorityQueue<Long, V>, Iterable<V> {
+
+    public static final int DEFAULT_NODE_CAPACITY = 64;
+
+    /**
+     * A leaf holds up to capacity entities, an inner node up to capacity
+     * children separated by capacity - 1 keys: every key in children[i + 1]
+     * is at least key i. The arrays have room for one more, so a node can be
+     * split after an insertion overflowed it
+     */
+    private static class Node {
+
+        final long[] priorities;
+        final long[] sequences;
+        //values for leaves, children for inner nodes
+        final Object[] values;
+        final Node[] children;
+        //entities in a leaf, children in an inner node
+        int size;
+        Node prev;
+        Node next;
+
+        Node(int capacity, boolean leaf) {
+            this.priorities = new long[capacity + 1];
+            this.sequences = new long[capacity + 1];
+            this.values = leaf ? new Object[capacity + 1] : null;
+            this.children = leaf ? null : new Node[capacity + 1];
+        }
+
+        boolean isLeaf() {
+            return this.children == null;
+        }
+
+        /**
+         * Leaves only ever hold values of the queue's V
+         */
+        @SuppressWarnings("unchecked")
+        <V> V value(int i) {
+            return (V) this.values[i];
+        }
+    }
+
+    private final int capacity;
+    private Node root;
+    //the leftmost and the rightmost leaf
+    private Node head;
+    private Node tail;
+    private int size;
+    private long nextSequence;
+    //the first key of the node created by the last split
+    private long splitPriority;
+    private long splitSequence;
+
+    public BPlusTreePQ() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     *
+     * @param nodeCapacity the number of keys in a node
+     */
+    public BPlusTreePQ(int nodeCapacity) {
+        if (nodeCapacity < 4) {
+            throw new RuntimeException("Can't create nodes with fewer than 4 keys");
+        }
+        this.capacity = nodeCapacity;
+        this.empty();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size < 1;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.tail.<V>value(this.tail.size - 1);
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public long getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.tail.priorities[this.tail.size - 1];
+    }
+
+    /**
+     *
+     * @return the value with the lowest priority. Among equal priorities the
+     * one added last
+     */
+    @Override
+    public V getMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get minimum entity from an empty queue");
+        }
+        return this.head.<V>value(0);
+    }
+
+    /**
+     *
+     * @return the lowest priority in the queue
+     */
+    public long getMinPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get minimum priority from an empty queue");
+        }
+        return this.head.priorities[0];
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+        Node leaf = this.tail;
+        int last = leaf.size - 1;
+        V maxEntity = leaf.<V>value(last);
+        if (leaf.size > 1 || leaf == this.root) {
+            leaf.values[last] = null;
+            leaf.size--;
+            this.size--;
+        } else {
+            this.remove(leaf.priorities[last], leaf.sequences[last]);
+        }
+        return maxEntity;
+    }
+
+    /**
+     *
+     * @return the value with the lowest priority, which is removed
+     */
+    @Override
+    public V removeMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove minimum entity from an empty queue");
+        }
+        V minEntity = this.head.<V>value(0);
+        this.remove(this.head.priorities[0], this.head.sequences[0]);
+        return minEntity;
+    }
+
+    @Override
+    public void addEntity(Long p, V data) {
+        this.addLongEntity(p.longValue(), data);
+    }
+
+    /**
+     * Adds an entity without boxing its priority
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     */
+    public void addLongEntity(long p, V data) {
+        Node sibling = this.insert(this.root, p, this.nextSequence++, data);
+        if (sibling != null) {
+            Node newRoot = new Node(this.capacity, false);
+            newRoot.children[0] = this.root;
+            newRoot.children[1] = sibling;
+            newRoot.priorities[0] = this.splitPriority;
+            newRoot.sequences[0] = this.splitSequence;
+            newRoot.size = 2;
+            this.root = newRoot;
+        }
+        this.size++;
+    }
+
+    /**
+     * Changes the priority of the earliest added entity with the given
+     * priority and value
+     */
+    @Override
+    public void changePriority(Long p, V data, Long newPriority) {
+        Node leaf = this.root;
+        while (!leaf.isLeaf()) {
+            leaf = leaf.children[BPlusTreePQ.childIndex(leaf, p, Long.MAX_VALUE)];
+        }
+        int pos = BPlusTreePQ.upperBound(leaf, p, Long.MAX_VALUE);
+        //the entities with priority p run from here over the following leaves
+        //and the earliest added is the last of them
+        long sequence = -1;
+        for (; leaf != null; leaf = leaf.next, pos = 0) {
+            for (; pos < leaf.size && leaf.priorities[pos] == p; pos++) {
+                if (leaf.values[pos].equals(data)) {
+                    sequence = leaf.sequences[pos];
+                }
+            }
+            if (pos < leaf.size) {
+                break;
+            }
+        }
+        if (sequence >= 0) {
+            this.remove(p, sequence);
+            this.addLongEntity(newPriority, data);
+        }
+    }
+
+    /**
+     * Removes every entity whose priority lies between lo and hi. Subtrees
+     * entirely inside the range are unlinked whole; only the sizes of their
+     * leaves are read
+     *
+     * @param lo the lowest priority removed
+     * @param hi the highest priority removed
+     * @return the number of entities removed
+     */
+    public int removeRange(long lo, long hi) {
+        if (lo > hi || this.isEmpty()) {
+            return 0;
+        }
+        int removed = this.removeRange(this.root, lo, hi);
+        this.size -= removed;
+        this.shrinkRoot();
+        return removed;
+    }
+
+    @Override
+    public void empty() {
+        this.root = new Node(this.capacity, true);
+        this.head = this.root;
+        this.tail = this.root;
+        this.size = 0;
+    }
+
+    /**
+     * Visits the entities in order of decreasing priority, which is the order
+     * removeMaxEntity would return them in
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super Long, ? super V> action) {
+        for (Node leaf = this.tail; leaf != null; leaf = leaf.prev) {
+            for (int i = leaf.size - 1; i >= 0; i--) {
+                action.accept(leaf.priorities[i], leaf.<V>value(i));
+            }
+        }
+    }
+
+    /**
+     * The queue must not be changed while the iterator is used
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            Node leaf = BPlusTreePQ.this.tail;
+            int pos = this.leaf.size - 1;
+
+            @Override
+            public boolean hasNext() {
+                return this.pos >= 0;
+            }
+
+            @Override
+            public V next() {
+                if (this.pos < 0) {
+                    throw new NoSuchElementException();
+                }
+                V value = this.leaf.<V>value(this.pos--);
+                if (this.pos < 0 && this.leaf.prev != null) {
+                    this.leaf = this.leaf.prev;
+                    this.pos = this.leaf.size - 1;
+                }
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<V> orderedIterator() {
+        return this.iterator();
+    }
+
+    /**
+     * Splits the leaves in place rather than taking the spliterator Iterable
+     * builds from the ordered leaf walk. The queue must not be changed while
+     * the spliterator is used
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new LeafSpliterator<>(this.head, 0, this.tail, this.tail.size, this.size);
+    }
+
+    /**
+     * Visits a range of the leaves, from an entity of the first leaf up to an
+     * entity of the last one. A split hands the leaves up to the middle one to
+     * the new spliterator, or half the entities once the range is in one leaf
+     */
+    private static class LeafSpliterator<V> implements Spliterator<V> {
+
+        private Node leaf;
+        private int index;
+        private final Node last;
+        //end of the range in the last leaf
+        private final int fence;
+        private long estimate;
+
+        LeafSpliterator(Node leaf, int index, Node last, int fence, long estimate) {
+            this.leaf = leaf;
+            this.index = index;
+            this.last = last;
+            this.fence = fence;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (this.index >= (this.leaf == this.last ? this.fence : this.leaf.size)) {
+                if (this.leaf == this.last) {
+                    return false;
+                }
+                this.leaf = this.leaf.next;
+                this.index = 0;
+            }
+            action.accept(this.leaf.<V>value(this.index++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            LeafSpliterator<V> prefix;
+            if (this.leaf == this.last) {
+                int middle = (this.index + this.fence) >>> 1;
+                if (middle == this.index) {
+                    return null;
+                }
+                prefix = new LeafSpliterator<>(this.leaf, this.index, this.leaf, middle, middle - this.index);
+                this.index = middle;
+                this.estimate = this.fence - middle;
+                return prefix;
+            }
+            Node middle = this.leaf;
+            for (Node ahead = this.leaf.next; ahead != this.last && ahead.next != this.last; ahead = ahead.next.next) {
+                middle = middle.next;
+            }
+            prefix = new LeafSpliterator<>(this.leaf, this.index, middle, middle.size, this.estimate >>> 1);
+            this.leaf = middle.next;
+            this.index = 0;
+            this.estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     * The queue must not be changed while the iterator is used
+     *
+     * @return the values in order of increasing priority
+     */
+    public Iterator<V> ascendingIterator() {
+        return new Iterator<V>() {
+            Node leaf = BPlusTreePQ.this.head;
+            int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.pos < this.leaf.size;
+            }
+
+            @Override
+            public V next() {
+                if (this.pos >= this.leaf.size) {
+                    throw new NoSuchElementException();
+                }
+                V value = this.leaf.<V>value(this.pos++);
+                if (this.pos == this.leaf.size && this.leaf.next != null) {
+                    this.leaf = this.leaf.next;
+                    this.pos = 0;
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * The number of levels, for comparing the shape of the tree with other
+     * trees
+     *
+     * @return 1 for a tree which is a single leaf
+     */
+    public int getHeight() {
+        int height = 1;
+        for (Node node = this.root; !node.isLeaf(); node = node.children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * Orders keys by priority, then by decreasing sequence number
+     */
+    private static int compare(long p1, long s1, long p2, long s2) {
+        if (p1 != p2) {
+            return p1 < p2 ? -1 : 1;
+        }
+        return Long.compare(s2, s1);
+    }
+
+    /**
+     *
+     * @return the child of an inner node whose range holds the key
+     */
+    private static int childIndex(Node node, long p, long sequence) {
+        int lo = 0;
+        int hi = node.size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BPlusTreePQ.compare(node.priorities[mid], node.sequences[mid], p, sequence) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     *
+     * @return the index of the first key of a leaf greater than the given key
+     */
+    private static int upperBound(Node leaf, long p, long sequence) {
+        int lo = 0;
+        int hi = leaf.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (BPlusTreePQ.compare(leaf.priorities[mid], leaf.sequences[mid], p, sequence) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Inserts a key into the subtree of a node
+     *
+     * @return the new right sibling if the node was split, whose first key is
+     * left in splitPriority and splitSequence, or null
+     */
+    private Node insert(Node node, long p, long sequence, V value) {
+        if (node.isLeaf()) {
+            int pos = BPlusTreePQ.upperBound(node, p, sequence);
+            int moved = node.size - pos;
+            System.arraycopy(node.priorities, pos, node.priorities, pos + 1, moved);
+            System.arraycopy(node.sequences, pos, node.sequences, pos + 1, moved);
+            System.arraycopy(node.values, pos, node.values, pos + 1, moved);
+            node.priorities[pos] = p;
+            node.sequences[pos] = sequence;
+            node.values[pos] = value;
+            node.size++;
+            return node.size > this.capacity ? this.splitLeaf(node) : null;
+        }
+
+        int i = BPlusTreePQ.childIndex(node, p, sequence);
+        Node newChild = this.insert(node.children[i], p, sequence, value);
+        if (newChild == null) {
+            return null;
+        }
+        //the new child goes right of child i, separated by key i
+        int moved = node.size - 1 - i;
+        System.arraycopy(node.priorities, i, node.priorities, i + 1, moved);
+        System.arraycopy(node.sequences, i, node.sequences, i + 1, moved);
+        System.arraycopy(node.children, i + 1, node.children, i + 2, moved);
+        node.priorities[i] = this.splitPriority;
+        node.sequences[i] = this.splitSequence;
+        node.children[i + 1] = newChild;
+        node.size++;
+        return node.size > this.capacity ? this.splitInner(node) : null;
+    }
+
+    private Node splitLeaf(Node leaf) {
+        Node right = new Node(this.capacity, true);
+        int left = leaf.size / 2;
+        right.size = leaf.size - left;
+        System.arraycopy(leaf.priorities, left, right.priorities, 0, right.size);
+        System.arraycopy(leaf.sequences, left, right.sequences, 0, right.size);
+        System.arraycopy(leaf.values, left, right.values, 0, right.size);
+        Arrays.fill(leaf.values, left, leaf.size, null);
+        leaf.size = left;
+
+        right.prev = leaf;
+        right.next = leaf.next;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        } else {
+            this.tail = right;
+        }
+        leaf.next = right;
+        this.splitPriority = right.priorities[0];
+        this.splitSequence = right.sequences[0];
+        return right;
+    }
+
+    /**
+     * Keeps the first half of the children; the key between the halves moves
+     * up to the parent
+     */
+    private Node splitInner(Node node) {
+        Node right = new Node(this.capacity, false);
+        int left = node.size / 2;
+        right.size = node.size - left;
+        System.arraycopy(node.children, left, right.children, 0, right.size);
+        System.arraycopy(node.priorities, left, right.priorities, 0, right.size - 1);
+        System.arraycopy(node.sequences, left, right.sequences, 0, right.size - 1);
+        Arrays.fill(node.children, left, node.size, null);
+        this.splitPriority = node.priorities[left - 1];
+        this.splitSequence = node.sequences[left - 1];
+        node.size = left;
+        return right;
+    }
+
+    /**
+     * Removes one key which must be in the tree
+     */
+    private void remove(long p, long sequence) {
+        this.remove(this.root, p, sequence);
+        this.size--;
+        this.shrinkRoot();
+    }
+
+    /**
+     *
+     * @return true if the node became empty and was unlinked
+     */
+    private boolean remove(Node node, long p, long sequence) {
+        if (node.isLeaf()) {
+            int pos = BPlusTreePQ.upperBound(node, p, sequence) - 1;
+            int moved = node.size - 1 - pos;
+            System.arraycopy(node.priorities, pos + 1, node.priorities, pos, moved);
+            System.arraycopy(node.sequences, pos + 1, node.sequences, pos, moved);
+            System.arraycopy(node.values, pos + 1, node.values, pos, moved);
+            node.size--;
+            node.values[node.size] = null;
+            if (node.size == 0 && node != this.root) {
+                this.unlink(node, node);
+                return true;
+            }
+            return false;
+        }
+
+        int i = BPlusTreePQ.childIndex(node, p, sequence);
+        if (this.remove(node.children[i], p, sequence)) {
+            this.removeChildren(node, i, i + 1);
+        }
+        return node.size == 0;
+    }
+
+    /**
+     *
+     * @return the number of entities removed from the subtree of the node
+     */
+    private int removeRange(Node node, long lo, long hi) {
+        if (node.isLeaf()) {
+            int from = BPlusTreePQ.upperBound(node, lo, Long.MAX_VALUE);
+            int to = BPlusTreePQ.upperBound(node, hi, Long.MIN_VALUE);
+            int removed = to - from;
+            if (removed <= 0) {
+                return 0;
+            }
+            System.arraycopy(node.priorities, to, node.priorities, from, node.size - to);
+            System.arraycopy(node.sequences, to, node.sequences, from, node.size - to);
+            System.arraycopy(node.values, to, node.values, from, node.size - to);
+            Arrays.fill(node.values, node.size - removed, node.size, null);
+            node.size -= removed;
+            if (node.size == 0 && node != this.root) {
+                this.unlink(node, node);
+            }
+            return removed;
+        }
+
+        int first = BPlusTreePQ.childIndex(node, lo, Long.MAX_VALUE);
+        int last = BPlusTreePQ.childIndex(node, hi, Long.MIN_VALUE);
+        int removed = 0;
+        //the children between the first and the last lie entirely in the range
+        if (last - first > 1) {
+            Node firstLeaf = node.children[first + 1];
+            while (!firstLeaf.isLeaf()) {
+                firstLeaf = firstLeaf.children[0];
+            }
+            Node lastLeaf = node.children[last - 1];
+            while (!lastLeaf.isLeaf()) {
+                lastLeaf = lastLeaf.children[lastLeaf.size - 1];
+            }
+            for (Node leaf = firstLeaf; leaf != lastLeaf.next; leaf = leaf.next) {
+                removed += leaf.size;
+            }
+            this.unlink(firstLeaf, lastLeaf);
+        }
+        removed += this.removeRange(node.children[first], lo, hi);
+        if (last != first) {
+            removed += this.removeRange(node.children[last], lo, hi);
+        }
+
+        //drop the children which are now empty
+        int kept = 0;
+        for (int i = 0; i < node.size; i++) {
+            Node child = node.children[i];
+            boolean covered = i > first && i < last;
+            if (covered || child.size == 0) {
+                continue;
+            }
+            if (kept > 0) {
+                //the lower bound of a child stays valid whatever was dropped before it
+                node.priorities[kept - 1] = node.priorities[i - 1];
+                node.sequences[kept - 1] = node.sequences[i - 1];
+            }
+            node.children[kept++] = child;
+        }
+        Arrays.fill(node.children, kept, node.size, null);
+        node.size = kept;
+        return removed;
+    }
+
+    /**
+     * Removes children from..to - 1 of an inner node with the keys between them
+     */
+    private void removeChildren(Node node, int from, int to) {
+        int count = to - from;
+        int moved = node.size - to;
+        System.arraycopy(node.children, to, node.children, from, moved);
+        //child i is bounded below by key i - 1; the first child needs no bound
+        int keyFrom = Math.max(from - 1, 0);
+        int keyTo = keyFrom + count;
+        System.arraycopy(node.priorities, keyTo, node.priorities, keyFrom, Math.max(node.size - 1 - keyTo, 0));
+        System.arraycopy(node.sequences, keyTo, node.sequences, keyFrom, Math.max(node.size - 1 - keyTo, 0));
+        Arrays.fill(node.children, node.size - count, node.size, null);
+        node.size -= count;
+    }
+
+    /**
+     * Takes the leaves first..last out of the list of leaves
+     */
+    private void unlink(Node first, Node last) {
+        if (first.prev != null) {
+            first.prev.next = last.next;
+        } else {
+            this.head = last.next;
+        }
+        if (last.next != null) {
+            last.next.prev = first.prev;
+        } else {
+            this.tail = first.prev;
+        }
+    }
+
+    /**
+     * Replaces a root with a single child by the child, and an empty tree by
+     * a single leaf
+     */
+    private void shrinkRoot() {
+        if (this.size == 0) {
+            this.empty();
+            return;
+        }
+        while (!this.root.isLeaf() && this.root.size == 1) {
+            this.root = this.root.children[0];
+        }
+    }
+}
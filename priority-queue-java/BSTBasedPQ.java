@@ -1,4 +1,14 @@
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 /**
  * Implements a priority queue using a binary search tree as the underlying data structure
  * @author aladago
@@ -6,10 +16,17 @@
  * @param <V> The value of the entity
  */
 public class BSTBasedPQ<E extends Comparable<? super E>, V>
-        implements PriorityQueue<E, V> {
+        implements PriorityQueue<E, V>, PQMetrics.Reporter {
 
     private BinaryNode<E, V> root;
+    //the leftmost node, null when the tree is empty
+    private BinaryNode<E, V> minNode;
     private int size;
+    private PQMetrics metrics;
+    //the number of nodes visited by the current insertion, tracked for the metrics
+    private int insertDepth;
+    //draining fewer entities than this removes them one by one instead of rebuilding the tree
+    private static final int REBUILD_DRAIN_THRESHOLD = 64;
 
     private static class BinaryNode<E, V> {
 
@@ -34,6 +51,7 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
 
     public BSTBasedPQ() {
         this.root = null;
+        this.minNode = null;
         this.size = 0;
     }
 
@@ -64,9 +82,56 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
     public V removeMaxEntity() {
         BinaryNode<E, V> maxNode = this.removeMaxEntity(this.root);
         this.size--;
+        if (maxNode == this.minNode) {
+            this.updateMin();
+        }
         return maxNode.value;
     }
 
+    /**
+     * Retrieves the entity with the lowest priority in O(1), from the cached
+     * leftmost node
+     *
+     * @return The value of the entity with the lowest priority without
+     * removing it
+     */
+    @Override
+    public V getMinEntity() {
+        if (this.minNode == null) {
+            throw new RuntimeException("Can't get min entity from an empty queue");
+        }
+        return this.minNode.value;
+    }
+
+    /**
+     * Removes the lowest priority item in the queue. The leftmost node has no
+     * left child, so it is replaced by its right subtree, and the next minimum
+     * is either the leftmost node of that subtree or its parent
+     *
+     * @return The value of the entity with the lowest priority
+     */
+    @Override
+    public V removeMinEntity() {
+        if (this.root == null) {
+            throw new RuntimeException("Can't remove node from an empty queue");
+        }
+
+        BinaryNode<E, V> parent = null;
+        BinaryNode<E, V> currentNode = this.root;
+        while (currentNode.leftChild != null) {
+            parent = currentNode;
+            currentNode = currentNode.leftChild;
+        }
+        if (parent == null) {
+            this.root = currentNode.rightChild;
+        } else {
+            parent.leftChild = currentNode.rightChild;
+        }
+        this.minNode = currentNode.rightChild != null ? this.findMin(currentNode.rightChild) : parent;
+        this.size--;
+        return currentNode.value;
+    }
+
     /**
      * Adds a new entity to the priority queue
      * @param p the priority of the new entity
@@ -74,8 +139,28 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
      */
     @Override
     public void addEntity(E p, V v) {
+        this.insertDepth = 0;
         this.root = this.insertEntity(p, v, this.root);
         this.size++;
+        if (this.minNode == null || p.compareTo(this.minNode.priority) < 0) {
+            //the new node is the leftmost
+            this.updateMin();
+        }
+        if (this.metrics != null) {
+            this.metrics.comparisons(this.insertDepth);
+            this.metrics.treeDepth(this.insertDepth + 1);
+        }
+    }
+
+    /**
+     * Starts or stops reporting comparisons and the depth reached by
+     * insertions
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
@@ -89,7 +174,8 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
     @Override
     public void changePriority(E oldPriority, V value, E newPriority) {
         BinaryNode<E, V> updatedNode = this.removeEntity(oldPriority);
-        this.insertEntity(newPriority, updatedNode.value, root);
+        this.root = this.insertEntity(newPriority, updatedNode.value, root);
+        this.updateMin();
     }
 
     /**
@@ -106,9 +192,257 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
      */
     public void empty(){
         this.root = null;
+        this.minNode = null;
         this.size = 0;
     }
 
+    /**
+     * Adds many entities at once. The tree is flattened in order, merged with
+     * the sorted new entities and rebuilt as a balanced tree, O(n + m log m) in
+     * total. Like addEntity, an entity whose priority is already in the tree is
+     * dropped
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+
+        @SuppressWarnings("unchecked")
+        BinaryNode<E, V>[] newNodes = (BinaryNode<E, V>[]) new BinaryNode<?, ?>[priorities.length];
+        for (int i = 0; i < newNodes.length; i++) {
+            newNodes[i] = new BinaryNode<>(priorities[i], values[i]);
+        }
+        Arrays.sort(newNodes, (a, b) -> a.priority.compareTo(b.priority));
+
+        ArrayList<BinaryNode<E, V>> existing = this.inOrderNodes();
+        ArrayList<BinaryNode<E, V>> merged = new ArrayList<>(existing.size() + newNodes.length);
+        int i = 0;
+        int j = 0;
+        while (i < existing.size() || j < newNodes.length) {
+            BinaryNode<E, V> next;
+            if (j == newNodes.length
+                    || (i < existing.size() && existing.get(i).priority.compareTo(newNodes[j].priority) <= 0)) {
+                next = existing.get(i++);
+            } else {
+                next = newNodes[j++];
+            }
+            //the first node of every priority wins, existing nodes come first
+            if (merged.isEmpty() || merged.get(merged.size() - 1).priority.compareTo(next.priority) != 0) {
+                merged.add(next);
+            }
+        }
+
+        this.root = this.buildBalanced(merged, 0, merged.size());
+        this.minNode = merged.isEmpty() ? null : merged.get(0);
+        //only the new entities which weren't dropped as duplicates are counted
+        this.size = merged.size();
+    }
+
+    /**
+     * Removes up to maxEntities entities in order of decreasing priority. Large
+     * drains flatten the tree once, take the entities from the end and rebuild
+     * the rest as a balanced tree in O(n)
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        if (maxEntities < REBUILD_DRAIN_THRESHOLD) {
+            int drained = 0;
+            while (drained < maxEntities && !this.isEmpty()) {
+                collection.add(this.removeMaxEntity());
+                drained++;
+            }
+            return drained;
+        }
+
+        ArrayList<BinaryNode<E, V>> nodes = this.inOrderNodes();
+        int drained = Math.min(maxEntities, nodes.size());
+        for (int i = nodes.size() - 1; i >= nodes.size() - drained; i--) {
+            collection.add(nodes.get(i).value);
+        }
+        this.root = this.buildBalanced(nodes, 0, nodes.size() - drained);
+        this.updateMin();
+        this.size -= drained;
+        return drained;
+    }
+
+    /**
+     * Visits the entities in order of increasing priority
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (BinaryNode<E, V> node : this.inOrderNodes()) {
+            action.accept(node.priority, node.value);
+        }
+    }
+
+    /**
+     * Walks the tree in reverse order, right subtrees first, keeping only the
+     * path to the next node on a stack, so the walk is lazy and O(h) in memory
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        ArrayDeque<BinaryNode<E, V>> stack = new ArrayDeque<>();
+        for (BinaryNode<E, V> node = this.root; node != null; node = node.rightChild) {
+            stack.push(node);
+        }
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                BinaryNode<E, V> next = stack.pop();
+                for (BinaryNode<E, V> node = next.leftChild; node != null; node = node.rightChild) {
+                    stack.push(node);
+                }
+                return next.value;
+            }
+        };
+    }
+
+    /**
+     * Splits the tree in place, handing subtrees to the new spliterator
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new SubtreeSpliterator<>(this.root, this.size);
+    }
+
+    /**
+     * Keeps whole subtrees to visit, every node before its children. A split
+     * hands half of them to the new spliterator, and when only one is left it
+     * is broken up into its root, which stays, and its children first
+     */
+    private static class SubtreeSpliterator<E, V> implements Spliterator<V> {
+
+        private final ArrayDeque<BinaryNode<E, V>> subtrees;
+        //a root whose children were broken off
+        private BinaryNode<E, V> node;
+        private long estimate;
+
+        SubtreeSpliterator(BinaryNode<E, V> root, long estimate) {
+            this.subtrees = new ArrayDeque<>();
+            if (root != null) {
+                this.subtrees.push(root);
+            }
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            BinaryNode<E, V> next = this.node;
+            if (next != null) {
+                this.node = null;
+            } else {
+                next = this.subtrees.poll();
+                if (next == null) {
+                    return false;
+                }
+                if (next.rightChild != null) {
+                    this.subtrees.push(next.rightChild);
+                }
+                if (next.leftChild != null) {
+                    this.subtrees.push(next.leftChild);
+                }
+            }
+            action.accept(next.value);
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (this.node == null && this.subtrees.size() == 1) {
+                this.node = this.subtrees.pop();
+                if (this.node.rightChild != null) {
+                    this.subtrees.push(this.node.rightChild);
+                }
+                if (this.node.leftChild != null) {
+                    this.subtrees.push(this.node.leftChild);
+                }
+            }
+            if (this.subtrees.isEmpty()) {
+                return null;
+            }
+            SubtreeSpliterator<E, V> prefix = new SubtreeSpliterator<>(null, this.estimate >>> 1);
+            for (int i = Math.max(1, this.subtrees.size() / 2); i > 0; i--) {
+                prefix.subtrees.push(this.subtrees.pollLast());
+            }
+            this.estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     * Walks the tree in order without recursion, so degenerate trees are safe
+     *
+     * @return the nodes of the tree in order of increasing priority
+     */
+    private ArrayList<BinaryNode<E, V>> inOrderNodes() {
+        ArrayList<BinaryNode<E, V>> nodes = new ArrayList<>();
+        ArrayDeque<BinaryNode<E, V>> stack = new ArrayDeque<>();
+        BinaryNode<E, V> node = this.root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.leftChild;
+            }
+            node = stack.pop();
+            nodes.add(node);
+            node = node.rightChild;
+        }
+        return nodes;
+    }
+
+    /**
+     * Links sorted nodes into a balanced tree. The recursion is only O(log n)
+     * deep
+     *
+     * @param nodes nodes sorted by priority
+     * @param from the first node of the subtree
+     * @param to the index after the last node of the subtree
+     * @return the root of the subtree
+     */
+    private BinaryNode<E, V> buildBalanced(ArrayList<BinaryNode<E, V>> nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        BinaryNode<E, V> node = nodes.get(mid);
+        node.leftChild = this.buildBalanced(nodes, from, mid);
+        node.rightChild = this.buildBalanced(nodes, mid + 1, to);
+        return node;
+    }
+
     /**
      *
      * @param node
@@ -123,6 +457,20 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
         }
     }
 
+    /**
+     * The leftmost node of a subtree, found without recursion
+     */
+    private BinaryNode<E, V> findMin(BinaryNode<E, V> node) {
+        while (node.leftChild != null) {
+            node = node.leftChild;
+        }
+        return node;
+    }
+
+    private void updateMin() {
+        this.minNode = this.root == null ? null : this.findMin(this.root);
+    }
+
     /**
      * Inserts a new entity into the priority queue
      * @param p
@@ -137,6 +485,7 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
         }
 
         int priorityOrder = p.compareTo(node.priority);
+        this.insertDepth++;
 
         if (priorityOrder > 0) {
             node.rightChild = insertEntity(p, v, node.rightChild);
@@ -181,6 +530,7 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
      */
     private BinaryNode<E, V> removeEntity(E priority) {
 
+        BinaryNode<E, V> parent = null;
         BinaryNode<E, V> currentNode = root;
         BinaryNode<E, V> desiredNode;
 
@@ -188,8 +538,10 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
         while (currentNode != null) {
             priorityOrder = priority.compareTo(currentNode.priority);
             if (priorityOrder < 0) {
+                parent = currentNode;
                 currentNode = currentNode.leftChild;
             } else if (priorityOrder > 0) {
+                parent = currentNode;
                 currentNode = currentNode.rightChild;
             } else {
                 //the node to change priority has been found
@@ -206,12 +558,29 @@ public class BSTBasedPQ<E extends Comparable<? super E>, V>
 
         //if the node has two children, replace it by the maximum node on its left
         if (currentNode.leftChild != null && currentNode.rightChild != null) {
-            BinaryNode<E, V> maxNodeOnLeft = this.removeMaxEntity(currentNode.leftChild);
+            BinaryNode<E, V> parentOfMax = currentNode;
+            BinaryNode<E, V> maxNodeOnLeft = currentNode.leftChild;
+            while (maxNodeOnLeft.rightChild != null) {
+                parentOfMax = maxNodeOnLeft;
+                maxNodeOnLeft = maxNodeOnLeft.rightChild;
+            }
+            if (parentOfMax == currentNode) {
+                parentOfMax.leftChild = maxNodeOnLeft.leftChild;
+            } else {
+                parentOfMax.rightChild = maxNodeOnLeft.leftChild;
+            }
             currentNode.value = maxNodeOnLeft.value;
             currentNode.priority = maxNodeOnLeft.priority;
         } else {
-            currentNode = currentNode.leftChild == null ? currentNode.leftChild : currentNode.rightChild;
-
+            //otherwise its only child, if any, takes its place
+            BinaryNode<E, V> child = currentNode.leftChild != null ? currentNode.leftChild : currentNode.rightChild;
+            if (parent == null) {
+                root = child;
+            } else if (parent.leftChild == currentNode) {
+                parent.leftChild = child;
+            } else {
+                parent.rightChild = child;
+            }
         }
 
         return desiredNode;
@@ -0,0 +1,200 @@
+
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+
+/**
+ * A priority queue with a fixed capacity, for keeping the best K entities of a
+ * stream. The entities live in a MinMaxHeapPQ whose arrays are allocated at
+ * full capacity, so memory stays constant no matter how many entities are
+ * offered. Both the lowest and the highest priority are reachable in O(1) and
+ * removable in O(log K), which serves both retention modes:
+ * <ul>
+ * <li>HIGHEST keeps the K entities with the highest priorities. When the queue
+ * is full a new entity replaces the lowest one if its priority is higher.</li>
+ * <li>LOWEST keeps the K entities with the lowest priorities. When the queue is
+ * full a new entity replaces the highest one if its priority is lower.</li>
+ * </ul>
+ * With evictions disabled a full queue rejects every new entity instead.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class BoundedPQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V> {
+
+    public enum Retention {
+        HIGHEST, LOWEST
+    }
+
+    private final MinMaxHeapPQ<E, V> heap;
+    private final int capacity;
+    private final Retention retention;
+    private final boolean evict;
+    private long evictionCount;
+    private long rejectionCount;
+
+    /**
+     * A queue keeping the entities with the highest priorities, evicting the
+     * lowest when full
+     *
+     * @param capacity the maximum number of entities
+     */
+    public BoundedPQ(int capacity) {
+        this(capacity, Retention.HIGHEST, true);
+    }
+
+    /**
+     *
+     * @param capacity the maximum number of entities
+     * @param retention which end of the priorities the queue keeps
+     * @param evict whether a full queue evicts an entity to admit a better one
+     * or rejects every new entity
+     */
+    public BoundedPQ(int capacity, Retention retention, boolean evict) {
+        if (capacity < 1) {
+            throw new RuntimeException("The capacity of a bounded queue must be positive. Got " + capacity);
+        }
+        //allocated at full capacity, so the heap never grows
+        this.heap = new MinMaxHeapPQ<>(capacity);
+        this.capacity = capacity;
+        this.retention = retention;
+        this.evict = evict;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        return this.heap.getMaxEntity();
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        return this.heap.removeMaxEntity();
+    }
+
+    @Override
+    public V getMinEntity() {
+        return this.heap.getMinEntity();
+    }
+
+    @Override
+    public V removeMinEntity() {
+        return this.heap.removeMinEntity();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.heap.isEmpty();
+    }
+
+    /**
+     * Adds an entity if there is room for it, see offer
+     */
+    @Override
+    public void addEntity(E p, V data) {
+        this.offer(p, data);
+    }
+
+    /**
+     * Adds an entity when the queue isn't full. When it is full and evictions
+     * are enabled, the entity replaces the worst entity of the queue if it is
+     * better; otherwise it is rejected. O(log K)
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     * @return true if the entity was admitted
+     */
+    public boolean offer(E p, V data) {
+        if (this.heap.getSize() < this.capacity) {
+            this.heap.addEntity(p, data);
+            return true;
+        }
+
+        if (this.evict) {
+            if (this.retention == Retention.HIGHEST
+                    && p.compareTo(this.heap.getMinPriority()) > 0) {
+                this.heap.removeMinEntity();
+                this.heap.addEntity(p, data);
+                this.evictionCount++;
+                return true;
+            }
+            if (this.retention == Retention.LOWEST
+                    && p.compareTo(this.heap.getMaxPriority()) < 0) {
+                this.heap.removeMaxEntity();
+                this.heap.addEntity(p, data);
+                this.evictionCount++;
+                return true;
+            }
+        }
+        this.rejectionCount++;
+        return false;
+    }
+
+    @Override
+    public int getSize() {
+        return this.heap.getSize();
+    }
+
+    /**
+     *
+     * @return the maximum number of entities
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     *
+     * @return the number of entities removed to make room for better ones
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     *
+     * @return the number of offered entities which were not admitted
+     */
+    public long getRejectionCount() {
+        return this.rejectionCount;
+    }
+
+    /**
+     * Changes the priority of the first entity found with the given priority
+     * and value. Finding it is a linear scan, moving it O(log K)
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        this.heap.changePriority(p, data, newPriority);
+    }
+
+    /**
+     * Removes all entities. The eviction and rejection counts are kept
+     */
+    @Override
+    public void empty() {
+        this.heap.empty();
+    }
+
+    /**
+     * Visits the entities in no particular order
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        this.heap.forEachEntity(action);
+    }
+
+    @Override
+    public Iterator<V> orderedIterator() {
+        return this.heap.orderedIterator();
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+        return this.heap.spliterator();
+    }
+}
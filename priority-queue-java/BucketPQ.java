@@ -0,0 +1,254 @@
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * A priority queue for small non-negative integer priorities. Every priority
+ * from 0 to maxPriority has its own bucket and a hierarchy of bitmaps records
+ * which buckets are non-empty, one bit per bucket at the lowest level and one
+ * bit per 64-bit word at the level above. Adding an entity is O(1); removing
+ * the maximum is O(log_64 C) for C priorities, which for any C that fits in
+ * memory is a handful of word operations. Entities of equal priority are
+ * removed in the order they were added.
+ *
+ * Unlike RadixHeapPQ the priorities don't need to be monotone, but they must
+ * lie between 0 and maxPriority.
+ *
+ * @author aladago
+ * @param <V> the value of the entity
+ */
+public class BucketPQ<V> implements PriorityQueue<Integer, V> {
+
+    private final ArrayDeque<V>[] buckets;
+    //bitmaps[0] has one bit per bucket, bitmaps[i + 1] one bit per word of bitmaps[i]
+    private final long[][] bitmaps;
+    private final int maxPriority;
+    private int maxBucket;
+    private int size;
+
+    /**
+     *
+     * @param maxPriority the highest priority the queue accepts
+     */
+    public BucketPQ(int maxPriority) {
+        if (maxPriority < 0) {
+            throw new RuntimeException("Can't create a queue with a negative maximum priority");
+        }
+        this.maxPriority = maxPriority;
+        @SuppressWarnings("unchecked")
+        ArrayDeque<V>[] buckets = (ArrayDeque<V>[]) new ArrayDeque<?>[maxPriority + 1];
+        this.buckets = buckets;
+
+        int levels = 1;
+        for (long bits = maxPriority + 1L; bits > 64; bits = (bits + 63) >>> 6) {
+            levels++;
+        }
+        this.bitmaps = new long[levels][];
+        long bits = maxPriority + 1L;
+        for (int level = 0; level < levels; level++) {
+            this.bitmaps[level] = new long[(int) ((bits + 63) >>> 6)];
+            bits = this.bitmaps[level].length;
+        }
+        this.maxBucket = -1;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.buckets[this.maxBucket].peekFirst();
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public int getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.maxBucket;
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+        ArrayDeque<V> bucket = this.buckets[this.maxBucket];
+        V maxEntity = bucket.pollFirst();
+        this.size--;
+        if (bucket.isEmpty()) {
+            this.clearBit(this.maxBucket);
+            this.maxBucket = this.size == 0 ? -1 : this.previousSetBit(this.maxBucket);
+        }
+        return maxEntity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size < 1;
+    }
+
+    @Override
+    public void addEntity(Integer p, V data) {
+        this.addIntEntity(p.intValue(), data);
+    }
+
+    /**
+     * Adds an entity without boxing its priority
+     *
+     * @param p a priority between 0 and maxPriority
+     * @param data the value of the entity
+     */
+    public void addIntEntity(int p, V data) {
+        if (p < 0 || p > this.maxPriority) {
+            throw new RuntimeException("Can't add priority " + p + " outside 0 to " + this.maxPriority);
+        }
+        ArrayDeque<V> bucket = this.buckets[p];
+        if (bucket == null) {
+            bucket = new ArrayDeque<>(4);
+            this.buckets[p] = bucket;
+        }
+        if (bucket.isEmpty()) {
+            this.setBit(p);
+        }
+        bucket.addLast(data);
+        this.size++;
+        if (p > this.maxBucket) {
+            this.maxBucket = p;
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Moves the first entity found with the given priority and value to its
+     * new priority. Finding it is a scan of a single bucket
+     */
+    @Override
+    public void changePriority(Integer p, V data, Integer newPriority) {
+        if (newPriority < 0 || newPriority > this.maxPriority) {
+            throw new RuntimeException("Can't change priority to " + newPriority
+                    + " outside 0 to " + this.maxPriority);
+        }
+        if (p < 0 || p > this.maxPriority || this.buckets[p] == null
+                || !this.buckets[p].removeFirstOccurrence(data)) {
+            return;
+        }
+        this.size--;
+        if (this.buckets[p].isEmpty()) {
+            this.clearBit(p);
+            if (p == this.maxBucket) {
+                this.maxBucket = this.size == 0 ? -1 : this.previousSetBit(p);
+            }
+        }
+        this.addIntEntity(newPriority.intValue(), data);
+    }
+
+    /**
+     * Removes all entities. The buckets are kept for reuse
+     */
+    @Override
+    public void empty() {
+        for (int p = this.maxBucket; p >= 0; p = p == 0 ? -1 : this.previousSetBit(p)) {
+            this.buckets[p].clear();
+            this.clearBit(p);
+        }
+        this.maxBucket = -1;
+        this.size = 0;
+    }
+
+    /**
+     * Removes up to maxEntities entities bucket by bucket
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        while (drained < maxEntities && !this.isEmpty()) {
+            ArrayDeque<V> bucket = this.buckets[this.maxBucket];
+            while (drained < maxEntities && !bucket.isEmpty()) {
+                collection.add(bucket.pollFirst());
+                drained++;
+                this.size--;
+            }
+            if (bucket.isEmpty()) {
+                this.clearBit(this.maxBucket);
+                this.maxBucket = this.size == 0 ? -1 : this.previousSetBit(this.maxBucket);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Visits the entities in order of decreasing priority
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super Integer, ? super V> action) {
+        for (int p = this.maxBucket; p >= 0; p = p == 0 ? -1 : this.previousSetBit(p)) {
+            for (V value : this.buckets[p]) {
+                action.accept(p, value);
+            }
+        }
+    }
+
+    private void setBit(int bit) {
+        for (long[] bitmap : this.bitmaps) {
+            int word = bit >>> 6;
+            boolean wasEmpty = bitmap[word] == 0;
+            bitmap[word] |= 1L << bit;
+            if (!wasEmpty) {
+                return;
+            }
+            bit = word;
+        }
+    }
+
+    private void clearBit(int bit) {
+        for (long[] bitmap : this.bitmaps) {
+            int word = bit >>> 6;
+            bitmap[word] &= ~(1L << bit);
+            if (bitmap[word] != 0) {
+                return;
+            }
+            bit = word;
+        }
+    }
+
+    /**
+     * Climbs the bitmaps until a word has a set bit below the current one,
+     * then descends to the highest set bit under it
+     *
+     * @param bit a bucket
+     * @return the highest non-empty bucket below the given one, or -1
+     */
+    private int previousSetBit(int bit) {
+        int level = 0;
+        while (level < this.bitmaps.length) {
+            //the bits strictly below bit within its word
+            long below = this.bitmaps[level][bit >>> 6] & ((1L << (bit & 63)) - 1);
+            if (below != 0) {
+                bit = (bit & ~63) | (63 - Long.numberOfLeadingZeros(below));
+                break;
+            }
+            if (bit >>> 6 == 0) {
+                return -1;
+            }
+            bit >>>= 6;
+            level++;
+        }
+        if (level == this.bitmaps.length) {
+            return -1;
+        }
+        while (level > 0) {
+            level--;
+            bit = (bit << 6) | (63 - Long.numberOfLeadingZeros(this.bitmaps[level][bit]));
+        }
+        return bit;
+    }
+}
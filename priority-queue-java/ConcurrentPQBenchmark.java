@@ -0,0 +1,145 @@
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Measures how the throughput of the thread-safe priority queues scales with
+ * the number of threads, compared with an ArrayBasedPQ behind a single lock.
+ * Every thread repeatedly adds an entity with a random priority and removes
+ * the maximum, so the size of the queue stays around its initial size.
+ *
+ * Usage: java ConcurrentPQBenchmark [maxThreads] [operationsPerThread]
+ *
+ * @author aladago
+ */
+public class ConcurrentPQBenchmark {
+
+    private static final int INITIAL_SIZE = 10000;
+    private static final int DEFAULT_OPERATIONS_PER_THREAD = 200000;
+    private static final int ROUNDS = 3;
+
+    /**
+     * The baseline: every operation of the wrapped queue holds one global lock
+     */
+    private static class SynchronizedPQ<E, V> implements PriorityQueue<E, V> {
+
+        private final PriorityQueue<E, V> pQ;
+
+        SynchronizedPQ(PriorityQueue<E, V> pQ) {
+            this.pQ = pQ;
+        }
+
+        @Override
+        public synchronized V getMaxEntity() {
+            return this.pQ.getMaxEntity();
+        }
+
+        @Override
+        public synchronized V removeMaxEntity() {
+            return this.pQ.removeMaxEntity();
+        }
+
+        @Override
+        public synchronized boolean isEmpty() {
+            return this.pQ.isEmpty();
+        }
+
+        @Override
+        public synchronized void addEntity(E p, V data) {
+            this.pQ.addEntity(p, data);
+        }
+
+        @Override
+        public synchronized int getSize() {
+            return this.pQ.getSize();
+        }
+
+        @Override
+        public synchronized void changePriority(E p, V data, E newPriority) {
+            this.pQ.changePriority(p, data, newPriority);
+        }
+
+        @Override
+        public synchronized void empty() {
+            this.pQ.empty();
+        }
+
+        @Override
+        public synchronized void addAll(E[] priorities, V[] values) {
+            this.pQ.addAll(priorities, values);
+        }
+
+        @Override
+        public synchronized int drainTo(Collection<? super V> collection, int maxEntities) {
+            return this.pQ.drainTo(collection, maxEntities);
+        }
+
+        @Override
+        public synchronized List<V> removeTopK(int k) {
+            return this.pQ.removeTopK(k);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_OPERATIONS_PER_THREAD;
+
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Supplier<PriorityQueue<Integer, Integer>>> factories = new ArrayList<>();
+        names.add("synchronized ArrayBasedPQ");
+        factories.add(() -> new SynchronizedPQ<>(new ArrayBasedPQ<Integer, Integer>()));
+        names.add("ConcurrentSkipListPQ");
+        factories.add(ConcurrentSkipListPQ::new);
+        names.add("MultiQueuePQ");
+        factories.add(() -> new MultiQueuePQ<>(maxThreads, 2));
+
+        System.out.printf("%-26s %8s %15s%n", "implementation", "threads", "ops/s");
+        for (int i = 0; i < names.size(); i++) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double best = 0;
+                for (int r = 0; r < ROUNDS; r++) {
+                    best = Math.max(best, ConcurrentPQBenchmark.run(factories.get(i).get(), threads, operations));
+                }
+                System.out.printf("%-26s %8d %15.0f%n", names.get(i), threads, best);
+            }
+        }
+    }
+
+    /**
+     * @return the throughput of all threads together in operations per second
+     */
+    private static double run(PriorityQueue<Integer, Integer> pQ, int threads, int operations)
+            throws InterruptedException {
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            pQ.addEntity(ThreadLocalRandom.current().nextInt(), i);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < operations; i++) {
+                    pQ.addEntity(random.nextInt(), i);
+                    pQ.removeMaxEntity();
+                }
+                done.countDown();
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        return 2.0 * threads * operations * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,259 @@
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe priority queue built on a lock-free skip list.
+ *
+ * Consistency: strict. removeMaxEntity always removes an entity with the
+ * highest priority present at the moment of removal, and entities of equal
+ * priority leave the queue in the order they were added. getSize is exact once
+ * concurrent operations have completed.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class ConcurrentSkipListPQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V> {
+
+    private final ConcurrentSkipListMap<Key<E>, V> entities;
+    private final AtomicLong sequence;
+    private final AtomicInteger size;
+
+    /**
+     * Orders entities by decreasing priority and then by insertion order, which
+     * keeps entities of equal priority distinct in the map
+     */
+    private static class Key<E extends Comparable<? super E>> implements Comparable<Key<E>> {
+
+        final E priority;
+        final long sequence;
+
+        Key(E priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Key<E> o) {
+            int priorityOrder = o.priority.compareTo(this.priority);
+            if (priorityOrder != 0) {
+                return priorityOrder;
+            }
+            return Long.compare(this.sequence, o.sequence);
+        }
+    }
+
+    public ConcurrentSkipListPQ() {
+        this.entities = new ConcurrentSkipListMap<>();
+        this.sequence = new AtomicLong();
+        this.size = new AtomicInteger();
+    }
+
+    @Override
+    public V getMaxEntity() {
+        Map.Entry<Key<E>, V> max = this.entities.firstEntry();
+        if (max == null) {
+            throw new RuntimeException("Can't get max entity from an empty queue");
+        }
+        return max.getValue();
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        Map.Entry<Key<E>, V> max = this.entities.pollFirstEntry();
+        if (max == null) {
+            throw new RuntimeException("Can't remove max entity from an empty queue");
+        }
+        this.size.decrementAndGet();
+        return max.getValue();
+    }
+
+    /**
+     * The keys are ordered by decreasing priority, so the minimum is the last
+     * entry: among entities of equal priority the one added last
+     */
+    @Override
+    public V getMinEntity() {
+        Map.Entry<Key<E>, V> min = this.entities.lastEntry();
+        if (min == null) {
+            throw new RuntimeException("Can't get min entity from an empty queue");
+        }
+        return min.getValue();
+    }
+
+    @Override
+    public V removeMinEntity() {
+        Map.Entry<Key<E>, V> min = this.entities.pollLastEntry();
+        if (min == null) {
+            throw new RuntimeException("Can't remove min entity from an empty queue");
+        }
+        this.size.decrementAndGet();
+        return min.getValue();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.entities.isEmpty();
+    }
+
+    @Override
+    public void addEntity(E p, V data) {
+        this.entities.put(new Key<>(p, this.sequence.getAndIncrement()), data);
+        this.size.incrementAndGet();
+    }
+
+    @Override
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * Changes the priority of the oldest entity with the given priority and
+     * value. The entity is removed and added again, so a concurrent
+     * removeMaxEntity never sees it twice
+     *
+     * @param p the current priority of the entity
+     * @param data the value of the entity
+     * @param newPriority the new priority
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        Map<Key<E>, V> samePriority = this.entities.subMap(
+                new Key<>(p, Long.MIN_VALUE), true, new Key<>(p, Long.MAX_VALUE), true);
+        for (Map.Entry<Key<E>, V> entry : samePriority.entrySet()) {
+            if (entry.getValue().equals(data) && this.entities.remove(entry.getKey(), data)) {
+                this.entities.put(new Key<>(newPriority, this.sequence.getAndIncrement()), data);
+                return;
+            }
+        }
+        throw new RuntimeException("Can't change priority of a non-existent entity");
+    }
+
+    /**
+     * Removes up to maxEntities entities in order of decreasing priority. Each
+     * removal is atomic but the batch as a whole isn't, other threads may
+     * remove entities in between
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        Map.Entry<Key<E>, V> max;
+        while (drained < maxEntities && (max = this.entities.pollFirstEntry()) != null) {
+            this.size.decrementAndGet();
+            collection.add(max.getValue());
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Visits the entities in order of decreasing priority. Like the iterators
+     * of ConcurrentSkipListMap this is weakly consistent: entities added or
+     * removed concurrently may or may not be seen
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (Map.Entry<Key<E>, V> entry : this.entities.entrySet()) {
+            action.accept(entry.getKey().priority, entry.getValue());
+        }
+    }
+
+    /**
+     * The map is already in order of decreasing priority. The iterator is
+     * weakly consistent, so it may be used while other threads change the
+     * queue
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        return this.entities.values().iterator();
+    }
+
+    /**
+     * Splits the skip list in place through its own spliterator, which is
+     * weakly consistent like the iterator, without its encounter order
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new ValueSpliterator<>(this.entities.values().spliterator());
+    }
+
+    /**
+     * Hands on the splits of the skip list's spliterator as unordered. That
+     * spliterator won't split before it is advanced, so the first split takes
+     * one value ahead and keeps it to visit first
+     */
+    private static class ValueSpliterator<V> implements Spliterator<V> {
+
+        private final Spliterator<V> values;
+        private boolean advanced;
+        private boolean taken;
+        private V first;
+
+        ValueSpliterator(Spliterator<V> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            this.advanced = true;
+            if (this.taken) {
+                this.taken = false;
+                V value = this.first;
+                this.first = null;
+                action.accept(value);
+                return true;
+            }
+            return this.values.tryAdvance(action);
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (!this.advanced) {
+                this.advanced = true;
+                this.taken = this.values.tryAdvance(value -> this.first = value);
+            }
+            Spliterator<V> prefix = this.values.trySplit();
+            return prefix == null ? null : new ValueSpliterator<>(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            long estimate = this.values.estimateSize();
+            return this.taken && estimate < Long.MAX_VALUE ? estimate + 1 : estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return this.values.characteristics() & ~(Spliterator.ORDERED | Spliterator.SORTED);
+        }
+    }
+
+    /**
+     * Removes all entities. Entities added concurrently may survive
+     */
+    @Override
+    public void empty() {
+        while (this.entities.pollFirstEntry() != null) {
+            this.size.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs Dijkstra's shortest paths on a large random sparse graph with different
+ * priority queues. Queues are max-queues, so distances are stored as negative
+ * priorities. PairingHeapPQ raises the priority of a vertex through its handle
+ * (decrease-key); the other queues use lazy deletion, adding a vertex again
+ * whenever its distance improves and skipping stale entries.
+ *
+ * Usage: java DijkstraBenchmark [vertices] [edgesPerVertex]
+ *
+ * @author aladago
+ */
+public class DijkstraBenchmark {
+
+    private static final int DEFAULT_VERTICES = 1000000;
+    private static final int DEFAULT_EDGES_PER_VERTEX = 4;
+    private static final int MAX_WEIGHT = 1000;
+    //ArrayBasedPQ removes in O(n), so it only runs on graphs up to this size
+    private static final int ARRAY_QUEUE_VERTEX_LIMIT = 20000;
+
+    /**
+     * A graph in compressed sparse row form: the edges of vertex v are
+     * targets[offsets[v]] to targets[offsets[v + 1] - 1]
+     */
+    private static class Graph {
+
+        int[] offsets;
+        int[] targets;
+        int[] weights;
+    }
+
+    public static void main(String[] args) {
+        int vertices = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VERTICES;
+        int edgesPerVertex = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EDGES_PER_VERTEX;
+        Graph graph = DijkstraBenchmark.randomGraph(vertices, edgesPerVertex, new Random(42));
+
+        //the first run of every queue warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "warm-up" : "measured");
+            long expected = DijkstraBenchmark.time("PairingHeapPQ (decrease-key)",
+                    DijkstraBenchmark.withHandles(graph));
+            DijkstraBenchmark.check(expected, DijkstraBenchmark.time("HeapBasedPQ (lazy)",
+                    DijkstraBenchmark.lazy(graph, new HeapBasedPQ<Long, Integer>())));
+            DijkstraBenchmark.check(expected, DijkstraBenchmark.time("PairingHeapPQ (lazy)",
+                    DijkstraBenchmark.lazy(graph, new PairingHeapPQ<Long, Integer>())));
+            DijkstraBenchmark.check(expected, DijkstraBenchmark.time("RadixHeapPQ (lazy)",
+                    DijkstraBenchmark.lazy(graph, new RadixHeapPQ<Integer>())));
+            if (vertices <= ARRAY_QUEUE_VERTEX_LIMIT) {
+                DijkstraBenchmark.check(expected, DijkstraBenchmark.time("ArrayBasedPQ (lazy)",
+                        DijkstraBenchmark.lazy(graph, new ArrayBasedPQ<Long, Integer>())));
+            }
+        }
+    }
+
+    /**
+     * Runs one shortest path computation and prints how long it took
+     *
+     * @return the result of the computation
+     */
+    private static long time(String name, LongSupplier shortestPaths) {
+        long start = System.nanoTime();
+        long result = shortestPaths.getAsLong();
+        System.out.printf("  %-30s %8.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+        return result;
+    }
+
+    /**
+     * Dijkstra from vertex 0 using the handles of a pairing heap for
+     * decrease-key, so every vertex is in the queue at most once
+     *
+     * @return the sum of the distances of all reachable vertices
+     */
+    private static LongSupplier withHandles(Graph graph) {
+        return () -> {
+            int vertices = graph.offsets.length - 1;
+            long[] distances = new long[vertices];
+            Arrays.fill(distances, Long.MAX_VALUE);
+            @SuppressWarnings("unchecked")
+            PairingHeapPQ.Node<Long, Integer>[] handles = (PairingHeapPQ.Node<Long, Integer>[])
+                    new PairingHeapPQ.Node<?, ?>[vertices];
+            boolean[] done = new boolean[vertices];
+            PairingHeapPQ<Long, Integer> pQ = new PairingHeapPQ<>();
+
+            distances[0] = 0;
+            handles[0] = pQ.addEntityWithHandle(0L, 0);
+            while (!pQ.isEmpty()) {
+                int v = pQ.removeMaxEntity();
+                done[v] = true;
+                for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                    int w = graph.targets[e];
+                    long distance = distances[v] + graph.weights[e];
+                    if (!done[w] && distance < distances[w]) {
+                        if (handles[w] == null) {
+                            handles[w] = pQ.addEntityWithHandle(-distance, w);
+                        } else {
+                            pQ.changePriority(handles[w], -distance);
+                        }
+                        distances[w] = distance;
+                    }
+                }
+            }
+            return DijkstraBenchmark.sum(distances);
+        };
+    }
+
+    /**
+     * Dijkstra from vertex 0 with lazy deletion
+     *
+     * @return the sum of the distances of all reachable vertices
+     */
+    private static LongSupplier lazy(Graph graph, PriorityQueue<Long, Integer> pQ) {
+        return () -> {
+            int vertices = graph.offsets.length - 1;
+            long[] distances = new long[vertices];
+            Arrays.fill(distances, Long.MAX_VALUE);
+            boolean[] done = new boolean[vertices];
+
+            distances[0] = 0;
+            pQ.addEntity(0L, 0);
+            while (!pQ.isEmpty()) {
+                int v = pQ.removeMaxEntity();
+                if (done[v]) {
+                    continue;
+                }
+                done[v] = true;
+                for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                    int w = graph.targets[e];
+                    long distance = distances[v] + graph.weights[e];
+                    if (distance < distances[w]) {
+                        distances[w] = distance;
+                        pQ.addEntity(-distance, w);
+                    }
+                }
+            }
+            return DijkstraBenchmark.sum(distances);
+        };
+    }
+
+    private static long sum(long[] distances) {
+        long sum = 0;
+        for (long distance : distances) {
+            if (distance != Long.MAX_VALUE) {
+                sum += distance;
+            }
+        }
+        return sum;
+    }
+
+    private static void check(long expected, long actual) {
+        if (expected != actual) {
+            throw new RuntimeException("Shortest paths differ: " + expected + " and " + actual);
+        }
+    }
+
+    private static Graph randomGraph(int vertices, int edgesPerVertex, Random random) {
+        Graph graph = new Graph();
+        graph.offsets = new int[vertices + 1];
+        graph.targets = new int[vertices * edgesPerVertex];
+        graph.weights = new int[vertices * edgesPerVertex];
+        for (int v = 0; v < vertices; v++) {
+            graph.offsets[v + 1] = graph.offsets[v] + edgesPerVertex;
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                //the first edge links v to v + 1 so that every vertex is reachable
+                graph.targets[e] = e == graph.offsets[v] ? (v + 1) % vertices : random.nextInt(vertices);
+                graph.weights[e] = 1 + random.nextInt(MAX_WEIGHT);
+            }
+        }
+        return graph;
+    }
+}
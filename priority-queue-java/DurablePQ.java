@@ -0,0 +1,598 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Makes any priority queue survive restarts. Every change is recorded in a
+ * write-ahead log before the call returns, and every snapshotInterval changes
+ * the whole queue is written to a snapshot and the log is started afresh.
+ * Opening the queue again loads the snapshot and replays the log written
+ * after it, so recovery takes time proportional to the size of the queue,
+ * not to the number of operations it has seen.
+ *
+ * Log records are written with group commit: they are buffered and written
+ * with a single write and fsync once groupCommitSize records are pending, or
+ * when sync is called. A crash loses at most the last groupCommitSize - 1
+ * changes; a record torn by the crash is detected by its checksum and
+ * dropped. Snapshots are written to a temporary file and renamed, and both
+ * files carry a generation number so a log older than the snapshot is never
+ * replayed on top of it.
+ *
+ * The wrapped queue must support forEachEntity and must not be changed
+ * except through this wrapper. Replaying removeMaxEntity removes whichever
+ * entity the recovered queue considers the maximum, so among entities of
+ * equal priority a queue that doesn't rebuild its exact layout may return a
+ * different one than before the restart.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class DurablePQ<E, V> implements PriorityQueue<E, V>, Closeable {
+
+    /**
+     * Converts priorities or values to and from bytes
+     *
+     * @param <T> the type converted
+     */
+    public interface Codec<T> {
+
+        public void write(DataOutput out, T t) throws IOException;
+
+        public T read(DataInput in) throws IOException;
+
+        /**
+         * Used to rebuild queues with addAll, which needs arrays of the
+         * priority type
+         */
+        public T[] newArray(int length);
+
+        public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+            @Override
+            public void write(DataOutput out, Integer t) throws IOException {
+                out.writeInt(t);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+
+            @Override
+            public Integer[] newArray(int length) {
+                return new Integer[length];
+            }
+        };
+
+        public static final Codec<Long> LONG = new Codec<Long>() {
+            @Override
+            public void write(DataOutput out, Long t) throws IOException {
+                out.writeLong(t);
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                return in.readLong();
+            }
+
+            @Override
+            public Long[] newArray(int length) {
+                return new Long[length];
+            }
+        };
+
+        public static final Codec<String> STRING = new Codec<String>() {
+            @Override
+            public void write(DataOutput out, String t) throws IOException {
+                out.writeUTF(t);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+
+            @Override
+            public String[] newArray(int length) {
+                return new String[length];
+            }
+        };
+    }
+
+    /**
+     * A ByteArrayOutputStream whose buffer can be read without copying it
+     */
+    private static class RecordBuffer extends ByteArrayOutputStream {
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(this.buf, 0, this.count);
+        }
+
+        void updateChecksum(CRC32 crc) {
+            crc.update(this.buf, 0, this.count);
+        }
+    }
+
+    private static final long LOG_MAGIC = 0x4450514c4f473031L;
+    private static final long SNAPSHOT_MAGIC = 0x445051534e415031L;
+    //the magic number and the generation
+    private static final int LOG_HEADER_BYTES = 16;
+    private static final String LOG_FILE = "queue.log";
+    private static final String SNAPSHOT_FILE = "queue.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "queue.snapshot.tmp";
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 64;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1 << 20;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE_MAX = 2;
+    private static final byte CHANGE_PRIORITY = 3;
+    private static final byte EMPTY = 4;
+    private static final byte ADD_ALL = 5;
+    private static final byte DRAIN = 6;
+
+    private final PriorityQueue<E, V> pQ;
+    private final Codec<E> priorityCodec;
+    private final Codec<V> valueCodec;
+    private final Path directory;
+    private final int groupCommitSize;
+    private final int snapshotInterval;
+    private final FileChannel log;
+    //records waiting for the next group commit
+    private final RecordBuffer pending;
+    private final DataOutputStream pendingOut;
+    //the record being encoded, copied to pending once its checksum is known
+    private final RecordBuffer record;
+    private final DataOutputStream recordOut;
+    private final CRC32 crc;
+    private int pendingRecords;
+    private int changesSinceSnapshot;
+    private long generation;
+
+    /**
+     * Opens a durable queue with the default group commit size and snapshot
+     * interval
+     *
+     * @param directory where the snapshot and the log are kept. Created if it
+     * doesn't exist
+     * @param pQ an empty queue which the recovered entities are added to
+     * @param priorityCodec converts priorities to bytes
+     * @param valueCodec converts values to bytes
+     * @throws IOException if the files can't be read or created
+     */
+    public DurablePQ(Path directory, PriorityQueue<E, V> pQ, Codec<E> priorityCodec,
+            Codec<V> valueCodec) throws IOException {
+        this(directory, pQ, priorityCodec, valueCodec, DEFAULT_GROUP_COMMIT_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     *
+     * @param directory where the snapshot and the log are kept. Created if it
+     * doesn't exist
+     * @param pQ an empty queue which the recovered entities are added to
+     * @param priorityCodec converts priorities to bytes
+     * @param valueCodec converts values to bytes
+     * @param groupCommitSize the number of changes written and synced
+     * together. 1 makes every change durable before the call returns
+     * @param snapshotInterval the number of changes after which a snapshot is
+     * written
+     * @throws IOException if the files can't be read or created
+     */
+    public DurablePQ(Path directory, PriorityQueue<E, V> pQ, Codec<E> priorityCodec,
+            Codec<V> valueCodec, int groupCommitSize, int snapshotInterval) throws IOException {
+        if (!pQ.isEmpty()) {
+            throw new RuntimeException("Can't recover into a queue which isn't empty");
+        }
+        if (groupCommitSize < 1 || snapshotInterval < 1) {
+            throw new RuntimeException("Group commit size and snapshot interval must be positive");
+        }
+        this.pQ = pQ;
+        this.priorityCodec = priorityCodec;
+        this.valueCodec = valueCodec;
+        this.directory = directory;
+        this.groupCommitSize = groupCommitSize;
+        this.snapshotInterval = snapshotInterval;
+        this.pending = new RecordBuffer();
+        this.pendingOut = new DataOutputStream(this.pending);
+        this.record = new RecordBuffer();
+        this.recordOut = new DataOutputStream(this.record);
+        this.crc = new CRC32();
+
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+        this.generation = this.loadSnapshot();
+        this.log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!this.replayLog()) {
+            this.resetLog();
+        }
+    }
+
+    @Override
+    public V getMaxEntity() {
+        return this.pQ.getMaxEntity();
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        V maxEntity = this.pQ.removeMaxEntity();
+        this.beginRecord(REMOVE_MAX);
+        this.endRecord();
+        return maxEntity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.pQ.isEmpty();
+    }
+
+    @Override
+    public void addEntity(E p, V data) {
+        this.pQ.addEntity(p, data);
+        try {
+            this.beginRecord(ADD);
+            this.priorityCodec.write(this.recordOut, p);
+            this.valueCodec.write(this.recordOut, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't encode the entity", e);
+        }
+        this.endRecord();
+    }
+
+    @Override
+    public int getSize() {
+        return this.pQ.getSize();
+    }
+
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        this.pQ.changePriority(p, data, newPriority);
+        try {
+            this.beginRecord(CHANGE_PRIORITY);
+            this.priorityCodec.write(this.recordOut, p);
+            this.valueCodec.write(this.recordOut, data);
+            this.priorityCodec.write(this.recordOut, newPriority);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't encode the entity", e);
+        }
+        this.endRecord();
+    }
+
+    @Override
+    public void empty() {
+        this.pQ.empty();
+        this.beginRecord(EMPTY);
+        this.endRecord();
+    }
+
+    /**
+     * Adds all entities with the wrapped queue's addAll and logs them as one
+     * record
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        this.pQ.addAll(priorities, values);
+        try {
+            this.beginRecord(ADD_ALL);
+            this.recordOut.writeInt(priorities.length);
+            for (int i = 0; i < priorities.length; i++) {
+                this.priorityCodec.write(this.recordOut, priorities[i]);
+                this.valueCodec.write(this.recordOut, values[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't encode the entities", e);
+        }
+        this.endRecord();
+    }
+
+    /**
+     * Drains with the wrapped queue's drainTo and logs only the number of
+     * entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = this.pQ.drainTo(collection, maxEntities);
+        if (drained > 0) {
+            this.beginRecord(DRAIN);
+            try {
+                this.recordOut.writeInt(drained);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't encode the record", e);
+            }
+            this.endRecord();
+        }
+        return drained;
+    }
+
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        this.pQ.forEachEntity(action);
+    }
+
+    @Override
+    public Iterator<V> orderedIterator() {
+        return this.pQ.orderedIterator();
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+        return this.pQ.spliterator();
+    }
+
+    /**
+     * Writes and syncs the changes waiting for the next group commit
+     */
+    public void sync() {
+        if (this.pendingRecords == 0) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = this.pending.asByteBuffer();
+            while (bytes.hasRemaining()) {
+                this.log.write(bytes);
+            }
+            this.log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write the log", e);
+        }
+        this.pending.reset();
+        this.pendingRecords = 0;
+    }
+
+    /**
+     * Writes the whole queue to a new snapshot and starts a new, empty log.
+     * Called automatically every snapshotInterval changes
+     */
+    public void snapshot() {
+        this.sync();
+        long newGeneration = this.generation + 1;
+        Path temp = this.directory.resolve(SNAPSHOT_TEMP_FILE);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeLong(SNAPSHOT_MAGIC);
+                out.writeLong(newGeneration);
+                //queues like BSTBasedPQ may hold fewer entities than getSize says
+                int[] count = new int[1];
+                this.pQ.forEachEntity((p, v) -> count[0]++);
+                out.writeInt(count[0]);
+                IOException[] failure = new IOException[1];
+                this.pQ.forEachEntity((p, v) -> {
+                    if (failure[0] == null) {
+                        try {
+                            this.priorityCodec.write(out, p);
+                            this.valueCodec.write(out, v);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, this.directory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.syncDirectory();
+            //a crash before the new log is written leaves a log of the old
+            //generation, which recovery ignores
+            this.generation = newGeneration;
+            this.resetLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write the snapshot", e);
+        }
+    }
+
+    /**
+     * Syncs pending changes and closes the log. The wrapped queue is left
+     * as it is
+     *
+     * @throws IOException if the log can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.sync();
+        this.log.close();
+    }
+
+    private void beginRecord(byte op) {
+        this.record.reset();
+        this.record.write(op);
+    }
+
+    /**
+     * Frames the encoded record with its length and checksum, and commits the
+     * group once it is full
+     */
+    private void endRecord() {
+        this.crc.reset();
+        this.record.updateChecksum(this.crc);
+        try {
+            this.pendingOut.writeInt(this.record.size());
+            this.record.writeTo(this.pendingOut);
+            this.pendingOut.writeInt((int) this.crc.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't encode the record", e);
+        }
+        this.pendingRecords++;
+        this.changesSinceSnapshot++;
+        if (this.changesSinceSnapshot >= this.snapshotInterval) {
+            this.snapshot();
+        } else if (this.pendingRecords >= this.groupCommitSize) {
+            this.sync();
+        }
+    }
+
+    /**
+     * Truncates the log and writes a header for the current generation
+     */
+    private void resetLog() throws IOException {
+        this.log.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        header.putLong(LOG_MAGIC).putLong(this.generation).flip();
+        while (header.hasRemaining()) {
+            this.log.write(header, header.position());
+        }
+        this.log.force(false);
+        this.log.position(LOG_HEADER_BYTES);
+        this.changesSinceSnapshot = 0;
+    }
+
+    /**
+     * Fsyncs the directory so the rename of the snapshot is durable. Not
+     * every platform allows opening a directory, in which case this is skipped
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //the rename is still atomic, only its durability is left to the OS
+        }
+    }
+
+    /**
+     * Loads the snapshot, if any, into the wrapped queue
+     *
+     * @return the generation of the snapshot, 0 if there is none
+     */
+    private long loadSnapshot() throws IOException {
+        Path snapshot = this.directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                throw new IOException(snapshot + " isn't a priority queue snapshot");
+            }
+            long snapshotGeneration = in.readLong();
+            int size = in.readInt();
+            E[] priorities = this.priorityCodec.newArray(size);
+            V[] values = this.valueCodec.newArray(size);
+            for (int i = 0; i < size; i++) {
+                priorities[i] = this.priorityCodec.read(in);
+                values[i] = this.valueCodec.read(in);
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                throw new IOException(snapshot + " is corrupt");
+            }
+            this.pQ.addAll(priorities, values);
+            return snapshotGeneration;
+        }
+    }
+
+    /**
+     * Applies the log records written after the snapshot to the wrapped queue
+     * and truncates a record torn by a crash
+     *
+     * @return false if the log is missing or belongs to an older snapshot
+     */
+    private boolean replayLog() throws IOException {
+        if (this.log.size() < LOG_HEADER_BYTES) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(this.log.position(0)), 1 << 16));
+        if (in.readLong() != LOG_MAGIC || in.readLong() != this.generation) {
+            return false;
+        }
+
+        long validBytes = LOG_HEADER_BYTES;
+        byte[] body = new byte[64];
+        CRC32 checksum = new CRC32();
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+                if (length < 1 || length > this.log.size() - validBytes) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, 2 * body.length)];
+                }
+                in.readFully(body, 0, length);
+                checksum.reset();
+                checksum.update(body, 0, length);
+                if (in.readInt() != (int) checksum.getValue()) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            this.apply(new DataInputStream(new ByteArrayInputStream(body, 0, length)));
+            validBytes += 8 + length;
+            this.changesSinceSnapshot++;
+        }
+
+        this.log.truncate(validBytes);
+        this.log.position(validBytes);
+        return true;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case ADD:
+                this.pQ.addEntity(this.priorityCodec.read(in), this.valueCodec.read(in));
+                break;
+            case REMOVE_MAX:
+                this.pQ.removeMaxEntity();
+                break;
+            case CHANGE_PRIORITY:
+                this.pQ.changePriority(this.priorityCodec.read(in), this.valueCodec.read(in),
+                        this.priorityCodec.read(in));
+                break;
+            case EMPTY:
+                this.pQ.empty();
+                break;
+            case ADD_ALL:
+                int size = in.readInt();
+                E[] priorities = this.priorityCodec.newArray(size);
+                V[] values = this.valueCodec.newArray(size);
+                for (int i = 0; i < size; i++) {
+                    priorities[i] = this.priorityCodec.read(in);
+                    values[i] = this.valueCodec.read(in);
+                }
+                this.pQ.addAll(priorities, values);
+                break;
+            case DRAIN:
+                this.pQ.drainTo(new ArrayList<>(), in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown log record " + op);
+        }
+    }
+}
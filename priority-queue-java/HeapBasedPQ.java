@@ -0,0 +1,443 @@
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+
+/**
+ * Implements a priority queue using an implicit d-ary heap stored in an array.
+ * The entity with the highest priority is always at index 0 and the children of
+ * the entity at index i are found at indices d*i + 1 to d*i + d.
+ *
+ * @author aladago
+ * @param <E> The priority of the item
+ * @param <V> the value of the item
+ */
+public class HeapBasedPQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V>, PQMetrics.Reporter {
+
+    protected Entity<E, V>[] entities;
+    private static final int INITIAL_SIZE = 10;
+    private static final int DEFAULT_ARITY = 2;
+    public static final int INDEX_OF_MAX_ENTITY = 0;
+    protected final int arity;
+    protected int numEntities;
+    private PQMetrics metrics;
+
+    protected static class Entity<E, V> {
+
+        E priority;
+        V value;
+
+        Entity(E p, V data) {
+            this.priority = p;
+            this.value = data;
+        }
+    }
+
+    public HeapBasedPQ() {
+        this(DEFAULT_ARITY);
+    }
+
+    /**
+     *
+     * @param arity the number of children of every node in the heap. Must be at
+     * least 2
+     */
+    public HeapBasedPQ(int arity) {
+        if (arity < 2) {
+            throw new RuntimeException("The arity of a heap must be at least 2. Got " + arity);
+        }
+        this.arity = arity;
+        this.numEntities = 0;
+        this.entities = newEntities(HeapBasedPQ.INITIAL_SIZE);
+    }
+
+    /**
+     * Builds a binary heap from many entities in O(n)
+     *
+     * @param priorities the priorities of the entities
+     * @param values the values of the entities
+     */
+    public HeapBasedPQ(E[] priorities, V[] values) {
+        this(DEFAULT_ARITY);
+        this.appendAll(priorities, values);
+        this.heapify();
+    }
+
+    /**
+     *
+     * @return true if the queue has no entities
+     */
+    @Override
+    public boolean isEmpty() {
+        return this.numEntities < 1;
+    }
+
+    /**
+     *
+     * @return the item with the highest priority
+     */
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.entities[INDEX_OF_MAX_ENTITY].value;
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public E getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.entities[INDEX_OF_MAX_ENTITY].priority;
+    }
+
+    /**
+     * Removes the root of the heap, moves the last entity to the root and sifts
+     * it down. Runs in O(d log_d n)
+     *
+     * @return the item with the highest priority
+     */
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+
+        Entity<E, V> maxEntity = this.entities[INDEX_OF_MAX_ENTITY];
+        this.numEntities--;
+        this.entities[INDEX_OF_MAX_ENTITY] = this.entities[this.numEntities];
+        this.entities[this.numEntities] = null;
+
+        if (this.numEntities > 0) {
+            this.siftDown(INDEX_OF_MAX_ENTITY);
+        }
+        return maxEntity.value;
+    }
+
+    /**
+     * Adds a new entity at the end of the heap and sifts it up. Runs in
+     * O(log_d n) post-condition: number of entities increases by 1 and size of
+     * the array may increase
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     */
+    @Override
+    public void addEntity(E p, V data) {
+        if (this.numEntities == this.entities.length) {
+            this.expandHeap(2 * this.numEntities);
+        }
+
+        this.entities[this.numEntities] = new Entity<>(p, data);
+        this.numEntities++;
+        this.siftUp(this.numEntities - 1);
+    }
+
+    /**
+     *
+     * @return the number of entities in the heap
+     */
+    @Override
+    public int getSize() {
+        return this.numEntities;
+    }
+
+    /**
+     * Starts or stops reporting comparisons and array resizes
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reinitialize the queue
+     */
+    @Override
+    public void empty() {
+        this.entities = newEntities(INITIAL_SIZE);
+        this.numEntities = 0;
+    }
+
+    /**
+     * A method to change the priority of an entity in the heap. Finding the
+     * entity takes a linear scan but restoring the heap order afterwards is
+     * O(log_d n). Like ArrayBasedPQ, all matching entities are updated: a
+     * single match is sifted into place, several are changed first and the
+     * heap is rebuilt in O(n), since sifting one may move another past the
+     * scan.
+     *
+     * @param p the current priority of the entity
+     * @param data the value of the entity
+     * @param newPriority the new priority of that entity
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        int matches = 0;
+        int lastMatch = -1;
+        for (int i = 0; i < this.numEntities; i++) {
+            Entity<E, V> entity = this.entities[i];
+            if (entity.priority.equals(p) && entity.value.equals(data)) {
+                entity.priority = newPriority;
+                matches++;
+                lastMatch = i;
+            }
+        }
+        if (matches == 1) {
+            this.restoreOrder(lastMatch);
+        } else if (matches > 1) {
+            this.heapify();
+        }
+    }
+
+    /**
+     * Adds many entities at once. When the batch is at least as large as the
+     * queue, the whole heap is rebuilt bottom-up (Floyd's heapify) in
+     * O(n + m); otherwise every new entity is sifted up in O(log n)
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        int oldSize = this.numEntities;
+        this.appendAll(priorities, values);
+        if (priorities.length >= oldSize) {
+            this.heapify();
+        } else {
+            for (int i = oldSize; i < this.numEntities; i++) {
+                this.siftUp(i);
+            }
+        }
+    }
+
+    /**
+     * Visits the entities in array order. Adding them to an empty heap of the
+     * same arity in that order moves nothing, so the layout is rebuilt exactly
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (int i = 0; i < this.numEntities; i++) {
+            action.accept(this.entities[i].priority, this.entities[i].value);
+        }
+    }
+
+    /**
+     * Walks the heap lazily in order of decreasing priority. The next entity
+     * is always in a frontier of indices whose parents were already returned,
+     * kept in a binary heap of its own, so the first k values cost
+     * O(k d log k) however large the queue is
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        java.util.PriorityQueue<Integer> frontier = new java.util.PriorityQueue<>(
+                (a, b) -> this.entities[b].priority.compareTo(this.entities[a].priority));
+        if (!this.isEmpty()) {
+            frontier.add(INDEX_OF_MAX_ENTITY);
+        }
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                return !frontier.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (frontier.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                int pos = frontier.poll();
+                int lastChild = Math.min(arity * pos + arity, numEntities - 1);
+                for (int child = arity * pos + 1; child <= lastChild; child++) {
+                    frontier.add(child);
+                }
+                return entities[pos].value;
+            }
+        };
+    }
+
+    /**
+     * Splits the array in place, without an encounter order
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        //only the spliterator of a parallel pipeline passes splits on to the array
+        return Arrays.stream(this.entities, 0, this.numEntities).parallel().unordered()
+                .map(entity -> entity.value).spliterator();
+    }
+
+    /**
+     * Stores new entities after the last entity without restoring the heap
+     * order
+     */
+    private void appendAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+        int newSize = this.numEntities + priorities.length;
+        if (newSize > this.entities.length) {
+            this.expandHeap(Math.max(newSize, 2 * this.numEntities));
+        }
+        for (int i = 0; i < priorities.length; i++) {
+            this.place(new Entity<>(priorities[i], values[i]), this.numEntities++);
+        }
+    }
+
+    /**
+     * Restores the heap order of the whole array by sifting down every internal
+     * node, starting from the last one
+     */
+    private void heapify() {
+        if (this.numEntities < 2) {
+            return;
+        }
+        for (int i = this.parent(this.numEntities - 1); i >= INDEX_OF_MAX_ENTITY; i--) {
+            this.siftDown(i);
+        }
+    }
+
+    /**
+     * Moves the entity at the given position up or down until the heap order
+     * holds again
+     *
+     * @param pos the position of an entity whose priority has changed
+     */
+    protected void restoreOrder(int pos) {
+        if (this.metrics != null && pos > INDEX_OF_MAX_ENTITY) {
+            this.metrics.comparison();
+        }
+        if (pos > INDEX_OF_MAX_ENTITY
+                && this.entities[pos].priority.compareTo(this.entities[this.parent(pos)].priority) > 0) {
+            this.siftUp(pos);
+        } else {
+            this.siftDown(pos);
+        }
+    }
+
+    /**
+     * Moves the entity at pos towards the root while it has a higher priority
+     * than its parent. Instead of swapping at every level, the entity is held
+     * aside and parents are shifted down into the hole.
+     *
+     * @param pos the position of the entity to move up
+     * @return the final position of the entity
+     */
+    protected int siftUp(int pos) {
+        Entity<E, V> entity = this.entities[pos];
+        int comparisons = 0;
+        while (pos > INDEX_OF_MAX_ENTITY) {
+            int parentPos = this.parent(pos);
+            Entity<E, V> parentEntity = this.entities[parentPos];
+            comparisons++;
+            if (entity.priority.compareTo(parentEntity.priority) <= 0) {
+                break;
+            }
+            this.place(parentEntity, pos);
+            pos = parentPos;
+        }
+        this.place(entity, pos);
+        if (this.metrics != null) {
+            this.metrics.comparisons(comparisons);
+        }
+        return pos;
+    }
+
+    /**
+     * Moves the entity at pos towards the leaves while one of its children has
+     * a higher priority.
+     *
+     * @param pos the position of the entity to move down
+     * @return the final position of the entity
+     */
+    protected int siftDown(int pos) {
+        Entity<E, V> entity = this.entities[pos];
+        int comparisons = 0;
+        while (true) {
+            int firstChild = this.arity * pos + 1;
+            if (firstChild >= this.numEntities) {
+                break;
+            }
+
+            int lastChild = Math.min(firstChild + this.arity, this.numEntities);
+            int maxChild = firstChild;
+            comparisons += lastChild - firstChild;
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                if (this.entities[c].priority.compareTo(this.entities[maxChild].priority) > 0) {
+                    maxChild = c;
+                }
+            }
+
+            if (entity.priority.compareTo(this.entities[maxChild].priority) >= 0) {
+                break;
+            }
+            this.place(this.entities[maxChild], pos);
+            pos = maxChild;
+        }
+        this.place(entity, pos);
+        if (this.metrics != null) {
+            this.metrics.comparisons(comparisons);
+        }
+        return pos;
+    }
+
+    /**
+     * Stores an entity at a position of the heap. Subclasses which track the
+     * positions of entities override this method.
+     *
+     * @param entity the entity to store
+     * @param pos the position in the array
+     */
+    protected void place(Entity<E, V> entity, int pos) {
+        this.entities[pos] = entity;
+    }
+
+    /**
+     *
+     * @param pos a position other than the root
+     * @return the position of the parent of the entity at pos
+     */
+    protected int parent(int pos) {
+        return (pos - 1) / this.arity;
+    }
+
+    /**
+     *
+     * @param size the length of the array
+     * @return an empty array of entities
+     */
+    @SuppressWarnings("unchecked")
+    protected static <E, V> Entity<E, V>[] newEntities(int size) {
+        return (Entity<E, V>[]) new Entity<?, ?>[size];
+    }
+
+    /**
+     * Handle over-flows of the heap by expanding its size.
+     *
+     * @param newSize the new size of the array
+     */
+    private void expandHeap(int newSize) {
+        Entity<E, V>[] updatedHeap = newEntities(newSize);
+        System.arraycopy(this.entities, 0, updatedHeap, 0, this.numEntities);
+        this.entities = updatedHeap;
+        if (this.metrics != null) {
+            this.metrics.resize();
+        }
+    }
+
+}
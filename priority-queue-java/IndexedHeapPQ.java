@@ -0,0 +1,154 @@
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A binary heap which keeps track of the position of every value in the heap.
+ * The index turns changePriority into an O(log n) increase/decrease-key and
+ * allows entities to be looked up and removed by value. Values must be unique
+ * within the queue.
+ *
+ * @author aladago
+ * @param <E> The priority of the item
+ * @param <V> the value of the item. Used as the key of the index
+ */
+public class IndexedHeapPQ<E extends Comparable<? super E>, V>
+        extends HeapBasedPQ<E, V> {
+
+    private HashMap<V, Integer> positions;
+
+    public IndexedHeapPQ() {
+        super();
+        this.positions = new HashMap<>();
+    }
+
+    /**
+     *
+     * @param arity the number of children of every node in the heap
+     */
+    public IndexedHeapPQ(int arity) {
+        super(arity);
+        this.positions = new HashMap<>();
+    }
+
+    /**
+     * Adds a new entity to the heap
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity. Must not already be in the queue
+     */
+    @Override
+    public void addEntity(E p, V data) {
+        if (this.positions.containsKey(data)) {
+            throw new RuntimeException("Can't add " + data + ". It is already in the queue");
+        }
+        super.addEntity(p, data);
+    }
+
+    /**
+     * Adds many entities at once, see HeapBasedPQ.addAll
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities. None may already be in the
+     * queue and they must be distinct
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        HashSet<V> newValues = new HashSet<>();
+        for (V value : values) {
+            if (this.positions.containsKey(value) || !newValues.add(value)) {
+                throw new RuntimeException("Can't add " + value + ". It is already in the queue");
+            }
+        }
+        super.addAll(priorities, values);
+    }
+
+    /**
+     *
+     * @return the item with the highest priority
+     */
+    @Override
+    public V removeMaxEntity() {
+        V maxValue = super.removeMaxEntity();
+        this.positions.remove(maxValue);
+        return maxValue;
+    }
+
+    /**
+     * Changes the priority of an entity in O(log n). The entity is located
+     * through the index so the old priority is only used as a sanity check
+     *
+     * @param p the current priority of the entity
+     * @param data the value of the entity
+     * @param newPriority the new priority of that entity
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        Integer pos = this.positions.get(data);
+        if (pos == null || !this.entities[pos].priority.equals(p)) {
+            throw new RuntimeException("Can't change priority of a non-existent entity");
+        }
+        this.entities[pos].priority = newPriority;
+        this.restoreOrder(pos);
+    }
+
+    /**
+     *
+     * @param data the value to look for
+     * @return true if the value is in the queue
+     */
+    public boolean contains(V data) {
+        return this.positions.containsKey(data);
+    }
+
+    /**
+     *
+     * @param data the value of the entity
+     * @return the current priority of the value
+     */
+    public E getPriority(V data) {
+        Integer pos = this.positions.get(data);
+        if (pos == null) {
+            throw new RuntimeException("Can't get priority of a non-existent entity");
+        }
+        return this.entities[pos].priority;
+    }
+
+    /**
+     * Removes an arbitrary entity from the queue in O(log n)
+     *
+     * @param data the value of the entity to remove
+     * @return true if the value was in the queue
+     */
+    public boolean remove(V data) {
+        Integer pos = this.positions.remove(data);
+        if (pos == null) {
+            return false;
+        }
+
+        this.numEntities--;
+        Entity<E, V> last = this.entities[this.numEntities];
+        this.entities[this.numEntities] = null;
+        //the removed entity was not the last one, so fill its slot with the last entity
+        if (pos != this.numEntities) {
+            this.place(last, pos);
+            this.restoreOrder(pos);
+        }
+        return true;
+    }
+
+    /**
+     * Reinitialize the queue
+     */
+    @Override
+    public void empty() {
+        super.empty();
+        this.positions.clear();
+    }
+
+    @Override
+    protected void place(Entity<E, V> entity, int pos) {
+        this.entities[pos] = entity;
+        this.positions.put(entity.value, pos);
+    }
+}
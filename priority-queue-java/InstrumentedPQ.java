@@ -0,0 +1,168 @@
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+
+/**
+ * A decorator recording metrics about any priority queue: operation counts,
+ * latency histograms and the high-water size. If the wrapped queue implements
+ * PQMetrics.Reporter, it is handed the same metrics object and also reports
+ * its internal work; PQMetrics lists which queues do. Recording can be switched off at any time, after which
+ * every operation costs one extra boolean check.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class InstrumentedPQ<E, V> implements PriorityQueue<E, V> {
+
+    private final PriorityQueue<E, V> pQ;
+    private final PQMetrics metrics;
+    private boolean enabled;
+
+    /**
+     *
+     * @param pQ the queue to instrument
+     */
+    public InstrumentedPQ(PriorityQueue<E, V> pQ) {
+        this.pQ = pQ;
+        this.metrics = new PQMetrics();
+        this.setEnabled(true);
+    }
+
+    /**
+     *
+     * @param enabled whether to record metrics
+     */
+    public final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (this.pQ instanceof PQMetrics.Reporter) {
+            ((PQMetrics.Reporter) this.pQ).setMetrics(enabled ? this.metrics : null);
+        }
+    }
+
+    /**
+     *
+     * @return the live metrics of the queue. Use snapshot for a stable copy
+     */
+    public PQMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     *
+     * @return a copy of the current metrics
+     */
+    public PQMetrics.Snapshot snapshot() {
+        return this.metrics.snapshot();
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.enabled) {
+            this.metrics.getMaxCount++;
+        }
+        return this.pQ.getMaxEntity();
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        if (!this.enabled) {
+            return this.pQ.removeMaxEntity();
+        }
+        long start = System.nanoTime();
+        V value = this.pQ.removeMaxEntity();
+        this.metrics.removeMaxLatency.record(System.nanoTime() - start);
+        this.metrics.removeMaxCount++;
+        return value;
+    }
+
+    @Override
+    public V getMinEntity() {
+        return this.pQ.getMinEntity();
+    }
+
+    @Override
+    public V removeMinEntity() {
+        return this.pQ.removeMinEntity();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.pQ.isEmpty();
+    }
+
+    @Override
+    public void addEntity(E p, V data) {
+        if (!this.enabled) {
+            this.pQ.addEntity(p, data);
+            return;
+        }
+        long start = System.nanoTime();
+        this.pQ.addEntity(p, data);
+        this.metrics.addLatency.record(System.nanoTime() - start);
+        this.metrics.addCount++;
+        int size = this.pQ.getSize();
+        if (size > this.metrics.highWaterSize) {
+            this.metrics.highWaterSize = size;
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return this.pQ.getSize();
+    }
+
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        if (!this.enabled) {
+            this.pQ.changePriority(p, data, newPriority);
+            return;
+        }
+        long start = System.nanoTime();
+        this.pQ.changePriority(p, data, newPriority);
+        this.metrics.changePriorityLatency.record(System.nanoTime() - start);
+        this.metrics.changePriorityCount++;
+    }
+
+    @Override
+    public void empty() {
+        this.pQ.empty();
+    }
+
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        this.pQ.addAll(priorities, values);
+        if (this.enabled) {
+            this.metrics.addCount += priorities.length;
+            if (this.pQ.getSize() > this.metrics.highWaterSize) {
+                this.metrics.highWaterSize = this.pQ.getSize();
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = this.pQ.drainTo(collection, maxEntities);
+        if (this.enabled) {
+            this.metrics.removeMaxCount += drained;
+        }
+        return drained;
+    }
+
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        this.pQ.forEachEntity(action);
+    }
+
+    @Override
+    public Iterator<V> orderedIterator() {
+        return this.pQ.orderedIterator();
+    }
+
+    @Override
+    public Spliterator<V> spliterator() {
+        return this.pQ.spliterator();
+    }
+}
@@ -0,0 +1,214 @@
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares the queues specialised for integer priorities with the general
+ * ones on three workloads:
+ *
+ * hold: the queue holds n entities; every step removes the maximum p and adds
+ * an entity with priority p - 1 - random(C). The priorities are monotone, as
+ * in Dijkstra's algorithm or a discrete event simulation.
+ *
+ * bounded: random priorities below C, half of the steps removing the maximum
+ * and half adding. Not monotone, so RadixHeapPQ can't run it.
+ *
+ * timers: n timers with deadlines up to C ticks ahead; time advances one tick
+ * per step and every fired timer is scheduled again.
+ *
+ * Usage: java IntegerPQBenchmark [n] [steps] [C]
+ *
+ * @author aladago
+ */
+public class IntegerPQBenchmark {
+
+    private static final int DEFAULT_SIZE = 100000;
+    private static final int DEFAULT_STEPS = 2000000;
+    private static final int DEFAULT_RANGE = 1000;
+    //ArrayBasedPQ removes in O(n), so it only runs on queues up to this size
+    private static final int ARRAY_QUEUE_SIZE_LIMIT = 10000;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        int range = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RANGE;
+
+        //the first run of every queue warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "warm-up" : "measured");
+
+            System.out.println(" hold");
+            long expected = IntegerPQBenchmark.time("HeapBasedPQ", steps,
+                    IntegerPQBenchmark.hold(new HeapBasedPQ<Long, Integer>(), n, steps, range));
+            IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("RadixHeapPQ", steps,
+                    IntegerPQBenchmark.hold(new RadixHeapPQ<Integer>(), n, steps, range)));
+            if (n <= ARRAY_QUEUE_SIZE_LIMIT) {
+                IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("ArrayBasedPQ", steps,
+                        IntegerPQBenchmark.hold(new ArrayBasedPQ<Long, Integer>(), n, steps, range)));
+            }
+
+            System.out.println(" bounded");
+            expected = IntegerPQBenchmark.time("HeapBasedPQ", steps,
+                    IntegerPQBenchmark.bounded(new HeapBasedPQ<Integer, Integer>(), n, steps, range));
+            IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("BucketPQ", steps,
+                    IntegerPQBenchmark.bounded(new BucketPQ<Integer>(range - 1), n, steps, range)));
+            if (n <= ARRAY_QUEUE_SIZE_LIMIT) {
+                IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("ArrayBasedPQ", steps,
+                        IntegerPQBenchmark.bounded(new ArrayBasedPQ<Integer, Integer>(), n, steps, range)));
+            }
+
+            System.out.println(" timers");
+            expected = IntegerPQBenchmark.time("HeapBasedPQ", steps,
+                    IntegerPQBenchmark.timers(new HeapBasedPQ<Long, Integer>(), n, steps, range));
+            IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("RadixHeapPQ", steps,
+                    IntegerPQBenchmark.timers(new RadixHeapPQ<Integer>(), n, steps, range)));
+            IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("TimerWheel", steps,
+                    IntegerPQBenchmark.timerWheel(n, steps, range)));
+            if (n <= ARRAY_QUEUE_SIZE_LIMIT) {
+                IntegerPQBenchmark.check(expected, IntegerPQBenchmark.time("ArrayBasedPQ", steps,
+                        IntegerPQBenchmark.timers(new ArrayBasedPQ<Long, Integer>(), n, steps, range)));
+            }
+        }
+    }
+
+    /**
+     * Runs one workload and prints its throughput
+     *
+     * @return the checksum computed by the workload
+     */
+    private static long time(String name, int steps, LongSupplier workload) {
+        long start = System.nanoTime();
+        long result = workload.getAsLong();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  %-16s %14.0f steps/s%n", name, steps / seconds);
+        return result;
+    }
+
+    private static void check(long expected, long actual) {
+        if (expected != actual) {
+            throw new RuntimeException("Checksums differ: " + expected + " and " + actual);
+        }
+    }
+
+    /**
+     * @return the sum of the removed priorities
+     */
+    private static LongSupplier hold(PriorityQueue<Long, Integer> pQ, int n, int steps, int range) {
+        return () -> {
+            Random random = new Random(42);
+            //the priority of every entity, indexed by its value
+            long[] priorities = new long[n + steps];
+            for (int i = 0; i < n; i++) {
+                priorities[i] = -random.nextInt(range);
+                pQ.addEntity(priorities[i], i);
+            }
+            long checksum = 0;
+            for (int i = 0; i < steps; i++) {
+                long maxPriority = priorities[pQ.removeMaxEntity()];
+                checksum += maxPriority;
+                priorities[n + i] = maxPriority - 1 - random.nextInt(range);
+                pQ.addEntity(priorities[n + i], n + i);
+            }
+            return checksum;
+        };
+    }
+
+    /**
+     * @return the sum of the removed priorities
+     */
+    private static LongSupplier bounded(PriorityQueue<Integer, Integer> pQ, int n, int steps, int range) {
+        return () -> {
+            Random random = new Random(42);
+            for (int i = 0; i < n; i++) {
+                int p = random.nextInt(range);
+                pQ.addEntity(p, p);
+            }
+            long checksum = 0;
+            for (int i = 0; i < steps; i++) {
+                if (random.nextBoolean() && !pQ.isEmpty()) {
+                    checksum += pQ.removeMaxEntity();
+                } else {
+                    int p = random.nextInt(range);
+                    pQ.addEntity(p, p);
+                }
+            }
+            return checksum;
+        };
+    }
+
+    /**
+     * Timers are entities whose priority is minus their deadline
+     *
+     * @return the sum of the deadlines of the fired timers
+     */
+    private static LongSupplier timers(PriorityQueue<Long, Integer> pQ, int n, int steps, int range) {
+        return () -> {
+            Random random = new Random(42);
+            long[] deadlines = new long[n];
+            for (int i = 0; i < n; i++) {
+                deadlines[i] = 1 + random.nextInt(range);
+                pQ.addEntity(-deadlines[i], i);
+            }
+            //a second generator so all queues reschedule the timers fired in a tick identically
+            Random delays = new Random(7);
+            long checksum = 0;
+            ArrayList<Integer> fired = new ArrayList<>();
+            for (long now = 1; now <= steps; now++) {
+                while (!pQ.isEmpty() && deadlines[pQ.getMaxEntity()] <= now) {
+                    fired.add(pQ.removeMaxEntity());
+                }
+                checksum += IntegerPQBenchmark.reschedule(fired, deadlines, now, delays, range);
+                for (int timer : fired) {
+                    pQ.addEntity(-deadlines[timer], timer);
+                }
+                fired.clear();
+            }
+            return checksum;
+        };
+    }
+
+    /**
+     * The timers workload on a TimerWheel
+     */
+    private static LongSupplier timerWheel(int n, int steps, int range) {
+        return () -> {
+            Random random = new Random(42);
+            long[] deadlines = new long[n];
+            TimerWheel<Integer> wheel = new TimerWheel<>(0);
+            for (int i = 0; i < n; i++) {
+                deadlines[i] = 1 + random.nextInt(range);
+                wheel.schedule(deadlines[i], i);
+            }
+            Random delays = new Random(7);
+            long checksum = 0;
+            ArrayList<Integer> fired = new ArrayList<>();
+            for (long now = 1; now <= steps; now++) {
+                wheel.advance(now, fired);
+                checksum += IntegerPQBenchmark.reschedule(fired, deadlines, now, delays, range);
+                for (int timer : fired) {
+                    wheel.schedule(deadlines[timer], timer);
+                }
+                fired.clear();
+            }
+            return checksum;
+        };
+    }
+
+    /**
+     * Gives new deadlines to the timers fired in one tick. The timers are
+     * handled in order of their index so every queue draws the same delays
+     *
+     * @return the sum of the deadlines which fired
+     */
+    private static long reschedule(ArrayList<Integer> fired, long[] deadlines, long now,
+            Random delays, int range) {
+        fired.sort(null);
+        long sum = 0;
+        for (int timer : fired) {
+            sum += deadlines[timer];
+            deadlines[timer] = now + 1 + delays.nextInt(range);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed array of buckets, in
+ * the style of HdrHistogram. Values below 128 get a bucket each; above that
+ * every power of two is split into 64 buckets, so a recorded value is off by
+ * less than 1.6%. Recording never allocates.
+ *
+ * @author aladago
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final long[] counts;
+    private long totalCount;
+    private long maxValue;
+
+    public LatencyHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    /**
+     *
+     * @param value a latency in nanoseconds. Negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts[LatencyHistogram.indexOf(value)]++;
+        this.totalCount++;
+        if (value > this.maxValue) {
+            this.maxValue = value;
+        }
+    }
+
+    /**
+     *
+     * @return the number of recorded values
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     *
+     * @return the largest recorded value
+     */
+    public long getMaxValue() {
+        return this.maxValue;
+    }
+
+    /**
+     *
+     * @param percentile a number between 0 and 100
+     * @return the value below or at which the given percentage of the recorded
+     * values fall, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * this.totalCount);
+        rank = Math.max(1, Math.min(rank, this.totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValueOf(i), this.maxValue);
+            }
+        }
+        return this.maxValue;
+    }
+
+    /**
+     *
+     * @return an independent copy of this histogram
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(this.counts, 0, copy.counts, 0, BUCKETS);
+        copy.totalCount = this.totalCount;
+        copy.maxValue = this.maxValue;
+        return copy;
+    }
+
+    /**
+     * Forgets all recorded values
+     */
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.totalCount = 0;
+        this.maxValue = 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        //keep the 7 most significant bits; the top one is always set
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKETS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
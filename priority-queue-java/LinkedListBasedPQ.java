@@ -1,17 +1,31 @@
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 /**
- * This an implementation of a priority queue using a singly linked list
+ * This an implementation of a priority queue using a doubly linked list, kept
+ * in order of decreasing priority. The head is the maximum and the tail the
+ * minimum, so both ends are reached and removed in O(1)
  * @author aladago
  * @param <E> the priority of an entity
  * @param <V> the data of an entity
  */
-public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements PriorityQueue<E, V> {
+public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements PriorityQueue<E, V>,
+        PQMetrics.Reporter {
 
     Node<E, V> head;
+    Node<E, V> tail;
     int size;
+    private PQMetrics metrics;
 
     private static class Node<E, V> {
         Node<E, V> next;
+        Node<E, V> prev;
         V data;
         E priority;
 
@@ -29,11 +43,13 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
 
     public LinkedListBasedPQ() {
         head = null;
+        tail = null;
         size = 0;
     }
 
     public LinkedListBasedPQ(E p, V d) {
         head = new Node(p, d);
+        tail = head;
         this.size = 1;
     }
 
@@ -43,18 +59,33 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
         Node<E, V> newNode = new Node(p, d);
         if (head == null) {
             head = newNode;
+            tail = newNode;
         } else if (head.priority.compareTo(p) < 0) {
             //if the new item has the highest priority
             newNode.next = head;
+            head.prev = newNode;
             head = newNode;
+        } else if (tail.priority.compareTo(p) >= 0) {
+            //if the new item has the lowest priority it goes after the tail
+            //without walking the list
+            newNode.prev = tail;
+            tail.next = newNode;
+            tail = newNode;
+            if (metrics != null) {
+                metrics.comparisons(2);
+            }
         } else {
             Node<E, V> prevNode = head;
             Node<E, V> nextNode = head.next;
+            int steps = 0;
 
             while (nextNode != null) {
+                steps++;
                 if (prevNode.priority.compareTo(p) >= 0 && nextNode.priority.compareTo(p) < 0) {
                     prevNode.next = newNode;
+                    newNode.prev = prevNode;
                     newNode.next = nextNode;
+                    nextNode.prev = newNode;
                     break;
                 }
                 //update nodes
@@ -62,13 +93,25 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
                 nextNode = nextNode.next;
             }
 
-            if (nextNode == null) {
-                prevNode.next = newNode;
+            if (metrics != null) {
+                //the comparisons with the head and the tail plus up to two per step
+                metrics.comparisons(2 + 2 * steps);
+                metrics.traversalSteps(steps);
             }
         }        
         size++;
     }
 
+    /**
+     * Starts or stops reporting comparisons and list traversal steps
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public V removeMaxEntity() {
         if(head == null){
@@ -76,11 +119,26 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
         }
         
         V dataOfHighest = head.data;
-        head = head.next;
-        size--;
+        this.unlink(head);
         return dataOfHighest;
     }
 
+    /**
+     * Removes the tail of the list in O(1). Among entities of equal priority
+     * the tail is the one added last
+     *
+     * @return the value of the entity with the lowest priority
+     */
+    @Override
+    public V removeMinEntity() {
+        if (tail == null) {
+            throw new RuntimeException("Can't remove min entity from an empty queue");
+        }
+        V dataOfLowest = tail.data;
+        this.unlink(tail);
+        return dataOfLowest;
+    }
+
     @Override
     public V getMaxEntity() {
         if(head == null){
@@ -89,6 +147,14 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
         return head.data;
     }
 
+    @Override
+    public V getMinEntity() {
+        if (tail == null) {
+            throw new RuntimeException("Can't get min entity from an empty queue");
+        }
+        return tail.data;
+    }
+
     @Override
     public boolean isEmpty() {
         return head == null;
@@ -105,38 +171,210 @@ public class LinkedListBasedPQ<E extends Comparable<? super E>, V>  implements P
       if(head == null){
           throw new RuntimeException("Can't change priority of non-existent item");
       }
-        Node<E, V> currentNode = head;
-        //if the node to change priority is the head, then point the head to the next node and 
-        //insert a new node
-        if(currentNode.priority.equals(p) && currentNode.data.equals(data)){
-            head = currentNode.next;
-            this.addEntity(newPriority, data);
-        }else{
-            //iterate through the list
-            //if the node exist, points its previous to its next
-            // add a new node with the new priority
-            while(currentNode.next != null){
-               if(currentNode.next.priority.equals(p) && currentNode.next.data.equals(data)){
-                   currentNode.next = currentNode.next.next;
-                   this.addEntity(newPriority, data);
-                   break;
-               }
-               currentNode = currentNode.next;
-            }
-            
-            //the node to change had the last priority
-            if(currentNode.next == null && currentNode.priority.equals(p) 
-                    && currentNode.data.equals(data)){
-                currentNode = null;
+        //find the node, unlink it and insert a new node with the new priority
+        for (Node<E, V> currentNode = head; currentNode != null; currentNode = currentNode.next) {
+            if (currentNode.priority.equals(p) && currentNode.data.equals(data)) {
+                this.unlink(currentNode);
                 this.addEntity(newPriority, data);
+                return;
             }
-        }      
+        }
+    }
+
+    /**
+     * Takes a node out of the list, fixing the head or the tail when it is
+     * one of them
+     */
+    private void unlink(Node<E, V> node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        size--;
     }
     
     
+    /**
+     * Visits the entities from the head of the list, in order of decreasing
+     * priority
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (Node<E, V> node = head; node != null; node = node.next) {
+            action.accept(node.priority, node.data);
+        }
+    }
+
+    /**
+     * Follows the list from the head, which is already in order of
+     * decreasing priority
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        return new Iterator<V>() {
+            private Node<E, V> node = head;
+
+            @Override
+            public boolean hasNext() {
+                return node != null;
+            }
+
+            @Override
+            public V next() {
+                if (node == null) {
+                    throw new NoSuchElementException();
+                }
+                V data = node.data;
+                node = node.next;
+                return data;
+            }
+        };
+    }
+
+    /**
+     * Splits the list in place, walking to the middle of the nodes left
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new NodeSpliterator<>(head, this.size);
+    }
+
+    /**
+     * Visits count nodes from a node on. A split walks half of them and hands
+     * those to the new spliterator
+     */
+    private static class NodeSpliterator<E, V> implements Spliterator<V> {
+
+        private Node<E, V> node;
+        private int count;
+
+        NodeSpliterator(Node<E, V> node, int count) {
+            this.node = node;
+            this.count = count;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (this.count == 0) {
+                return false;
+            }
+            V data = this.node.data;
+            this.node = this.node.next;
+            this.count--;
+            action.accept(data);
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int half = this.count / 2;
+            if (half == 0) {
+                return null;
+            }
+            NodeSpliterator<E, V> prefix = new NodeSpliterator<>(this.node, half);
+            for (int i = 0; i < half; i++) {
+                this.node = this.node.next;
+            }
+            this.count -= half;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.count;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    /**
+     * Adds many entities at once. Instead of n ordered inserts, the new
+     * entities are sorted once and then merged with the list in a single pass,
+     * O(m log m + n) in total
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<E, V>[] newNodes = (Node<E, V>[]) new Node<?, ?>[priorities.length];
+        for (int i = 0; i < newNodes.length; i++) {
+            newNodes[i] = new Node<>(priorities[i], values[i]);
+        }
+        //the sort is stable, so entities of equal priority keep their order
+        Arrays.sort(newNodes, (a, b) -> b.priority.compareTo(a.priority));
+
+        //merge the sorted nodes into the list. On ties the existing node comes
+        //first, the same place addEntity would put the new node
+        Node<E, V> dummy = new Node<>(null, null, head);
+        Node<E, V> prevNode = dummy;
+        for (Node<E, V> newNode : newNodes) {
+            while (prevNode.next != null && prevNode.next.priority.compareTo(newNode.priority) >= 0) {
+                prevNode = prevNode.next;
+            }
+            newNode.next = prevNode.next;
+            newNode.prev = prevNode;
+            if (prevNode.next != null) {
+                prevNode.next.prev = newNode;
+            }
+            prevNode.next = newNode;
+            prevNode = newNode;
+        }
+        head = dummy.next;
+        if (head != null) {
+            head.prev = null;
+        }
+        if (prevNode.next == null && prevNode != dummy) {
+            tail = prevNode;
+        }
+        size += newNodes.length;
+    }
+
+    /**
+     * Removes up to maxEntities entities from the front of the list
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        while (drained < maxEntities && head != null) {
+            collection.add(head.data);
+            this.unlink(head);
+            drained++;
+        }
+        return drained;
+    }
+    
     @Override
     public void empty(){
         this.head = null;
+        this.tail = null;
         this.size = 0;
     }
     
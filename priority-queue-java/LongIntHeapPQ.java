@@ -0,0 +1,204 @@
+
+/**
+ * A binary heap priority queue specialised for long priorities and int values.
+ * Priorities and values are kept in two parallel primitive arrays so adding and
+ * removing entities does not allocate or box anything. The arrays only grow
+ * when the queue is full. It offers the same operations as the PriorityQueue
+ * interface, with primitive parameters.
+ *
+ * @author aladago
+ */
+public class LongIntHeapPQ {
+
+    private long[] priorities;
+    private int[] values;
+    private static final int INITIAL_SIZE = 10;
+    public static final int INDEX_OF_MAX_ENTITY = 0;
+    private int numEntities;
+
+    public LongIntHeapPQ() {
+        this(INITIAL_SIZE);
+    }
+
+    /**
+     *
+     * @param initialCapacity the number of entities the queue can hold before
+     * its arrays need to grow
+     */
+    public LongIntHeapPQ(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new RuntimeException("The capacity of a queue must be positive. Got " + initialCapacity);
+        }
+        this.priorities = new long[initialCapacity];
+        this.values = new int[initialCapacity];
+        this.numEntities = 0;
+    }
+
+    /**
+     *
+     * @return true if the queue has no entities
+     */
+    public boolean isEmpty() {
+        return this.numEntities < 1;
+    }
+
+    /**
+     *
+     * @return the value with the highest priority
+     */
+    public int getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.values[INDEX_OF_MAX_ENTITY];
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public long getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.priorities[INDEX_OF_MAX_ENTITY];
+    }
+
+    /**
+     *
+     * @return the value with the highest priority, which is removed from the
+     * queue
+     */
+    public int removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+
+        int maxValue = this.values[INDEX_OF_MAX_ENTITY];
+        this.numEntities--;
+        if (this.numEntities > 0) {
+            this.siftDown(INDEX_OF_MAX_ENTITY, this.priorities[this.numEntities], this.values[this.numEntities]);
+        }
+        return maxValue;
+    }
+
+    /**
+     * Adds a new entity to the heap. post-condition: number of entities
+     * increases by 1 and size of the arrays may increase
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     */
+    public void addEntity(long p, int data) {
+        if (this.numEntities == this.priorities.length) {
+            this.expandHeap(2 * this.numEntities);
+        }
+        this.numEntities++;
+        this.siftUp(this.numEntities - 1, p, data);
+    }
+
+    /**
+     *
+     * @return the number of entities in the heap
+     */
+    public int getSize() {
+        return this.numEntities;
+    }
+
+    /**
+     * Removes all entities. The arrays are kept so that refilling the queue
+     * does not allocate
+     */
+    public void empty() {
+        this.numEntities = 0;
+    }
+
+    /**
+     * Changes the priority of every entity with the given priority and value.
+     * Finding the entities is a linear scan. A single match is sifted into
+     * place in O(log n); several are changed first and the heap is rebuilt in
+     * O(n), since sifting one could move another past the scan
+     *
+     * @param p the current priority of the entity
+     * @param data the value of the entity
+     * @param newPriority the new priority of that entity
+     */
+    public void changePriority(long p, int data, long newPriority) {
+        int matches = 0;
+        int lastMatch = -1;
+        for (int i = 0; i < this.numEntities; i++) {
+            if (this.priorities[i] == p && this.values[i] == data) {
+                this.priorities[i] = newPriority;
+                matches++;
+                lastMatch = i;
+            }
+        }
+        if (matches == 1) {
+            if (newPriority > p) {
+                this.siftUp(lastMatch, newPriority, data);
+            } else {
+                this.siftDown(lastMatch, newPriority, data);
+            }
+        } else if (matches > 1) {
+            for (int i = (this.numEntities - 2) >>> 1; i >= INDEX_OF_MAX_ENTITY; i--) {
+                this.siftDown(i, this.priorities[i], this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Moves the hole at pos towards the root until (p, data) can be stored in
+     * it without breaking the heap order
+     */
+    private void siftUp(int pos, long p, int data) {
+        while (pos > INDEX_OF_MAX_ENTITY) {
+            int parent = (pos - 1) >>> 1;
+            if (p <= this.priorities[parent]) {
+                break;
+            }
+            this.priorities[pos] = this.priorities[parent];
+            this.values[pos] = this.values[parent];
+            pos = parent;
+        }
+        this.priorities[pos] = p;
+        this.values[pos] = data;
+    }
+
+    /**
+     * Moves the hole at pos towards the leaves until (p, data) can be stored
+     * in it without breaking the heap order
+     */
+    private void siftDown(int pos, long p, int data) {
+        int half = this.numEntities >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < this.numEntities && this.priorities[right] > this.priorities[child]) {
+                child = right;
+            }
+            if (p >= this.priorities[child]) {
+                break;
+            }
+            this.priorities[pos] = this.priorities[child];
+            this.values[pos] = this.values[child];
+            pos = child;
+        }
+        this.priorities[pos] = p;
+        this.values[pos] = data;
+    }
+
+    /**
+     * Handle over-flows of the heap by expanding its size.
+     *
+     * @param newSize the new size of the arrays
+     */
+    private void expandHeap(int newSize) {
+        long[] updatedPriorities = new long[newSize];
+        int[] updatedValues = new int[newSize];
+        System.arraycopy(this.priorities, 0, updatedPriorities, 0, this.numEntities);
+        System.arraycopy(this.values, 0, updatedValues, 0, this.numEntities);
+        this.priorities = updatedPriorities;
+        this.values = updatedValues;
+    }
+
+}
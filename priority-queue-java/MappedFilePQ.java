@@ -0,0 +1,318 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * A binary heap of (long priority, long value) pairs stored off the Java heap
+ * in a memory-mapped file. Each entity is a fixed-width record of 16 bytes, so
+ * the queue can hold far more entities than fit in the JVM heap and puts no
+ * pressure on the garbage collector. The file is mapped in segments because a
+ * single MappedByteBuffer is limited to 2GB; new segments are mapped as the
+ * queue grows.
+ *
+ * The number of entities is kept in a header at the start of the file, so
+ * reopening the file restores the queue. Call force to make the content
+ * durable; the operating system writes it back lazily otherwise.
+ *
+ * @author aladago
+ */
+public class MappedFilePQ implements PriorityQueue<Long, Long>, Closeable {
+
+    private static final long MAGIC = 0x4d50514845415031L;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SIZE_OFFSET = 8;
+    private static final int SEGMENT_SHIFT_OFFSET = 16;
+    //records are 16 bytes, a long priority followed by a long value
+    private static final int RECORD_SHIFT = 4;
+    //2^26 records of 16 bytes make segments of 1GB
+    private static final int DEFAULT_SEGMENT_SHIFT = 26;
+    public static final long INDEX_OF_MAX_ENTITY = 0;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final ArrayList<MappedByteBuffer> segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private long numEntities;
+
+    /**
+     * Opens the queue stored in a file, creating the file if it doesn't exist
+     *
+     * @param file the file holding the heap
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public MappedFilePQ(Path file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     *
+     * @param file the file holding the heap
+     * @param segmentShift every segment holds 2^segmentShift records. Ignored
+     * when the file already exists
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public MappedFilePQ(Path file, int segmentShift) throws IOException {
+        if (segmentShift < 1 || segmentShift > 31 - RECORD_SHIFT) {
+            throw new RuntimeException("Segments must hold between 2 and 2^27 records. Got 2^" + segmentShift);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean isNew = this.channel.size() == 0;
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+
+        if (isNew) {
+            this.header.putLong(MAGIC_OFFSET, MAGIC);
+            this.header.putLong(SIZE_OFFSET, 0);
+            this.header.putLong(SEGMENT_SHIFT_OFFSET, segmentShift);
+        } else if (this.header.getLong(MAGIC_OFFSET) != MAGIC) {
+            this.channel.close();
+            throw new IOException(file + " doesn't hold a priority queue");
+        }
+
+        this.segmentShift = (int) this.header.getLong(SEGMENT_SHIFT_OFFSET);
+        this.segmentMask = (1L << this.segmentShift) - 1;
+        this.numEntities = this.header.getLong(SIZE_OFFSET);
+        this.segments = new ArrayList<>();
+        while (this.getCapacity() < Math.max(1, this.numEntities)) {
+            this.mapSegment();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.numEntities < 1;
+    }
+
+    @Override
+    public Long getMaxEntity() {
+        return this.getMaxValue();
+    }
+
+    /**
+     *
+     * @return the value with the highest priority
+     */
+    public long getMaxValue() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.valueAt(INDEX_OF_MAX_ENTITY);
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public long getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.priorityAt(INDEX_OF_MAX_ENTITY);
+    }
+
+    @Override
+    public Long removeMaxEntity() {
+        return this.removeMaxValue();
+    }
+
+    /**
+     *
+     * @return the value with the highest priority, which is removed
+     */
+    public long removeMaxValue() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+        long maxValue = this.valueAt(INDEX_OF_MAX_ENTITY);
+        this.setSize(this.numEntities - 1);
+        if (this.numEntities > 0) {
+            this.siftDown(INDEX_OF_MAX_ENTITY, this.priorityAt(this.numEntities), this.valueAt(this.numEntities));
+        }
+        return maxValue;
+    }
+
+    @Override
+    public void addEntity(Long p, Long data) {
+        this.addEntity(p.longValue(), data.longValue());
+    }
+
+    /**
+     * Adds an entity without boxing. Maps a new segment when the mapped ones
+     * are full
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     */
+    public void addEntity(long p, long data) {
+        if (this.numEntities == this.getCapacity()) {
+            this.mapSegment();
+        }
+        this.setSize(this.numEntities + 1);
+        this.siftUp(this.numEntities - 1, p, data);
+    }
+
+    /**
+     *
+     * @return the number of entities, capped at Integer.MAX_VALUE. See
+     * getLongSize
+     */
+    @Override
+    public int getSize() {
+        return (int) Math.min(Integer.MAX_VALUE, this.numEntities);
+    }
+
+    /**
+     *
+     * @return the number of entities
+     */
+    public long getLongSize() {
+        return this.numEntities;
+    }
+
+    /**
+     * Changes the priority of the first entity found with the given priority
+     * and value. Finding it is a linear scan of the file, moving it O(log n)
+     */
+    @Override
+    public void changePriority(Long p, Long data, Long newPriority) {
+        for (long i = 0; i < this.numEntities; i++) {
+            if (this.priorityAt(i) == p && this.valueAt(i) == data) {
+                if (newPriority > p) {
+                    this.siftUp(i, newPriority, data);
+                } else {
+                    this.siftDown(i, newPriority, data);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Walks the records of the heap in file order, which is heap order.
+     * Nothing is copied to the Java heap
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super Long, ? super Long> action) {
+        for (long i = 0; i < this.numEntities; i++) {
+            action.accept(this.priorityAt(i), this.valueAt(i));
+        }
+    }
+
+    /**
+     * Removes all entities. The file keeps its size so refilling it doesn't
+     * need to map new segments
+     */
+    @Override
+    public void empty() {
+        this.setSize(0);
+    }
+
+    /**
+     * Writes all changes to the storage device
+     */
+    public void force() {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+        this.header.force();
+    }
+
+    /**
+     * Forces the content to storage and closes the file. The mapped memory is
+     * released once the buffers are garbage collected
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.force();
+        this.segments.clear();
+        this.channel.close();
+    }
+
+    private long getCapacity() {
+        return (long) this.segments.size() << this.segmentShift;
+    }
+
+    private void mapSegment() {
+        long segmentBytes = (1L << this.segmentShift) << RECORD_SHIFT;
+        try {
+            this.segments.add(this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + this.segments.size() * segmentBytes, segmentBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't grow the queue file", e);
+        }
+    }
+
+    private void setSize(long size) {
+        this.numEntities = size;
+        this.header.putLong(SIZE_OFFSET, size);
+    }
+
+    private long priorityAt(long i) {
+        return this.segments.get((int) (i >>> this.segmentShift))
+                .getLong((int) ((i & this.segmentMask) << RECORD_SHIFT));
+    }
+
+    private long valueAt(long i) {
+        return this.segments.get((int) (i >>> this.segmentShift))
+                .getLong((int) ((i & this.segmentMask) << RECORD_SHIFT) + 8);
+    }
+
+    private void set(long i, long p, long data) {
+        MappedByteBuffer segment = this.segments.get((int) (i >>> this.segmentShift));
+        int offset = (int) ((i & this.segmentMask) << RECORD_SHIFT);
+        segment.putLong(offset, p);
+        segment.putLong(offset + 8, data);
+    }
+
+    /**
+     * Moves the hole at pos towards the root until (p, data) can be stored in
+     * it without breaking the heap order
+     */
+    private void siftUp(long pos, long p, long data) {
+        while (pos > INDEX_OF_MAX_ENTITY) {
+            long parent = (pos - 1) >>> 1;
+            long parentPriority = this.priorityAt(parent);
+            if (p <= parentPriority) {
+                break;
+            }
+            this.set(pos, parentPriority, this.valueAt(parent));
+            pos = parent;
+        }
+        this.set(pos, p, data);
+    }
+
+    /**
+     * Moves the hole at pos towards the leaves until (p, data) can be stored
+     * in it without breaking the heap order
+     */
+    private void siftDown(long pos, long p, long data) {
+        long half = this.numEntities >>> 1;
+        while (pos < half) {
+            long child = 2 * pos + 1;
+            long childPriority = this.priorityAt(child);
+            if (child + 1 < this.numEntities && this.priorityAt(child + 1) > childPriority) {
+                child++;
+                childPriority = this.priorityAt(child);
+            }
+            if (p >= childPriority) {
+                break;
+            }
+            this.set(pos, childPriority, this.valueAt(child));
+            pos = child;
+        }
+        this.set(pos, p, data);
+    }
+}
@@ -0,0 +1,311 @@
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+
+/**
+ * A double-ended priority queue stored in a min-max heap: a complete binary
+ * tree in an array whose even levels (counting the root as level 0) hold the
+ * minima of their subtrees and whose odd levels hold the maxima. The minimum
+ * is the root and the maximum one of its two children, so both are found in
+ * O(1), and adding or removing at either end is O(log n).
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class MinMaxHeapPQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V> {
+
+    private static final int INITIAL_SIZE = 10;
+    private static final int INDEX_OF_MIN_ENTITY = 0;
+
+    private E[] priorities;
+    private V[] values;
+    private int numEntities;
+
+    public MinMaxHeapPQ() {
+        this(INITIAL_SIZE);
+    }
+
+    /**
+     *
+     * @param initialCapacity the number of entities the queue holds before
+     * its arrays grow
+     */
+    @SuppressWarnings("unchecked")
+    public MinMaxHeapPQ(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new RuntimeException("The capacity of a queue must be positive. Got " + initialCapacity);
+        }
+        this.priorities = (E[]) new Comparable<?>[initialCapacity];
+        this.values = (V[]) new Object[initialCapacity];
+        this.numEntities = 0;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        return this.values[this.indexOfMax()];
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public E getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        return this.priorities[this.indexOfMax()];
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+        return this.removeAt(this.indexOfMax());
+    }
+
+    @Override
+    public V getMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get minimum entity from an empty queue");
+        }
+        return this.values[INDEX_OF_MIN_ENTITY];
+    }
+
+    /**
+     *
+     * @return the lowest priority in the queue
+     */
+    public E getMinPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get minimum priority from an empty queue");
+        }
+        return this.priorities[INDEX_OF_MIN_ENTITY];
+    }
+
+    @Override
+    public V removeMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove minimum entity from an empty queue");
+        }
+        return this.removeAt(INDEX_OF_MIN_ENTITY);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.numEntities < 1;
+    }
+
+    @Override
+    public void addEntity(E p, V data) {
+        if (this.numEntities == this.priorities.length) {
+            this.expand(2 * this.numEntities);
+        }
+        this.priorities[this.numEntities] = p;
+        this.values[this.numEntities] = data;
+        this.numEntities++;
+        this.pushUp(this.numEntities - 1);
+    }
+
+    @Override
+    public int getSize() {
+        return this.numEntities;
+    }
+
+    /**
+     * Changes the priority of the first entity found with the given priority
+     * and value, if there is one. Finding it is a linear scan, moving it
+     * O(log n)
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        for (int i = 0; i < this.numEntities; i++) {
+            if (this.priorities[i].equals(p) && this.values[i].equals(data)) {
+                this.removeAt(i);
+                this.addEntity(newPriority, data);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all entities. The arrays keep their size
+     */
+    @Override
+    public void empty() {
+        Arrays.fill(this.priorities, 0, this.numEntities, null);
+        Arrays.fill(this.values, 0, this.numEntities, null);
+        this.numEntities = 0;
+    }
+
+    /**
+     * Adds many entities at once in O(n + m). The new entities are appended
+     * and the heap order is restored bottom-up, pushing every inner node down
+     * from the last one to the root
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    @Override
+    public void addAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+        int newSize = this.numEntities + priorities.length;
+        if (newSize > this.priorities.length) {
+            this.expand(Math.max(newSize, 2 * this.numEntities));
+        }
+        System.arraycopy(priorities, 0, this.priorities, this.numEntities, priorities.length);
+        System.arraycopy(values, 0, this.values, this.numEntities, values.length);
+        this.numEntities = newSize;
+        for (int i = this.numEntities / 2 - 1; i >= 0; i--) {
+            this.pushDown(i);
+        }
+    }
+
+    /**
+     * Visits the entities in array order, the minimum first
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (int i = 0; i < this.numEntities; i++) {
+            action.accept(this.priorities[i], this.values[i]);
+        }
+    }
+
+    /**
+     * Splits the array in place, without an encounter order
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return Spliterators.spliterator(this.values, 0, this.numEntities, 0);
+    }
+
+    /**
+     * Replaces the entity at pos by the last entity and restores the heap order
+     *
+     * @return the value of the removed entity
+     */
+    private V removeAt(int pos) {
+        V removed = this.values[pos];
+        this.numEntities--;
+        this.priorities[pos] = this.priorities[this.numEntities];
+        this.values[pos] = this.values[this.numEntities];
+        this.priorities[this.numEntities] = null;
+        this.values[this.numEntities] = null;
+        if (pos < this.numEntities) {
+            //the last entity may belong above or below pos. When it moves up,
+            //the ancestor which takes its place may in turn belong further down
+            this.pushUp(pos);
+            this.pushDown(pos);
+        }
+        return removed;
+    }
+
+    /**
+     * The maximum is the root if it is alone, otherwise the larger of its
+     * children
+     */
+    private int indexOfMax() {
+        if (this.numEntities < 3) {
+            return this.numEntities - 1;
+        }
+        return this.priorities[1].compareTo(this.priorities[2]) >= 0 ? 1 : 2;
+    }
+
+    private static boolean isMinLevel(int pos) {
+        return (31 - Integer.numberOfLeadingZeros(pos + 1)) % 2 == 0;
+    }
+
+    /**
+     * Compares two positions the way the level of the first demands: on a min
+     * level "better" means lower, on a max level it means higher
+     */
+    private boolean better(int first, int second, boolean minLevel) {
+        int order = this.priorities[first].compareTo(this.priorities[second]);
+        return minLevel ? order < 0 : order > 0;
+    }
+
+    private void pushUp(int pos) {
+        if (pos == INDEX_OF_MIN_ENTITY) {
+            return;
+        }
+        int parent = (pos - 1) / 2;
+        boolean minLevel = MinMaxHeapPQ.isMinLevel(pos);
+        if (this.better(parent, pos, minLevel)) {
+            //pos belongs on the levels of its parent
+            this.swap(pos, parent);
+            this.pushUpGrandparents(parent, !minLevel);
+        } else {
+            this.pushUpGrandparents(pos, minLevel);
+        }
+    }
+
+    private void pushUpGrandparents(int pos, boolean minLevel) {
+        while (pos > 2) {
+            int grandparent = ((pos - 1) / 2 - 1) / 2;
+            if (!this.better(pos, grandparent, minLevel)) {
+                break;
+            }
+            this.swap(pos, grandparent);
+            pos = grandparent;
+        }
+    }
+
+    private void pushDown(int pos) {
+        boolean minLevel = MinMaxHeapPQ.isMinLevel(pos);
+        while (2 * pos + 1 < this.numEntities) {
+            //the best among children and grandchildren, which are contiguous
+            int best = 2 * pos + 1;
+            if (best + 1 < this.numEntities && this.better(best + 1, best, minLevel)) {
+                best = best + 1;
+            }
+            int lastGrandchild = Math.min(4 * pos + 6, this.numEntities - 1);
+            for (int g = 4 * pos + 3; g <= lastGrandchild; g++) {
+                if (this.better(g, best, minLevel)) {
+                    best = g;
+                }
+            }
+
+            if (!this.better(best, pos, minLevel)) {
+                return;
+            }
+            this.swap(best, pos);
+            if (best <= 2 * pos + 2) {
+                //a child: it is on the opposite kind of level, so we're done
+                return;
+            }
+            int parent = (best - 1) / 2;
+            if (this.better(parent, best, minLevel)) {
+                this.swap(best, parent);
+            }
+            pos = best;
+        }
+    }
+
+    private void swap(int i, int j) {
+        E tempPriority = this.priorities[i];
+        this.priorities[i] = this.priorities[j];
+        this.priorities[j] = tempPriority;
+        V tempValue = this.values[i];
+        this.values[i] = this.values[j];
+        this.values[j] = tempValue;
+    }
+
+    private void expand(int newSize) {
+        this.priorities = Arrays.copyOf(this.priorities, newSize);
+        this.values = Arrays.copyOf(this.values, newSize);
+    }
+}
@@ -0,0 +1,291 @@
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe priority queue made of several binary heaps, each guarded by
+ * its own lock (a MultiQueue). addEntity puts the entity into a randomly chosen
+ * heap; removeMaxEntity looks at the maxima of two random heaps and removes the
+ * larger one. Threads rarely contend for the same lock, so throughput grows
+ * with the number of cores.
+ *
+ * Consistency: relaxed. removeMaxEntity returns an entity whose priority is
+ * close to, but not necessarily equal to, the highest priority in the queue.
+ * With c heaps per thread the expected rank of the removed entity is O(c * p)
+ * for p threads. getMaxEntity and changePriority visit every heap and are
+ * exact with respect to the heaps they have locked. Use ConcurrentSkipListPQ
+ * when strict ordering is required.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class MultiQueuePQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V> {
+
+    private static final int DEFAULT_QUEUES_PER_THREAD = 2;
+    //returned by the removals instead of a value when every heap was empty,
+    //since null is a valid value
+    private static final Object NONE = new Object();
+
+    private final Stripe<E, V>[] stripes;
+    private final AtomicInteger size;
+
+    private static class Stripe<E extends Comparable<? super E>, V> {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final HeapBasedPQ<E, V> heap = new HeapBasedPQ<>();
+        //the highest priority of the heap, readable without holding the lock
+        volatile E top;
+
+        void updateTop() {
+            this.top = this.heap.isEmpty() ? null : this.heap.getMaxPriority();
+        }
+    }
+
+    public MultiQueuePQ() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUES_PER_THREAD);
+    }
+
+    /**
+     *
+     * @param threads the expected number of threads using the queue
+     * @param queuesPerThread the number of heaps per thread. More heaps means
+     * less contention but a more relaxed ordering
+     */
+    public MultiQueuePQ(int threads, int queuesPerThread) {
+        if (threads < 1 || queuesPerThread < 1) {
+            throw new RuntimeException("The number of threads and queues per thread must be positive");
+        }
+        @SuppressWarnings("unchecked")
+        Stripe<E, V>[] stripes = (Stripe<E, V>[]) new Stripe<?, ?>[Math.max(2, threads * queuesPerThread)];
+        this.stripes = stripes;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Looks at every heap
+     *
+     * @return the value with the highest priority
+     */
+    @Override
+    public V getMaxEntity() {
+        V maxValue = null;
+        E maxPriority = null;
+        for (Stripe<E, V> stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                if (!stripe.heap.isEmpty()
+                        && (maxPriority == null || stripe.heap.getMaxPriority().compareTo(maxPriority) > 0)) {
+                    maxPriority = stripe.heap.getMaxPriority();
+                    maxValue = stripe.heap.getMaxEntity();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        if (maxPriority == null) {
+            throw new RuntimeException("Can't get max entity from an empty queue");
+        }
+        return maxValue;
+    }
+
+    /**
+     * Removes the larger of the maxima of two randomly chosen heaps. Falls back
+     * to scanning every heap when both are empty
+     *
+     * @return a value with a priority close to the highest
+     */
+    @Override
+    public V removeMaxEntity() {
+        Object value = this.pollMaxEntity();
+        if (value == NONE) {
+            throw new RuntimeException("Can't remove max entity from an empty queue");
+        }
+        @SuppressWarnings("unchecked")
+        V maxValue = (V) value;
+        return maxValue;
+    }
+
+    /**
+     * Removes up to maxEntities entities, each with the same relaxed ordering
+     * as removeMaxEntity
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        Object value;
+        while (drained < maxEntities && (value = this.pollMaxEntity()) != NONE) {
+            @SuppressWarnings("unchecked")
+            V drainedValue = (V) value;
+            collection.add(drainedValue);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     *
+     * @return true if no heap holds an entity
+     */
+    @Override
+    public boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    /**
+     * Adds the entity to a random heap, skipping heaps whose lock is held by
+     * another thread
+     */
+    @Override
+    public void addEntity(E p, V data) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            Stripe<E, V> stripe = this.stripes[random.nextInt(this.stripes.length)];
+            if (stripe.lock.tryLock()) {
+                try {
+                    stripe.heap.addEntity(p, data);
+                    stripe.updateTop();
+                    //counted while the heap is locked so size never runs behind a removal
+                    this.size.incrementAndGet();
+                    return;
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * Changes the priority of every matching entity, one heap at a time
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        for (Stripe<E, V> stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.heap.changePriority(p, data, newPriority);
+                stripe.updateTop();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Visits the entities one heap at a time, holding the lock of only that
+     * heap. Entities added or removed meanwhile may or may not be visited
+     *
+     * @param action called with the priority and the value of every entity,
+     * while a heap is locked
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        for (Stripe<E, V> stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.heap.forEachEntity(action);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes all entities, one heap at a time
+     */
+    @Override
+    public void empty() {
+        for (Stripe<E, V> stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                this.size.addAndGet(-stripe.heap.getSize());
+                stripe.heap.empty();
+                stripe.updateTop();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     *
+     * @return a value with a priority close to the highest or NONE if the
+     * queue is empty
+     */
+    private Object pollMaxEntity() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (this.size.get() > 0) {
+            Stripe<E, V> first = this.stripes[random.nextInt(this.stripes.length)];
+            Stripe<E, V> second = this.stripes[random.nextInt(this.stripes.length)];
+            E firstTop = first.top;
+            E secondTop = second.top;
+            Stripe<E, V> chosen;
+            if (firstTop == null) {
+                chosen = secondTop == null ? null : second;
+            } else {
+                chosen = secondTop == null || firstTop.compareTo(secondTop) >= 0 ? first : second;
+            }
+
+            if (chosen != null && chosen.lock.tryLock()) {
+                try {
+                    if (!chosen.heap.isEmpty()) {
+                        return this.removeFrom(chosen);
+                    }
+                } finally {
+                    chosen.lock.unlock();
+                }
+            } else if (chosen == null) {
+                Object value = this.removeFromAnyStripe();
+                if (value != NONE) {
+                    return value;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Must be called while holding the lock of the stripe
+     */
+    private V removeFrom(Stripe<E, V> stripe) {
+        V value = stripe.heap.removeMaxEntity();
+        stripe.updateTop();
+        this.size.decrementAndGet();
+        return value;
+    }
+
+    /**
+     *
+     * @return the maximum of the first non-empty heap or NONE if all heaps
+     * were empty
+     */
+    private Object removeFromAnyStripe() {
+        for (Stripe<E, V> stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                if (!stripe.heap.isEmpty()) {
+                    return this.removeFrom(stripe);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,103 @@
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the ordered queues, BSTBasedPQ, RedBlackTreePQ and BPlusTreePQ,
+ * on large queues where the cost is dominated by cache misses: n random
+ * inserts, a hold phase of removeMaxEntity and addEntity pairs, removing the
+ * top tenth of the priorities (with removeRange where available), and
+ * draining the rest.
+ *
+ * Each run measures one implementation in a fresh JVM so that hardware
+ * counters can be attributed to it, for example on Linux:
+ *
+ * perf stat -e cache-misses,cache-references java OrderedPQBenchmark 1000000 BPlusTreePQ
+ *
+ * Usage: java OrderedPQBenchmark [n] [implementation]
+ *
+ * @author aladago
+ */
+public class OrderedPQBenchmark {
+
+    private static final int DEFAULT_SIZE = 1000000;
+    private static final String[] IMPLEMENTATIONS = {"BSTBasedPQ", "RedBlackTreePQ", "BPlusTreePQ"};
+
+    //consumes results so the JIT can't remove the benchmarked calls
+    private static long blackHole;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        String[] names = args.length > 1 ? new String[]{args[1]} : IMPLEMENTATIONS;
+
+        System.out.printf("%-16s %12s %12s %12s %12s%n", "implementation", "insert ms", "hold ms",
+                "top 10% ms", "drain ms");
+        for (String name : names) {
+            //the first run warms up the JIT
+            OrderedPQBenchmark.run(name, n / 10, false);
+            OrderedPQBenchmark.run(name, n, true);
+        }
+        System.out.println("(checksum " + blackHole + ")");
+    }
+
+    private static PriorityQueue<Long, Integer> create(String name) {
+        switch (name) {
+            case "BSTBasedPQ":
+                return new BSTBasedPQ<>();
+            case "RedBlackTreePQ":
+                return new RedBlackTreePQ<>();
+            case "BPlusTreePQ":
+                return new BPlusTreePQ<>();
+            default:
+                throw new RuntimeException("Unknown implementation " + name);
+        }
+    }
+
+    private static void run(String name, int n, boolean print) {
+        PriorityQueue<Long, Integer> pQ = OrderedPQBenchmark.create(name);
+        Random random = new Random(42);
+        //random priorities keep BSTBasedPQ balanced enough to be usable, and
+        //are distinct so BSTBasedPQ, which drops duplicates, keeps them all.
+        //The value of an entity indexes its current priority
+        long[] priorities = new long[n];
+        for (int i = 0; i < n; i++) {
+            priorities[i] = random.nextLong() >>> 1;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            pQ.addEntity(priorities[i], i);
+        }
+        long inserted = System.nanoTime();
+
+        for (int i = 0; i < n; i++) {
+            int value = pQ.removeMaxEntity();
+            priorities[value] = random.nextLong() >>> 1;
+            pQ.addEntity(priorities[value], value);
+        }
+        long held = System.nanoTime();
+
+        long[] sorted = priorities.clone();
+        Arrays.sort(sorted);
+        long cutOff = sorted[n - n / 10];
+        long cutStart = System.nanoTime();
+        if (pQ instanceof BPlusTreePQ) {
+            blackHole += ((BPlusTreePQ<Integer>) pQ).removeRange(cutOff, Long.MAX_VALUE);
+        } else {
+            while (!pQ.isEmpty() && priorities[pQ.getMaxEntity()] >= cutOff) {
+                blackHole += pQ.removeMaxEntity();
+            }
+        }
+        long cut = System.nanoTime();
+
+        while (!pQ.isEmpty()) {
+            blackHole += pQ.removeMaxEntity();
+        }
+        long drained = System.nanoTime();
+
+        if (print) {
+            System.out.printf("%-16s %12.1f %12.1f %12.1f %12.1f%n", name, (inserted - start) / 1e6,
+                    (held - inserted) / 1e6, (cut - cutStart) / 1e6, (drained - cut) / 1e6);
+        }
+    }
+}
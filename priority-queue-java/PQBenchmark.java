@@ -0,0 +1,229 @@
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark harness comparing the PriorityQueue implementations. Every
+ * workload is run for every size and priority distribution, first a few times
+ * to warm up the JIT and then measured. Throughput is reported in operations
+ * per second and allocation in bytes per operation, using the per-thread
+ * allocation counter of the HotSpot ThreadMXBean.
+ *
+ * Usage: java PQBenchmark [maxSize] [implementation names...]
+ *
+ * @author aladago
+ */
+public class PQBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int DEFAULT_MAX_SIZE = 1000000;
+    private static final int MAX_SIZE = 10000000;
+
+    //sizes above this are skipped for queues with linear time operations
+    private static final int LINEAR_QUEUE_SIZE_LIMIT = 100000;
+    //the number of changePriority calls per round
+    private static final int CHANGES_PER_ROUND = 1000;
+
+    enum Distribution {
+        SORTED, REVERSE_SORTED, RANDOM, DUPLICATES
+    }
+
+    enum Workload {
+        ADD, REMOVE_MAX, CHANGE_PRIORITY, MIXED
+    }
+
+    private static class Implementation {
+
+        String name;
+        Supplier<PriorityQueue<Integer, Integer>> factory;
+        int sizeLimit;
+        //changePriority is a linear scan in every queue which isn't indexed
+        int changePrioritySizeLimit;
+
+        Implementation(String name, Supplier<PriorityQueue<Integer, Integer>> factory,
+                int sizeLimit, int changePrioritySizeLimit) {
+            this.name = name;
+            this.factory = factory;
+            this.sizeLimit = sizeLimit;
+            this.changePrioritySizeLimit = changePrioritySizeLimit;
+        }
+
+        int sizeLimit(Workload workload) {
+            return workload == Workload.CHANGE_PRIORITY ? this.changePrioritySizeLimit : this.sizeLimit;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    //consumes results so the JIT can't remove the benchmarked calls
+    private static long blackHole;
+
+    public static void main(String[] args) {
+        int maxSize = args.length > 0 ? Math.min(Integer.parseInt(args[0]), MAX_SIZE) : DEFAULT_MAX_SIZE;
+
+        ArrayList<Implementation> implementations = new ArrayList<>();
+        for (Implementation impl : PQBenchmark.allImplementations()) {
+            if (args.length < 2 || PQBenchmark.contains(args, impl.name)) {
+                implementations.add(impl);
+            }
+        }
+
+        System.out.printf("%-18s %-16s %-15s %10s %15s %12s%n",
+                "implementation", "workload", "distribution", "size", "ops/s", "bytes/op");
+        for (Implementation impl : implementations) {
+            for (Workload workload : Workload.values()) {
+                for (Distribution distribution : Distribution.values()) {
+                    for (int size = 1000; size <= maxSize; size *= 10) {
+                        if (size > impl.sizeLimit(workload)) {
+                            break;
+                        }
+                        PQBenchmark.run(impl, workload, distribution, size);
+                    }
+                }
+            }
+        }
+        System.out.println("(checksum " + blackHole + ")");
+    }
+
+    private static ArrayList<Implementation> allImplementations() {
+        ArrayList<Implementation> implementations = new ArrayList<>();
+        implementations.add(new Implementation("ArrayBasedPQ", ArrayBasedPQ::new,
+                LINEAR_QUEUE_SIZE_LIMIT, LINEAR_QUEUE_SIZE_LIMIT));
+        implementations.add(new Implementation("LinkedListBasedPQ", LinkedListBasedPQ::new,
+                LINEAR_QUEUE_SIZE_LIMIT, LINEAR_QUEUE_SIZE_LIMIT));
+        implementations.add(new Implementation("BSTBasedPQ", BSTBasedPQ::new,
+                LINEAR_QUEUE_SIZE_LIMIT, LINEAR_QUEUE_SIZE_LIMIT));
+        implementations.add(new Implementation("HeapBasedPQ", HeapBasedPQ::new,
+                MAX_SIZE, LINEAR_QUEUE_SIZE_LIMIT));
+        implementations.add(new Implementation("IndexedHeapPQ", IndexedHeapPQ::new,
+                MAX_SIZE, MAX_SIZE));
+        implementations.add(new Implementation("RedBlackTreePQ", RedBlackTreePQ::new,
+                MAX_SIZE, MAX_SIZE));
+        return implementations;
+    }
+
+    private static boolean contains(String[] args, String name) {
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs one workload and prints a row of results
+     */
+    private static void run(Implementation impl, Workload workload, Distribution distribution, int size) {
+        int[] priorities = PQBenchmark.priorities(distribution, size, new Random(42));
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                PQBenchmark.round(impl.factory.get(), workload, priorities);
+            }
+
+            long ops = 0;
+            long nanos = 0;
+            long bytes = 0;
+            long threadId = Thread.currentThread().getId();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                PriorityQueue<Integer, Integer> pQ = impl.factory.get();
+                //queues which are only measured on removal are filled outside the timed section
+                if (workload != Workload.ADD) {
+                    PQBenchmark.fill(pQ, priorities);
+                }
+                long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                ops += PQBenchmark.measuredPart(pQ, workload, priorities);
+                nanos += System.nanoTime() - start;
+                bytes += THREAD_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+            }
+
+            System.out.printf("%-18s %-16s %-15s %10d %15.0f %12.1f%n", impl.name, workload, distribution,
+                    size, ops * 1e9 / nanos, (double) bytes / ops);
+        } catch (RuntimeException | StackOverflowError e) {
+            System.out.printf("%-18s %-16s %-15s %10d   failed: %s%n", impl.name, workload, distribution,
+                    size, e.getClass().getSimpleName());
+        }
+    }
+
+    private static void round(PriorityQueue<Integer, Integer> pQ, Workload workload, int[] priorities) {
+        if (workload != Workload.ADD) {
+            PQBenchmark.fill(pQ, priorities);
+        }
+        PQBenchmark.measuredPart(pQ, workload, priorities);
+    }
+
+    private static void fill(PriorityQueue<Integer, Integer> pQ, int[] priorities) {
+        for (int i = 0; i < priorities.length; i++) {
+            pQ.addEntity(priorities[i], i);
+        }
+    }
+
+    /**
+     * @return the number of operations performed
+     */
+    private static long measuredPart(PriorityQueue<Integer, Integer> pQ, Workload workload, int[] priorities) {
+        int n = priorities.length;
+        switch (workload) {
+            case ADD:
+                PQBenchmark.fill(pQ, priorities);
+                return n;
+            case REMOVE_MAX:
+                //counted rather than assumed, BSTBasedPQ drops duplicate priorities
+                long removed = 0;
+                while (!pQ.isEmpty()) {
+                    blackHole += pQ.removeMaxEntity();
+                    removed++;
+                }
+                return removed;
+            case CHANGE_PRIORITY:
+                int changes = Math.min(n, CHANGES_PER_ROUND);
+                int step = n / changes;
+                for (int i = 0; i < changes; i++) {
+                    int v = i * step;
+                    pQ.changePriority(priorities[v], v, priorities[v] + n);
+                    priorities[v] += n;
+                }
+                //undo the changes so that every round starts from the same priorities
+                for (int i = 0; i < changes; i++) {
+                    priorities[i * step] -= n;
+                }
+                return changes;
+            default:
+                //every removal is followed by an insertion, so the size stays at n
+                for (int i = 0; i < n; i++) {
+                    blackHole += pQ.removeMaxEntity();
+                    pQ.addEntity(priorities[i] - n, n + i);
+                }
+                return 2L * n;
+        }
+    }
+
+    /**
+     * @return n priorities following the given distribution
+     */
+    static int[] priorities(Distribution distribution, int n, Random random) {
+        int[] priorities = new int[n];
+        for (int i = 0; i < n; i++) {
+            switch (distribution) {
+                case SORTED:
+                    priorities[i] = i;
+                    break;
+                case REVERSE_SORTED:
+                    priorities[i] = n - i;
+                    break;
+                case RANDOM:
+                    priorities[i] = random.nextInt(n);
+                    break;
+                default:
+                    //only 16 distinct priorities
+                    priorities[i] = random.nextInt(16);
+            }
+        }
+        return priorities;
+    }
+}
@@ -1,4 +1,11 @@
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
 /**
  *
  * @author aladago
@@ -11,6 +18,11 @@ public class PQImplementationsTests {
         ArrayBasedPQ<Integer, Integer> arrayPq = new ArrayBasedPQ();
         LinkedListBasedPQ<Integer, Integer> linkedListPq = new LinkedListBasedPQ();
         BSTBasedPQ<Integer, Integer> bstPq = new BSTBasedPQ();
+        HeapBasedPQ<Integer, Integer> heapPq = new HeapBasedPQ();
+        HeapBasedPQ<Integer, Integer> fourAryHeapPq = new HeapBasedPQ(4);
+        IndexedHeapPQ<Integer, Integer> indexedHeapPq = new IndexedHeapPQ();
+        RedBlackTreePQ<Integer, Integer> redBlackPq = new RedBlackTreePQ();
+        ConcurrentSkipListPQ<Integer, Integer> skipListPq = new ConcurrentSkipListPQ();
         
         System.out.println("*****Testing Array-based Implementation******\n");
         PQImplementationsTests.testPriorityQueue(arrayPq);
@@ -18,6 +30,127 @@ public class PQImplementationsTests {
         PQImplementationsTests.testPriorityQueue(linkedListPq);
         System.out.println("\n****Testing Binary Search Tree -based Implementation******\n");
         PQImplementationsTests.testPriorityQueue(bstPq);      
+        System.out.println("\n****Testing Binary Heap-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(heapPq);
+        System.out.println("\n****Testing 4-ary Heap-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(fourAryHeapPq);
+        System.out.println("\n****Testing Indexed Heap-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(indexedHeapPq);
+        System.out.println("contains(18) should return true: " + indexedHeapPq.contains(18));
+        System.out.println("remove(6) should return true: " + indexedHeapPq.remove(6));
+        System.out.println("The maximum entity after removing 6 should be 18: " + indexedHeapPq.getMaxEntity());
+        System.out.println("\n****Testing Red-Black Tree-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(redBlackPq);
+        redBlackPq.empty();
+        for (int i = 0; i < 100000; i++) {
+            redBlackPq.addEntity(i, i);
+        }
+        System.out.println("Height after 100000 sorted inserts (at most 34): " + redBlackPq.getHeight());
+        System.out.println("\n****Testing Concurrent Skip List-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(skipListPq);
+        System.out.println("\n****Testing Pairing Heap-based Implementation******\n");
+        PairingHeapPQ<Integer, Integer> pairingPq = new PairingHeapPQ();
+        PQImplementationsTests.testPriorityQueue(pairingPq);
+        PairingHeapPQ<Integer, Integer> otherPairingPq = new PairingHeapPQ();
+        otherPairingPq.addEntity(30 * 30, 30);
+        pairingPq.meld(otherPairingPq);
+        System.out.println("The maximum entity after melding a queue holding 30 should be 30: "
+                + pairingPq.getMaxEntity() + ", size (15) " + pairingPq.getSize()
+                + ", size of the melded queue (0) " + otherPairingPq.getSize());
+        System.out.println("\n****Testing Bounded Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(new BoundedPQ(20));
+        BoundedPQ<Integer, Integer> topThree = new BoundedPQ(3);
+        BoundedPQ<Integer, Integer> bottomThree = new BoundedPQ(3, BoundedPQ.Retention.LOWEST, true);
+        for (int i = 1; i <= 10; i++) {
+            topThree.addEntity(i, i);
+            bottomThree.addEntity(i, i);
+        }
+        System.out.println("Keeping the top 3 of 1 to 10: min (8) " + topThree.getMinEntity()
+                + ", max (10) " + topThree.getMaxEntity() + ", evictions (7) " + topThree.getEvictionCount());
+        System.out.println("Keeping the bottom 3 of 1 to 10: min (1) " + bottomThree.getMinEntity()
+                + ", max (3) " + bottomThree.getMaxEntity() + ", rejections (7) " + bottomThree.getRejectionCount());
+        System.out.println("\n****Testing Min-Max Heap-based Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(new MinMaxHeapPQ());
+        System.out.println("\n****Testing both ends******\n");
+        PQImplementationsTests.testDoubleEndedQueue(new MinMaxHeapPQ());
+        PQImplementationsTests.testDoubleEndedQueue(new ArrayBasedPQ());
+        PQImplementationsTests.testDoubleEndedQueue(new LinkedListBasedPQ());
+        PQImplementationsTests.testDoubleEndedQueue(new BSTBasedPQ());
+        PQImplementationsTests.testDoubleEndedQueue(new RedBlackTreePQ());
+        PQImplementationsTests.testDoubleEndedQueue(new ConcurrentSkipListPQ());
+        System.out.println("\n****Testing iteration without draining******\n");
+        PQImplementationsTests.testIteration(new ArrayBasedPQ());
+        PQImplementationsTests.testIteration(new LinkedListBasedPQ());
+        PQImplementationsTests.testIteration(new BSTBasedPQ());
+        PQImplementationsTests.testIteration(new HeapBasedPQ(3));
+        PQImplementationsTests.testIteration(new MinMaxHeapPQ());
+        PQImplementationsTests.testIteration(new RedBlackTreePQ());
+        PQImplementationsTests.testIteration(new ConcurrentSkipListPQ());
+        PQImplementationsTests.testIteration(new PairingHeapPQ());
+        PQImplementationsTests.testIteration(new BucketPQ(1000));
+        PQImplementationsTests.testIteration(new MultiQueuePQ());
+        System.out.println("\n****Testing MultiQueue Implementation******\n");
+        MultiQueuePQ<Integer, Integer> multiQueuePq = new MultiQueuePQ<>(2, 2);
+        for (int i = 0; i < 4; i++) {
+            multiQueuePq.addEntity(i, null);
+        }
+        ArrayList<Integer> drained = new ArrayList<>();
+        System.out.println("Null values are removed like any other: removed (null) " + multiQueuePq.removeMaxEntity()
+                + ", drained (3) " + multiQueuePq.drainTo(drained, 10) + " values " + drained
+                + ", size (0) " + multiQueuePq.getSize());
+        System.out.println("\n****Testing Bucket Implementation******\n");
+        PQImplementationsTests.testPriorityQueue(new BucketPQ(1000));
+        System.out.println("\n****Testing Radix Heap and Timer Wheel******\n");
+        PQImplementationsTests.testMonotoneQueues();
+        System.out.println("\n****Testing B+ Tree-based Implementation******\n");
+        PQImplementationsTests.testBPlusTreePQ();
+        System.out.println("\n****Testing Memory-Mapped File Implementation******\n");
+        PQImplementationsTests.testMappedFilePQ();
+        System.out.println("\n****Testing Durable Implementation******\n");
+        PQImplementationsTests.testDurablePQ();
+        System.out.println("\n****Testing batch operations******\n");
+        PQImplementationsTests.testBatchOperations(new ArrayBasedPQ());
+        PQImplementationsTests.testBatchOperations(new LinkedListBasedPQ());
+        PQImplementationsTests.testBatchOperations(new BSTBasedPQ());
+        PQImplementationsTests.testBatchOperations(new HeapBasedPQ());
+        PQImplementationsTests.testBatchOperations(new RedBlackTreePQ());
+        PQImplementationsTests.testBSTBatchDuplicates();
+        System.out.println("\n****Testing repeated entities******\n");
+        PQImplementationsTests.testDuplicateEntities(new ArrayBasedPQ<>());
+        PQImplementationsTests.testDuplicateEntities(new HeapBasedPQ<>());
+        PQImplementationsTests.testDuplicateEntities(new HeapBasedPQ<>(4));
+        System.out.println("\n****Testing instrumented queues******\n");
+        InstrumentedPQ<Integer, Integer> instrumentedArrayPq = new InstrumentedPQ(new ArrayBasedPQ());
+        PQImplementationsTests.testPriorityQueue(instrumentedArrayPq);
+        System.out.println("Array-based metrics: " + instrumentedArrayPq.snapshot());
+        InstrumentedPQ<Integer, Integer> instrumentedBstPq = new InstrumentedPQ(new BSTBasedPQ());
+        for (int i = 0; i < 100; i++) {
+            instrumentedBstPq.addEntity(i, i);
+        }
+        System.out.println("Max tree depth after 100 sorted inserts into a BST (100): "
+                + instrumentedBstPq.snapshot().maxTreeDepth);
+        instrumentedBstPq.setEnabled(false);
+        instrumentedBstPq.addEntity(100, 100);
+        System.out.println("Adds counted while disabled are ignored (100): "
+                + instrumentedBstPq.snapshot().addCount);
+        InstrumentedPQ<Integer, Integer> instrumentedRbPq = new InstrumentedPQ<>(new RedBlackTreePQ<Integer, Integer>());
+        InstrumentedPQ<Integer, Integer> instrumentedHeapPq = new InstrumentedPQ<>(new HeapBasedPQ<Integer, Integer>());
+        InstrumentedPQ<Integer, Integer> instrumentedPairingPq = new InstrumentedPQ<>(new PairingHeapPQ<Integer, Integer>());
+        for (int i = 0; i < 100; i++) {
+            instrumentedRbPq.addEntity(i, i);
+            instrumentedHeapPq.addEntity(i, i);
+            instrumentedPairingPq.addEntity(i, i);
+        }
+        System.out.println("Max tree depth after 100 sorted inserts into a red-black tree (at most 13): "
+                + instrumentedRbPq.snapshot().maxTreeDepth);
+        System.out.println("Heap metrics after 100 sorted inserts (comparisons > 0, resizes 4): "
+                + instrumentedHeapPq.snapshot());
+        System.out.println("Comparisons of 100 inserts into a pairing heap (99): "
+                + instrumentedPairingPq.snapshot().comparisonCount);
+        System.out.println("\n****Testing primitive long/int Heap-based Implementation******\n");
+        PQImplementationsTests.testLongIntPriorityQueue(new LongIntHeapPQ());
+        System.out.println("\n****Testing primitive double/long Heap-based Implementation******\n");
+        PQImplementationsTests.testDoubleLongPriorityQueue();
         
         
         
@@ -73,4 +206,315 @@ public class PQImplementationsTests {
         System.out.println("\nThe new maximum entity is: " + pQ.getMaxEntity());
     }
 
+    /**
+     * Bulk loads the items 5 to 19 with the same priorities as
+     * testPriorityQueue, then takes the top 3 and drains the rest
+     *
+     * @param pQ an object which implements the Priority Queue interface
+     */
+    public static void testBatchOperations(PriorityQueue<Integer, Integer> pQ) {
+        Integer[] priorities = new Integer[15];
+        Integer[] values = new Integer[15];
+        for (int i = 5; i < 20; i++) {
+            values[i - 5] = i;
+            priorities[i - 5] = i % 2 == 0 ? i : i * i;
+        }
+        pQ.addAll(priorities, values);
+
+        ArrayList<Integer> rest = new ArrayList<>();
+        System.out.println(pQ.getClass().getSimpleName() + ": size after addAll (15) " + pQ.getSize()
+                + ", removeTopK(3) (should be [19, 17, 15]) " + pQ.removeTopK(3)
+                + ", drainTo drained (12) " + pQ.drainTo(rest, 100)
+                + ", isEmpty() (true) " + pQ.isEmpty());
+    }
+
+    /**
+     * The BST keeps one entity per priority, so addAll drops repeated
+     * priorities, both among the new entities and against the tree, and the
+     * size counts only the entities kept
+     */
+    public static void testBSTBatchDuplicates() {
+        BSTBasedPQ<Integer, String> pQ = new BSTBasedPQ<>();
+        pQ.addEntity(4, "d");
+        pQ.addAll(new Integer[]{4, 7, 7, 2}, new String[]{"x", "g", "y", "b"});
+        int size = pQ.getSize();
+        ArrayList<String> drained = new ArrayList<>();
+        System.out.println("BSTBasedPQ: size after addAll with repeated priorities (3) " + size
+                + ", drainTo drained (3) " + pQ.drainTo(drained, 100)
+                + " " + drained + " (should be [g, d, b])"
+                + ", isEmpty() (true) " + pQ.isEmpty());
+    }
+
+    /**
+     * changePriority changes every entity with the given priority and value,
+     * so lowering three identical entities puts all of them behind another
+     *
+     * @param pQ an object which implements the Priority Queue interface
+     */
+    public static void testDuplicateEntities(PriorityQueue<Integer, String> pQ) {
+        for (int i = 0; i < 3; i++) {
+            pQ.addEntity(5, "a");
+        }
+        pQ.addEntity(3, "b");
+        pQ.changePriority(5, "a", 1);
+        System.out.println(pQ.getClass().getSimpleName() + ": after lowering every (5, a) to 1 "
+                + "([b, a, a, a]) " + pQ.removeTopK(4));
+    }
+
+    /**
+     * Adds the items 5 to 19 with the same priorities as testPriorityQueue,
+     * then takes entities from both ends
+     *
+     * @param pQ an object which implements the Priority Queue interface
+     */
+    public static void testDoubleEndedQueue(PriorityQueue<Integer, Integer> pQ) {
+        for (int i = 5; i < 20; i++) {
+            pQ.addEntity(i % 2 == 0 ? i : i * i, i);
+        }
+        System.out.print(pQ.getClass().getSimpleName() + ": min (6) " + pQ.getMinEntity()
+                + ", max (19) " + pQ.getMaxEntity()
+                + ", removed min (6) " + pQ.removeMinEntity()
+                + ", removed max (19) " + pQ.removeMaxEntity()
+                + ", next min (8) " + pQ.getMinEntity());
+        pQ.changePriority(8, 8, 20 * 20);
+        System.out.println(", min after raising 8 (10) " + pQ.removeMinEntity()
+                + ", max after raising 8 (8) " + pQ.removeMaxEntity()
+                + ", size (11) " + pQ.getSize());
+    }
+
+    /**
+     * Adds the items 5 to 19 with the same priorities as testPriorityQueue,
+     * then reads them in order and in parallel without removing them
+     *
+     * @param pQ an object which implements the Priority Queue interface
+     */
+    public static void testIteration(PriorityQueue<Integer, Integer> pQ) {
+        for (int i = 5; i < 20; i++) {
+            pQ.addEntity(i % 2 == 0 ? i : i * i, i);
+        }
+        Spliterator<Integer> spliterator = pQ.spliterator();
+        System.out.println(pQ.getClass().getSimpleName()
+                + ": in order ([19, 17, 15, 13, 11, 9, 7, 5, 18, 16, 14, 12, 10, 8, 6]) "
+                + pQ.orderedStream().collect(Collectors.toList())
+                + ", parallel sum (180) " + pQ.parallelStream().mapToInt(Integer::intValue).sum()
+                + ", unordered (true) " + !spliterator.hasCharacteristics(Spliterator.ORDERED)
+                + ", splits (true) " + (spliterator.trySplit() != null)
+                + ", visited through splits down to single values (15) " + PQImplementationsTests.countSplit(pQ.spliterator())
+                + ", size (15) " + pQ.getSize() + ", max (19) " + pQ.getMaxEntity());
+    }
+
+    /**
+     * Splits a spliterator until it won't split any more and counts the values
+     * the parts visit
+     */
+    private static <V> int countSplit(Spliterator<V> spliterator) {
+        int count = 0;
+        for (Spliterator<V> prefix = spliterator.trySplit(); prefix != null; prefix = spliterator.trySplit()) {
+            count += PQImplementationsTests.countSplit(prefix);
+        }
+        int[] visited = {0};
+        spliterator.forEachRemaining(v -> visited[0]++);
+        return count + visited[0];
+    }
+
+    /**
+     * The radix heap and the timer wheel only accept priorities which don't
+     * overtake the last removed maximum, so they get a scenario of their own
+     */
+    public static void testMonotoneQueues() {
+        RadixHeapPQ<Integer> radixPq = new RadixHeapPQ<>();
+        for (int i = 5; i < 20; i++) {
+            radixPq.addLongEntity(-i, i);
+        }
+        System.out.println("The maximum entity removed (5) is " + radixPq.removeMaxEntity()
+                + ", the next (6) is " + radixPq.getMaxEntity());
+        radixPq.changePriority(-19L, 19, -5L);
+        System.out.println("After raising 19 to the removed maximum it is the maximum (19): "
+                + radixPq.removeMaxEntity());
+        try {
+            radixPq.addLongEntity(0, 0);
+            System.out.println("Adding above the removed maximum should have failed");
+        } catch (RuntimeException e) {
+            System.out.println("Adding above the removed maximum fails: " + e.getMessage());
+        }
+
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        wheel.schedule(100000, "far");
+        wheel.schedule(70, "late");
+        wheel.schedule(5, "early");
+        wheel.schedule(5, "early too");
+        ArrayList<String> fired = new ArrayList<>();
+        wheel.advance(100, fired);
+        System.out.println("Timers fired by time 100 ([early, early too, late]): " + fired
+                + ", still pending (1): " + wheel.getSize());
+    }
+
+    /**
+     * The B+ tree takes long priorities, and also removes from the minimum
+     * end and by range, so it gets a scenario of its own
+     */
+    public static void testBPlusTreePQ() {
+        BPlusTreePQ<Integer> pQ = new BPlusTreePQ<>(4);
+        for (int i = 5; i < 20; i++) {
+            pQ.addLongEntity(i % 2 == 0 ? i : i * i, i);
+        }
+        System.out.println("The size of the queue (15) is " + pQ.getSize() + ", the height (3) is "
+                + pQ.getHeight() + ", the maximum (19) is " + pQ.getMaxEntity()
+                + " and the minimum (6) is " + pQ.getMinEntity());
+        pQ.changePriority(18L, 18, 400L);
+        System.out.println("The maximum entity after changing priority of 18 (18) is " + pQ.removeMaxEntity()
+                + ", the minimum removed (6) is " + pQ.removeMinEntity());
+        System.out.println("Removing the priorities 100 to 300 removed (4) " + pQ.removeRange(100, 300)
+                + " entities, the size (9) is " + pQ.getSize());
+        ArrayList<Integer> values = new ArrayList<>();
+        pQ.forEach(values::add);
+        System.out.println("The entities in descending order ([19, 9, 7, 5, 16, 14, 12, 10, 8]): " + values);
+        System.out.println("Visited through splits of the leaves (9) " + PQImplementationsTests.countSplit(pQ.spliterator())
+                + ", parallel sum (100) " + pQ.parallelStream().mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Fills a queue stored in a temporary file, reopens the file and checks
+     * that the queue survived
+     */
+    public static void testMappedFilePQ() {
+        try {
+            Path file = Files.createTempFile("pq", ".heap");
+            try (MappedFilePQ pQ = new MappedFilePQ(file, 4)) {
+                for (long i = 5; i < 20; i++) {
+                    pQ.addEntity(i % 2 == 0 ? i : i * i, i);
+                }
+                System.out.println("The size of the queue is " + pQ.getSize()
+                        + ", the maximum entity removed is " + pQ.removeMaxValue());
+            }
+            try (MappedFilePQ pQ = new MappedFilePQ(file)) {
+                System.out.println("After reopening the size (14) is " + pQ.getSize()
+                        + " and the maximum entity (17) is " + pQ.getMaxValue());
+                System.out.println("Read in order without removing ([17, 15, 13, 11, 9, 7, 5, 18, 16, 14, 12, 10, 8, 6]) "
+                        + pQ.orderedStream().collect(Collectors.toList())
+                        + ", parallel sum (161) " + pQ.parallelStream().mapToLong(Long::longValue).sum()
+                        + ", size (14) " + pQ.getSize());
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Fills a durable queue, reopens it without closing it as a crash would,
+     * then snapshots it and reopens it again
+     */
+    public static void testDurablePQ() {
+        try {
+            Path directory = Files.createTempDirectory("pq");
+            DurablePQ<Integer, Integer> pQ = new DurablePQ<>(directory, new HeapBasedPQ<>(),
+                    DurablePQ.Codec.INTEGER, DurablePQ.Codec.INTEGER, 1, 1000);
+            for (int i = 5; i < 20; i++) {
+                pQ.addEntity(i % 2 == 0 ? i : i * i, i);
+            }
+            pQ.removeMaxEntity();
+            pQ.changePriority(6, 6, 1000);
+            pQ = new DurablePQ<>(directory, new HeapBasedPQ<>(), DurablePQ.Codec.INTEGER, DurablePQ.Codec.INTEGER);
+            System.out.println("After replaying the log the size (14) is " + pQ.getSize()
+                    + " and the maximum entity (6) is " + pQ.getMaxEntity());
+            pQ.snapshot();
+            pQ.removeMaxEntity();
+            pQ.close();
+            pQ = new DurablePQ<>(directory, new HeapBasedPQ<>(), DurablePQ.Codec.INTEGER, DurablePQ.Codec.INTEGER);
+            System.out.println("After loading the snapshot the size (13) is " + pQ.getSize()
+                    + " and the maximum entity (17) is " + pQ.getMaxEntity());
+            pQ.close();
+            for (String file : new String[]{"queue.log", "queue.snapshot"}) {
+                Files.delete(directory.resolve(file));
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * The same scenario as testPriorityQueue for the primitive specialised
+     * queue, which can't implement the generic interface
+     *
+     * @param pQ a queue with long priorities and int values
+     */
+    public static void testLongIntPriorityQueue(LongIntHeapPQ pQ) {
+
+        System.out.println("The size of an empty queue is " + pQ.getSize());
+        System.out.println("isEmpty() should return true: " + pQ.isEmpty());
+
+        for (int i = 5; i < 20; i++) {
+            if (i % 2 == 0) {
+                pQ.addEntity(i, i);
+            } else {
+                pQ.addEntity(i * i, i);
+            }
+        }
+
+        System.out.println("The size of the queue is " + pQ.getSize());
+        System.out.println("The maximum entity is " + pQ.getMaxEntity());
+        System.out.println("The maximum entity removed is " + pQ.removeMaxEntity());
+        System.out.println("\nThe new size of the queue is " + pQ.getSize());
+        System.out.println("The new maximum entity after 19 is " + pQ.getMaxEntity());
+
+        pQ.changePriority(18, 18, 20 * 20);
+        System.out.println("\nThe new maximum entity after changing priority "
+                + "of 18 is (18 should be maximum now)" + pQ.getMaxEntity());
+        pQ.changePriority(6, 6, 20 * 21);
+        System.out.println("The new maximum entity is (6 should be maximum now): " + pQ.getMaxEntity());
+
+        pQ.empty();
+        for (int i = 0; i < 3; i++) {
+            pQ.addEntity(5, 1);
+        }
+        pQ.addEntity(3, 2);
+        pQ.changePriority(5, 1, 1);
+        System.out.println("The maximum entity after lowering every (5, 1) to 1 (2): " + pQ.getMaxEntity());
+    }
+
+    /**
+     * Runs the same random adds, removals and priority changes on a
+     * DoubleLongHeapPQ and a HeapBasedPQ of Doubles, with few distinct
+     * priorities (-0.0, 0.0 and NaN among them) so there are many ties and
+     * repeated entities. Values are all 0, so the two queues hold the same
+     * entities whichever tied entity they remove
+     */
+    public static void testDoubleLongPriorityQueue() {
+        double[] priorities = {Double.NEGATIVE_INFINITY, -1, -0.0, 0.0, 0.5, 1, 2, Double.POSITIVE_INFINITY, Double.NaN};
+        DoubleLongHeapPQ pQ = new DoubleLongHeapPQ();
+        HeapBasedPQ<Double, Long> reference = new HeapBasedPQ<>();
+        java.util.Random random = new java.util.Random(42);
+        int mismatches = 0;
+        for (int i = 0; i < 100000; i++) {
+            double p = priorities[random.nextInt(priorities.length)];
+            int operation = random.nextInt(4);
+            if (operation < 2) {
+                pQ.addEntity(p, 0);
+                reference.addEntity(p, 0L);
+            } else if (operation == 2 && !reference.isEmpty()) {
+                pQ.removeMaxEntity();
+                reference.removeMaxEntity();
+            } else {
+                double newPriority = priorities[random.nextInt(priorities.length)];
+                pQ.changePriority(p, 0, newPriority);
+                reference.changePriority(p, 0L, newPriority);
+            }
+            if (pQ.getSize() != reference.getSize() || (!reference.isEmpty()
+                    && Double.compare(pQ.getMaxPriority(), reference.getMaxPriority()) != 0)) {
+                mismatches++;
+            }
+        }
+        while (!reference.isEmpty()) {
+            if (Double.compare(pQ.getMaxPriority(), reference.getMaxPriority()) != 0) {
+                mismatches++;
+            }
+            pQ.removeMaxEntity();
+            reference.removeMaxEntity();
+        }
+        System.out.println("Mismatches against HeapBasedPQ after 100000 random operations (0): " + mismatches
+                + ", isEmpty() (true) " + pQ.isEmpty());
+    }
+
 }
@@ -0,0 +1,249 @@
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms describing how a priority queue spends its
+ * time. InstrumentedPQ records operation counts, latencies and the high-water
+ * size; queues implementing PQMetrics.Reporter additionally report their
+ * internal work: comparisons, array resizes, list traversal steps and tree
+ * depth. ArrayBasedPQ, LinkedListBasedPQ, BSTBasedPQ, HeapBasedPQ (and so
+ * IndexedHeapPQ), RedBlackTreePQ and PairingHeapPQ are reporters. The other
+ * queues, among them the concurrent ones, are only measured from the outside:
+ * their comparison, resize, traversal and depth counters stay at 0. The
+ * counters are plain fields, like the queues themselves they are meant to be
+ * updated by one thread at a time. Values read over JMX from another thread
+ * may be slightly stale.
+ *
+ * @author aladago
+ */
+public class PQMetrics implements PQMetricsMXBean {
+
+    /**
+     * Implemented by queues which can report their internal work. A queue
+     * without metrics (the default) pays only for a null check
+     */
+    public interface Reporter {
+
+        public void setMetrics(PQMetrics metrics);
+    }
+
+    /**
+     * An immutable copy of the metrics at one point in time
+     */
+    public static class Snapshot {
+
+        public final long addCount;
+        public final long removeMaxCount;
+        public final long getMaxCount;
+        public final long changePriorityCount;
+        public final long comparisonCount;
+        public final long resizeCount;
+        public final long traversalSteps;
+        public final int maxTreeDepth;
+        public final int highWaterSize;
+        public final LatencyHistogram addLatency;
+        public final LatencyHistogram removeMaxLatency;
+        public final LatencyHistogram changePriorityLatency;
+
+        private Snapshot(PQMetrics metrics) {
+            this.addCount = metrics.addCount;
+            this.removeMaxCount = metrics.removeMaxCount;
+            this.getMaxCount = metrics.getMaxCount;
+            this.changePriorityCount = metrics.changePriorityCount;
+            this.comparisonCount = metrics.comparisonCount;
+            this.resizeCount = metrics.resizeCount;
+            this.traversalSteps = metrics.traversalSteps;
+            this.maxTreeDepth = metrics.maxTreeDepth;
+            this.highWaterSize = metrics.highWaterSize;
+            this.addLatency = metrics.addLatency.copy();
+            this.removeMaxLatency = metrics.removeMaxLatency.copy();
+            this.changePriorityLatency = metrics.changePriorityLatency.copy();
+        }
+
+        @Override
+        public String toString() {
+            return "adds=" + this.addCount + " removeMax=" + this.removeMaxCount
+                    + " getMax=" + this.getMaxCount + " changePriority=" + this.changePriorityCount
+                    + " comparisons=" + this.comparisonCount + " resizes=" + this.resizeCount
+                    + " traversalSteps=" + this.traversalSteps + " maxTreeDepth=" + this.maxTreeDepth
+                    + " highWaterSize=" + this.highWaterSize
+                    + " add p50/p99=" + this.addLatency.getValueAtPercentile(50)
+                    + "/" + this.addLatency.getValueAtPercentile(99) + "ns"
+                    + " removeMax p50/p99=" + this.removeMaxLatency.getValueAtPercentile(50)
+                    + "/" + this.removeMaxLatency.getValueAtPercentile(99) + "ns";
+        }
+    }
+
+    long addCount;
+    long removeMaxCount;
+    long getMaxCount;
+    long changePriorityCount;
+    long comparisonCount;
+    long resizeCount;
+    long traversalSteps;
+    int maxTreeDepth;
+    int highWaterSize;
+    final LatencyHistogram addLatency = new LatencyHistogram();
+    final LatencyHistogram removeMaxLatency = new LatencyHistogram();
+    final LatencyHistogram changePriorityLatency = new LatencyHistogram();
+
+    /**
+     * Called by queues for every comparison of two priorities
+     */
+    public void comparison() {
+        this.comparisonCount++;
+    }
+
+    /**
+     * Called by queues which count their comparisons in bulk
+     *
+     * @param count the number of comparisons made
+     */
+    public void comparisons(long count) {
+        this.comparisonCount += count;
+    }
+
+    /**
+     * Called by queues whenever their storage grows
+     */
+    public void resize() {
+        this.resizeCount++;
+    }
+
+    /**
+     * Called by list-based queues for every node visited
+     */
+    public void traversalStep() {
+        this.traversalSteps++;
+    }
+
+    /**
+     * Called by list-based queues which count the nodes they visit in bulk
+     *
+     * @param steps the number of nodes visited
+     */
+    public void traversalSteps(long steps) {
+        this.traversalSteps += steps;
+    }
+
+    /**
+     * Called by tree-based queues with the depth reached by an operation
+     *
+     * @param depth the number of nodes from the root, the root counting as 1
+     */
+    public void treeDepth(int depth) {
+        if (depth > this.maxTreeDepth) {
+            this.maxTreeDepth = depth;
+        }
+    }
+
+    /**
+     *
+     * @return a copy of the current metrics
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server
+     *
+     * @param name the name of the queue, used in the JMX object name
+     * @throws JMException if the name is invalid or already registered
+     */
+    public void registerMBean(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("priorityqueue:type=PQMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public long getAddCount() {
+        return this.addCount;
+    }
+
+    @Override
+    public long getRemoveMaxCount() {
+        return this.removeMaxCount;
+    }
+
+    @Override
+    public long getGetMaxCount() {
+        return this.getMaxCount;
+    }
+
+    @Override
+    public long getChangePriorityCount() {
+        return this.changePriorityCount;
+    }
+
+    @Override
+    public long getComparisonCount() {
+        return this.comparisonCount;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return this.resizeCount;
+    }
+
+    @Override
+    public long getTraversalSteps() {
+        return this.traversalSteps;
+    }
+
+    @Override
+    public int getMaxTreeDepth() {
+        return this.maxTreeDepth;
+    }
+
+    @Override
+    public int getHighWaterSize() {
+        return this.highWaterSize;
+    }
+
+    @Override
+    public long getAddLatencyP50() {
+        return this.addLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getAddLatencyP99() {
+        return this.addLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRemoveMaxLatencyP50() {
+        return this.removeMaxLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getRemoveMaxLatencyP99() {
+        return this.removeMaxLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getChangePriorityLatencyP99() {
+        return this.changePriorityLatency.getValueAtPercentile(99);
+    }
+
+    /**
+     * Sets every counter and histogram back to zero
+     */
+    @Override
+    public void reset() {
+        this.addCount = 0;
+        this.removeMaxCount = 0;
+        this.getMaxCount = 0;
+        this.changePriorityCount = 0;
+        this.comparisonCount = 0;
+        this.resizeCount = 0;
+        this.traversalSteps = 0;
+        this.maxTreeDepth = 0;
+        this.highWaterSize = 0;
+        this.addLatency.reset();
+        this.removeMaxLatency.reset();
+        this.changePriorityLatency.reset();
+    }
+}
@@ -0,0 +1,38 @@
+
+/**
+ * The view of PQMetrics published over JMX
+ *
+ * @author aladago
+ */
+public interface PQMetricsMXBean {
+
+    public long getAddCount();
+
+    public long getRemoveMaxCount();
+
+    public long getGetMaxCount();
+
+    public long getChangePriorityCount();
+
+    public long getComparisonCount();
+
+    public long getResizeCount();
+
+    public long getTraversalSteps();
+
+    public int getMaxTreeDepth();
+
+    public int getHighWaterSize();
+
+    public long getAddLatencyP50();
+
+    public long getAddLatencyP99();
+
+    public long getRemoveMaxLatencyP50();
+
+    public long getRemoveMaxLatencyP99();
+
+    public long getChangePriorityLatencyP99();
+
+    public void reset();
+}
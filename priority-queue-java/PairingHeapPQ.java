@@ -0,0 +1,467 @@
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Implements a priority queue using a (max) pairing heap. Adding an entity,
+ * raising its priority and melding two heaps take O(1); removing the maximum
+ * takes O(log n) amortised. addEntityWithHandle returns a handle to the entity
+ * which can later be used to change its priority or remove it without
+ * searching the heap.
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class PairingHeapPQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V>, PQMetrics.Reporter {
+
+    private Node<E, V> root;
+    private int size;
+    private PQMetrics metrics;
+
+    /**
+     * A handle to an entity in the heap. Every node points to its first child,
+     * its next sibling and its previous sibling (or its parent if it is the
+     * first child)
+     *
+     * @param <E> the priority of the entity
+     * @param <V> the value of the entity
+     */
+    public static class Node<E, V> {
+
+        private E priority;
+        private final V value;
+        private Node<E, V> child;
+        private Node<E, V> sibling;
+        private Node<E, V> previous;
+        private boolean inHeap;
+
+        private Node(E priority, V value) {
+            this.priority = priority;
+            this.value = value;
+            this.inHeap = true;
+        }
+
+        public E getPriority() {
+            return this.priority;
+        }
+
+        public V getValue() {
+            return this.value;
+        }
+    }
+
+    public PairingHeapPQ() {
+        this.root = null;
+        this.size = 0;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.root == null) {
+            throw new RuntimeException("Can't get max entity from an empty queue");
+        }
+        return this.root.value;
+    }
+
+    /**
+     * Removes the root and pairs up its children, O(log n) amortised
+     *
+     * @return the value with the highest priority
+     */
+    @Override
+    public V removeMaxEntity() {
+        if (this.root == null) {
+            throw new RuntimeException("Can't remove max entity from an empty queue");
+        }
+        Node<E, V> maxNode = this.root;
+        this.root = this.combineSiblings(maxNode.child);
+        this.detach(maxNode);
+        this.size--;
+        return maxNode.value;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.root == null;
+    }
+
+    @Override
+    public void addEntity(E p, V data) {
+        this.addEntityWithHandle(p, data);
+    }
+
+    /**
+     * Adds a new entity in O(1)
+     *
+     * @param p the priority of the new entity
+     * @param data the value of the new entity
+     * @return a handle for changing the priority of the entity or removing it
+     */
+    public Node<E, V> addEntityWithHandle(E p, V data) {
+        Node<E, V> node = new Node<>(p, data);
+        this.root = this.link(this.root, node);
+        this.size++;
+        return node;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Starts or stops reporting comparisons. Every link of two roots compares
+     * their priorities once
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Changes the priority of the first entity found with the given priority
+     * and value. Finding the entity walks the heap in O(n); use the handle
+     * returned by addEntityWithHandle to avoid the search
+     *
+     * @param p the current priority of the entity
+     * @param data the value of the entity
+     * @param newPriority the new priority
+     */
+    @Override
+    public void changePriority(E p, V data, E newPriority) {
+        Node<E, V> node = this.find(p, data);
+        if (node == null) {
+            throw new RuntimeException("Can't change priority of a non-existent entity");
+        }
+        this.changePriority(node, newPriority);
+    }
+
+    /**
+     * Changes the priority of an entity. Raising it takes O(1), lowering it
+     * takes O(log n) amortised
+     *
+     * @param node the handle of the entity
+     * @param newPriority the new priority
+     */
+    public void changePriority(Node<E, V> node, E newPriority) {
+        if (!node.inHeap) {
+            throw new RuntimeException("Can't change priority of an entity which was removed");
+        }
+        E oldPriority = node.priority;
+        node.priority = newPriority;
+        if (node == this.root) {
+            if (newPriority.compareTo(oldPriority) < 0) {
+                //the root may have to give way to one of its children
+                Node<E, V> children = node.child;
+                node.child = null;
+                this.root = this.link(node, this.combineSiblings(children));
+            }
+        } else if (newPriority.compareTo(oldPriority) >= 0) {
+            this.cut(node);
+            this.root = this.link(this.root, node);
+        } else {
+            this.cut(node);
+            Node<E, V> children = node.child;
+            node.child = null;
+            this.root = this.link(this.root, this.link(node, this.combineSiblings(children)));
+        }
+    }
+
+    /**
+     * Removes an arbitrary entity, O(log n) amortised
+     *
+     * @param node the handle of the entity
+     */
+    public void remove(Node<E, V> node) {
+        if (!node.inHeap) {
+            throw new RuntimeException("Can't remove an entity which was already removed");
+        }
+        if (node == this.root) {
+            this.removeMaxEntity();
+            return;
+        }
+        this.cut(node);
+        this.root = this.link(this.root, this.combineSiblings(node.child));
+        this.detach(node);
+        this.size--;
+    }
+
+    /**
+     * Moves all entities of another pairing heap into this one in O(1). The
+     * other heap is left empty; handles of its entities stay valid in this heap
+     *
+     * @param other the heap to merge into this one
+     */
+    public void meld(PairingHeapPQ<E, V> other) {
+        if (other == this) {
+            return;
+        }
+        this.root = this.link(this.root, other.root);
+        this.size += other.size;
+        other.root = null;
+        other.size = 0;
+    }
+
+    @Override
+    public void empty() {
+        this.root = null;
+        this.size = 0;
+    }
+
+    /**
+     * Visits the entities depth first, every node before its children
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        ArrayList<Node<E, V>> stack = new ArrayList<>();
+        if (this.root != null) {
+            stack.add(this.root);
+        }
+        while (!stack.isEmpty()) {
+            Node<E, V> node = stack.remove(stack.size() - 1);
+            action.accept(node.priority, node.value);
+            for (Node<E, V> child = node.child; child != null; child = child.sibling) {
+                stack.add(child);
+            }
+        }
+    }
+
+    /**
+     * Walks the heap lazily in order of decreasing priority. Every child has
+     * a priority no higher than its parent, so the next entity is always in a
+     * frontier of nodes whose parents were already returned
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        java.util.PriorityQueue<Node<E, V>> frontier = new java.util.PriorityQueue<>(
+                (a, b) -> b.priority.compareTo(a.priority));
+        if (this.root != null) {
+            frontier.add(this.root);
+        }
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                return !frontier.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (frontier.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<E, V> node = frontier.poll();
+                for (Node<E, V> child = node.child; child != null; child = child.sibling) {
+                    frontier.add(child);
+                }
+                return node.value;
+            }
+        };
+    }
+
+    /**
+     * Splits the heap in place, handing subheaps to the new spliterator
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new SubheapSpliterator<>(this.root, this.size);
+    }
+
+    /**
+     * Keeps whole subheaps to visit, every node before its children. A split
+     * hands half of them to the new spliterator, and when only one is left it
+     * is broken up into its root, which stays, and its children first
+     */
+    private static class SubheapSpliterator<E, V> implements Spliterator<V> {
+
+        private final ArrayList<Node<E, V>> subheaps;
+        //a root whose children were broken off
+        private Node<E, V> node;
+        private long estimate;
+
+        SubheapSpliterator(Node<E, V> root, long estimate) {
+            this.subheaps = new ArrayList<>();
+            if (root != null) {
+                this.subheaps.add(root);
+            }
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            Node<E, V> next = this.node;
+            if (next != null) {
+                this.node = null;
+            } else if (this.subheaps.isEmpty()) {
+                return false;
+            } else {
+                next = this.subheaps.remove(this.subheaps.size() - 1);
+                this.addChildren(next);
+            }
+            action.accept(next.value);
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (this.node == null && this.subheaps.size() == 1) {
+                this.node = this.subheaps.remove(0);
+                this.addChildren(this.node);
+            }
+            int size = this.subheaps.size();
+            if (size == 0) {
+                return null;
+            }
+            SubheapSpliterator<E, V> prefix = new SubheapSpliterator<>(null, this.estimate >>> 1);
+            List<Node<E, V>> half = this.subheaps.subList(0, Math.max(1, size / 2));
+            prefix.subheaps.addAll(half);
+            half.clear();
+            this.estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        private void addChildren(Node<E, V> node) {
+            for (Node<E, V> child = node.child; child != null; child = child.sibling) {
+                this.subheaps.add(child);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     * Makes the root with the lower priority the first child of the other
+     *
+     * @return the root of the combined heap
+     */
+    private Node<E, V> link(Node<E, V> first, Node<E, V> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (this.metrics != null) {
+            this.metrics.comparison();
+        }
+        if (second.priority.compareTo(first.priority) > 0) {
+            Node<E, V> temp = first;
+            first = second;
+            second = temp;
+        }
+        second.previous = first;
+        second.sibling = first.child;
+        if (first.child != null) {
+            first.child.previous = second;
+        }
+        first.child = second;
+        first.sibling = null;
+        first.previous = null;
+        return first;
+    }
+
+    /**
+     * Unlinks a node (with its subtree) from its parent and siblings
+     */
+    private void cut(Node<E, V> node) {
+        if (node.previous.child == node) {
+            node.previous.child = node.sibling;
+        } else {
+            node.previous.sibling = node.sibling;
+        }
+        if (node.sibling != null) {
+            node.sibling.previous = node.previous;
+        }
+        node.sibling = null;
+        node.previous = null;
+    }
+
+    /**
+     * The standard two-pass pairing: link siblings in pairs from left to right,
+     * then link the pairs from right to left. Iterative, so long sibling lists
+     * can't overflow the stack
+     *
+     * @param first the first node of a sibling list
+     * @return the root of the combined heap
+     */
+    private Node<E, V> combineSiblings(Node<E, V> first) {
+        if (first == null) {
+            return null;
+        }
+        ArrayList<Node<E, V>> pairs = new ArrayList<>();
+        Node<E, V> node = first;
+        while (node != null) {
+            Node<E, V> next = node.sibling;
+            Node<E, V> afterNext = next == null ? null : next.sibling;
+            node.sibling = null;
+            node.previous = null;
+            if (next != null) {
+                next.sibling = null;
+                next.previous = null;
+            }
+            pairs.add(this.link(node, next));
+            node = afterNext;
+        }
+
+        Node<E, V> combined = pairs.get(pairs.size() - 1);
+        for (int i = pairs.size() - 2; i >= 0; i--) {
+            combined = this.link(pairs.get(i), combined);
+        }
+        return combined;
+    }
+
+    private void detach(Node<E, V> node) {
+        node.child = null;
+        node.sibling = null;
+        node.previous = null;
+        node.inHeap = false;
+    }
+
+    /**
+     * Walks the heap without recursion
+     *
+     * @return the node with the given priority and value or null
+     */
+    private Node<E, V> find(E p, V data) {
+        ArrayList<Node<E, V>> stack = new ArrayList<>();
+        if (this.root != null) {
+            stack.add(this.root);
+        }
+        while (!stack.isEmpty()) {
+            Node<E, V> node = stack.remove(stack.size() - 1);
+            if (node.priority.equals(p) && node.value.equals(data)) {
+                return node;
+            }
+            //nodes with a lower priority than p can't have it in their subtree
+            if (node.child != null && node.priority.compareTo(p) >= 0) {
+                stack.add(node.child);
+            }
+            if (node.sibling != null) {
+                stack.add(node.sibling);
+            }
+        }
+        return null;
+    }
+}
@@ -1,4 +1,17 @@
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  *
  * @author aladago
@@ -20,4 +33,147 @@ public interface PriorityQueue<E, V> {
     public void changePriority(E p, V data, E newPriority);
     public void empty();
 
+    /**
+     * Retrieves the entity with the lowest priority. Queues which keep their
+     * entities in order return, among entities of equal priority, the one
+     * removeMaxEntity would return last
+     *
+     * @return the value of the entity with the lowest priority without
+     * removing it
+     */
+    public default V getMinEntity() {
+        throw new RuntimeException("Can't get the minimum entity of a " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Removes the entity with the lowest priority, the same entity
+     * getMinEntity returns
+     *
+     * @return the value of the entity with the lowest priority
+     */
+    public default V removeMinEntity() {
+        throw new RuntimeException("Can't remove the minimum entity of a " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Adds many entities at once. priorities[i] is the priority of values[i].
+     * Implementations override this with something faster than adding the
+     * entities one by one
+     *
+     * @param priorities the priorities of the new entities
+     * @param values the values of the new entities
+     */
+    public default void addAll(E[] priorities, V[] values) {
+        if (priorities.length != values.length) {
+            throw new RuntimeException("Got " + priorities.length + " priorities for "
+                    + values.length + " values");
+        }
+        for (int i = 0; i < priorities.length; i++) {
+            this.addEntity(priorities[i], values[i]);
+        }
+    }
+
+    /**
+     * Removes up to maxEntities entities in order of decreasing priority and
+     * adds their values to a collection
+     *
+     * @param collection where the values are put
+     * @param maxEntities the maximum number of entities to remove
+     * @return the number of entities removed
+     */
+    public default int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        while (drained < maxEntities && !this.isEmpty()) {
+            collection.add(this.removeMaxEntity());
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Removes the k entities with the highest priorities, or all entities if
+     * there are fewer than k
+     *
+     * @param k the number of entities to remove
+     * @return the values removed, in order of decreasing priority
+     */
+    public default List<V> removeTopK(int k) {
+        List<V> topK = new ArrayList<>(Math.max(0, Math.min(k, this.getSize())));
+        this.drainTo(topK, k);
+        return topK;
+    }
+
+    /**
+     * Passes every entity to an action without removing it. The entities are
+     * visited in no particular order, but adding them to an empty queue of
+     * the same kind in that order rebuilds an equivalent queue
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    public default void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        throw new RuntimeException("Can't visit the entities of a " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Iterates over the values in order of decreasing priority without
+     * removing them. The default copies the entities through forEachEntity
+     * and sorts the copy, implementations with an ordered structure override
+     * it with a lazy walk. The queue must not be changed while the iterator is
+     * in use unless the implementation says otherwise
+     *
+     * @return the values in order of decreasing priority
+     */
+    public default Iterator<V> orderedIterator() {
+        List<Map.Entry<E, V>> entities = new ArrayList<>(this.getSize());
+        this.forEachEntity((p, v) -> entities.add(new AbstractMap.SimpleImmutableEntry<>(p, v)));
+        //the priorities of every queue are comparable, E just isn't declared so
+        @SuppressWarnings("unchecked")
+        Comparator<Map.Entry<E, V>> byPriority
+                = (a, b) -> ((Comparable<? super E>) a.getKey()).compareTo(b.getKey());
+        entities.sort(byPriority.reversed());
+        return entities.stream().map(Map.Entry::getValue).iterator();
+    }
+
+    /**
+     * Splits the values for bulk scans in no particular order: the
+     * spliterator isn't ORDERED, so parallel streams needn't keep an encounter
+     * order. Implementations override it to split their arrays, trees or
+     * lists in place; the default, for queues without such a structure, buffers
+     * the values once through forEachEntity
+     *
+     * @return a spliterator over the values
+     */
+    public default Spliterator<V> spliterator() {
+        Stream.Builder<V> values = Stream.builder();
+        this.forEachEntity((p, v) -> values.add(v));
+        //only the spliterator of a parallel pipeline passes splits on to the buffer
+        return values.build().parallel().unordered().spliterator();
+    }
+
+    /**
+     *
+     * @return a sequential stream of the values in no particular order
+     */
+    public default Stream<V> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    /**
+     *
+     * @return a parallel stream of the values in no particular order
+     */
+    public default Stream<V> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
+    /**
+     *
+     * @return a stream of the values in order of decreasing priority, drawn
+     * lazily from orderedIterator
+     */
+    public default Stream<V> orderedStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this.orderedIterator(),
+                Spliterator.ORDERED), false);
+    }
+
 }
@@ -0,0 +1,307 @@
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * A radix heap: a monotone priority queue for long priorities. Monotone means
+ * that no entity may be added with a priority higher than the last removed
+ * maximum, which holds for Dijkstra's algorithm with distances stored as
+ * negative priorities, as in DijkstraBenchmark, and for timers and event
+ * simulations.
+ *
+ * Entities are kept in 65 buckets by the highest bit in which their priority
+ * differs from the last removed maximum. Adding is O(1). Removing the maximum
+ * empties the lowest non-empty bucket into lower buckets, and since an entity
+ * only ever moves to lower buckets it is moved at most 64 times, making
+ * removal O(log C) amortised for priorities spanning a range of C. Buckets
+ * are parallel primitive arrays, so entities cost no allocation beyond the
+ * occasional growth of a bucket.
+ *
+ * @author aladago
+ * @param <V> the value of the entity
+ */
+public class RadixHeapPQ<V> implements PriorityQueue<Long, V> {
+
+    private static final int BUCKETS = 65;
+    private static final int INITIAL_BUCKET_SIZE = 8;
+
+    /**
+     * Priorities are stored as keys which grow as the priority falls, so the
+     * maximum priority is the minimum key. The key order is unsigned
+     */
+    private static class Bucket {
+
+        long[] keys;
+        Object[] values;
+        int size;
+
+        Bucket() {
+            this.keys = new long[INITIAL_BUCKET_SIZE];
+            this.values = new Object[INITIAL_BUCKET_SIZE];
+        }
+
+        void add(long key, Object value) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.keys[this.size] = key;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        /**
+         * Removes the entity at index i by moving the last one into its place
+         */
+        void removeAt(int i) {
+            this.size--;
+            this.keys[i] = this.keys[this.size];
+            this.values[i] = this.values[this.size];
+            this.values[this.size] = null;
+        }
+
+        /**
+         * The values are only ever added as V, so reading one back as V is safe
+         */
+        @SuppressWarnings("unchecked")
+        <V> V value(int i) {
+            return (V) this.values[i];
+        }
+    }
+
+    private final Bucket[] buckets;
+    //the key of the last removed maximum. Every key in the heap is at least this
+    private long last;
+    private int size;
+    //where getMaxEntity found the maximum, or -1 if it must be looked for again
+    private int maxBucket;
+    private int maxIndex;
+
+    public RadixHeapPQ() {
+        this.buckets = new Bucket[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets[i] = new Bucket();
+        }
+        this.maxBucket = -1;
+    }
+
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum entity from an empty queue");
+        }
+        this.findMax();
+        return this.buckets[this.maxBucket].value(this.maxIndex);
+    }
+
+    /**
+     *
+     * @return the highest priority in the queue
+     */
+    public long getMaxPriority() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get maximum priority from an empty queue");
+        }
+        this.findMax();
+        return RadixHeapPQ.priority(this.buckets[this.maxBucket].keys[this.maxIndex]);
+    }
+
+    /**
+     *
+     * @return the highest priority which may still be added: the last removed
+     * maximum
+     */
+    public long getPriorityBound() {
+        return RadixHeapPQ.priority(this.last);
+    }
+
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove maximum entity from an empty queue");
+        }
+        this.pull();
+        Bucket bucket = this.buckets[0];
+        V maxEntity = bucket.value(bucket.size - 1);
+        bucket.removeAt(bucket.size - 1);
+        this.size--;
+        this.maxBucket = -1;
+        return maxEntity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size < 1;
+    }
+
+    @Override
+    public void addEntity(Long p, V data) {
+        this.addLongEntity(p.longValue(), data);
+    }
+
+    /**
+     * Adds an entity without boxing its priority
+     *
+     * @param p a priority no higher than the last removed maximum
+     * @param data the value of the entity
+     */
+    public void addLongEntity(long p, V data) {
+        long key = RadixHeapPQ.key(p);
+        if (Long.compareUnsigned(key, this.last) < 0) {
+            throw new RuntimeException("Can't add priority " + p + " above the last removed maximum "
+                    + RadixHeapPQ.priority(this.last));
+        }
+        this.buckets[this.bucketOf(key)].add(key, data);
+        this.size++;
+        this.maxBucket = -1;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Changes the priority of the first entity found with the given priority
+     * and value. Only the bucket of the old priority is searched. The new
+     * priority must not be higher than the last removed maximum
+     */
+    @Override
+    public void changePriority(Long p, V data, Long newPriority) {
+        long key = RadixHeapPQ.key(p);
+        long newKey = RadixHeapPQ.key(newPriority);
+        if (Long.compareUnsigned(newKey, this.last) < 0) {
+            throw new RuntimeException("Can't change priority to " + newPriority
+                    + " above the last removed maximum " + RadixHeapPQ.priority(this.last));
+        }
+        if (Long.compareUnsigned(key, this.last) < 0) {
+            return;
+        }
+        Bucket bucket = this.buckets[this.bucketOf(key)];
+        for (int i = 0; i < bucket.size; i++) {
+            if (bucket.keys[i] == key && bucket.values[i].equals(data)) {
+                bucket.removeAt(i);
+                this.buckets[this.bucketOf(newKey)].add(newKey, data);
+                this.maxBucket = -1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all entities and lifts the bound on priorities
+     */
+    @Override
+    public void empty() {
+        for (Bucket bucket : this.buckets) {
+            Arrays.fill(bucket.values, 0, bucket.size, null);
+            bucket.size = 0;
+        }
+        this.last = 0;
+        this.size = 0;
+        this.maxBucket = -1;
+    }
+
+    /**
+     * Removes up to maxEntities entities, emptying bucket 0 in one go after
+     * every redistribution
+     */
+    @Override
+    public int drainTo(Collection<? super V> collection, int maxEntities) {
+        int drained = 0;
+        while (drained < maxEntities && !this.isEmpty()) {
+            this.pull();
+            Bucket bucket = this.buckets[0];
+            this.maxBucket = -1;
+            while (drained < maxEntities && bucket.size > 0) {
+                collection.add(bucket.<V>value(bucket.size - 1));
+                bucket.removeAt(bucket.size - 1);
+                this.size--;
+                drained++;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Visits the entities bucket by bucket, so roughly in order of decreasing
+     * priority
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super Long, ? super V> action) {
+        for (Bucket bucket : this.buckets) {
+            for (int i = 0; i < bucket.size; i++) {
+                action.accept(RadixHeapPQ.priority(bucket.keys[i]), bucket.<V>value(i));
+            }
+        }
+    }
+
+    /**
+     * Finds the maximum without redistributing, which would raise the bound on
+     * new priorities: it is the minimum key of the lowest non-empty bucket
+     */
+    private void findMax() {
+        if (this.maxBucket >= 0) {
+            return;
+        }
+        int i = 0;
+        while (this.buckets[i].size == 0) {
+            i++;
+        }
+        Bucket bucket = this.buckets[i];
+        //bucket 0 only holds keys equal to last; take its newest like removeMaxEntity
+        int minIndex = bucket.size - 1;
+        for (int j = bucket.size - 2; j >= 0 && i > 0; j--) {
+            if (Long.compareUnsigned(bucket.keys[j], bucket.keys[minIndex]) < 0) {
+                minIndex = j;
+            }
+        }
+        this.maxBucket = i;
+        this.maxIndex = minIndex;
+    }
+
+    /**
+     * Makes bucket 0, which holds the entities whose key equals last, non-empty
+     * by moving last to the minimum key of the lowest non-empty bucket and
+     * redistributing that bucket
+     */
+    private void pull() {
+        if (this.buckets[0].size > 0) {
+            return;
+        }
+        int i = 1;
+        while (this.buckets[i].size == 0) {
+            i++;
+        }
+        Bucket bucket = this.buckets[i];
+        long minKey = bucket.keys[0];
+        for (int j = 1; j < bucket.size; j++) {
+            if (Long.compareUnsigned(bucket.keys[j], minKey) < 0) {
+                minKey = bucket.keys[j];
+            }
+        }
+        this.last = minKey;
+        for (int j = 0; j < bucket.size; j++) {
+            this.buckets[this.bucketOf(bucket.keys[j])].add(bucket.keys[j], bucket.values[j]);
+            bucket.values[j] = null;
+        }
+        bucket.size = 0;
+    }
+
+    private int bucketOf(long key) {
+        return 64 - Long.numberOfLeadingZeros(key ^ this.last);
+    }
+
+    /**
+     * Reverses the order of the priorities and maps it onto unsigned order, so
+     * Long.MAX_VALUE becomes key 0 and Long.MIN_VALUE the highest key
+     */
+    private static long key(long priority) {
+        return priority ^ Long.MAX_VALUE;
+    }
+
+    private static long priority(long key) {
+        return key ^ Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,656 @@
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Implements a priority queue using a red-black tree as the underlying data
+ * structure. Unlike BSTBasedPQ the height of the tree stays O(log n) even when
+ * priorities are inserted in sorted order, and entities with equal priorities
+ * are kept together in one node (in the order they were added) instead of
+ * being dropped. Insertion and deletion are iterative, so deep trees can't
+ * overflow the stack. The node with the highest priority is cached, making
+ * getMaxEntity O(1).
+ *
+ * @author aladago
+ * @param <E> the priority of the entity
+ * @param <V> the value of the entity
+ */
+public class RedBlackTreePQ<E extends Comparable<? super E>, V>
+        implements PriorityQueue<E, V>, PQMetrics.Reporter {
+
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+
+    //sentinel standing in for every leaf and for the parent of the root
+    private final RBNode<E, V> nil;
+    private RBNode<E, V> root;
+    private RBNode<E, V> maxNode;
+    private int size;
+    private PQMetrics metrics;
+
+    private static class RBNode<E, V> {
+
+        E priority;
+        ArrayDeque<V> values;
+        RBNode<E, V> leftChild;
+        RBNode<E, V> rightChild;
+        RBNode<E, V> parent;
+        boolean color;
+
+        RBNode(E priority, RBNode<E, V> nil) {
+            this.priority = priority;
+            this.values = new ArrayDeque<>(1);
+            this.leftChild = nil;
+            this.rightChild = nil;
+            this.parent = nil;
+            this.color = RED;
+        }
+    }
+
+    public RedBlackTreePQ() {
+        this.nil = new RBNode<>(null, null);
+        this.nil.color = BLACK;
+        this.root = this.nil;
+        this.maxNode = this.nil;
+        this.size = 0;
+    }
+
+    /**
+     * Checks whether the priority queue is empty or not
+     *
+     * @return True if the queue is empty. Return false otherwise
+     */
+    @Override
+    public boolean isEmpty() {
+        return this.root == this.nil;
+    }
+
+    /**
+     * Retrieves the entity with the highest priority in O(1)
+     *
+     * @return The value of the entity with the highest priority without
+     * removing it
+     */
+    @Override
+    public V getMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get max entity from an empty queue");
+        }
+        return this.maxNode.values.peekFirst();
+    }
+
+    /**
+     * Removes the highest priority entity in the queue. Among entities of equal
+     * priority the one added first is removed first
+     *
+     * @return The value of the entity with the highest priority
+     */
+    @Override
+    public V removeMaxEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove max entity from an empty queue");
+        }
+        RBNode<E, V> node = this.maxNode;
+        V value = node.values.pollFirst();
+        if (node.values.isEmpty()) {
+            this.deleteNode(node);
+        }
+        this.size--;
+        return value;
+    }
+
+    /**
+     * Retrieves the entity with the lowest priority in O(log n). Among
+     * entities of equal priority it is the one added last
+     *
+     * @return The value of the entity with the lowest priority without
+     * removing it
+     */
+    @Override
+    public V getMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't get min entity from an empty queue");
+        }
+        return this.minimum(this.root).values.peekLast();
+    }
+
+    /**
+     * Removes the lowest priority entity in the queue in O(log n)
+     *
+     * @return The value of the entity with the lowest priority
+     */
+    @Override
+    public V removeMinEntity() {
+        if (this.isEmpty()) {
+            throw new RuntimeException("Can't remove min entity from an empty queue");
+        }
+        RBNode<E, V> node = this.minimum(this.root);
+        V value = node.values.pollLast();
+        if (node.values.isEmpty()) {
+            this.deleteNode(node);
+        }
+        this.size--;
+        return value;
+    }
+
+    /**
+     * Adds a new entity to the priority queue
+     *
+     * @param p the priority of the new entity
+     * @param v the value of the new entity
+     */
+    @Override
+    public void addEntity(E p, V v) {
+        this.insertEntity(p, v);
+        this.size++;
+    }
+
+    /**
+     * Starts or stops reporting comparisons and the depth reached by
+     * insertions
+     *
+     * @param metrics where to report, or null to stop reporting
+     */
+    @Override
+    public void setMetrics(PQMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * A method to change the priority of an entity already in the queue
+     *
+     * @param oldPriority the current priority of the entity to update
+     * @param value the value of the entity. Used to pick the right entity
+     * among those with the same priority
+     * @param newPriority the new priority
+     */
+    @Override
+    public void changePriority(E oldPriority, V value, E newPriority) {
+        RBNode<E, V> node = this.findNode(oldPriority);
+        if (node == this.nil || !node.values.remove(value)) {
+            throw new RuntimeException("Can't change priority of a non-existent entity");
+        }
+        if (node.values.isEmpty()) {
+            this.deleteNode(node);
+        }
+        this.insertEntity(newPriority, value);
+    }
+
+    /**
+     * The size of the priority queue
+     *
+     * @return The number of entities in the queue
+     */
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * removes all items in the priority queue
+     */
+    @Override
+    public void empty() {
+        this.root = this.nil;
+        this.maxNode = this.nil;
+        this.size = 0;
+    }
+
+    /**
+     * The height of the tree, computed iteratively with a level-order walk
+     *
+     * @return the number of nodes on the longest path from the root to a leaf
+     */
+    public int getHeight() {
+        int height = 0;
+        ArrayDeque<RBNode<E, V>> level = new ArrayDeque<>();
+        if (this.root != this.nil) {
+            level.add(this.root);
+        }
+        while (!level.isEmpty()) {
+            height++;
+            for (int i = level.size(); i > 0; i--) {
+                RBNode<E, V> node = level.poll();
+                if (node.leftChild != this.nil) {
+                    level.add(node.leftChild);
+                }
+                if (node.rightChild != this.nil) {
+                    level.add(node.rightChild);
+                }
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Visits the entities level by level. Entities of equal priority are
+     * visited in the order they were added, so re-adding them keeps that order
+     *
+     * @param action called with the priority and the value of every entity
+     */
+    @Override
+    public void forEachEntity(BiConsumer<? super E, ? super V> action) {
+        ArrayDeque<RBNode<E, V>> nodes = new ArrayDeque<>();
+        if (this.root != this.nil) {
+            nodes.add(this.root);
+        }
+        while (!nodes.isEmpty()) {
+            RBNode<E, V> node = nodes.poll();
+            for (V value : node.values) {
+                action.accept(node.priority, value);
+            }
+            if (node.leftChild != this.nil) {
+                nodes.add(node.leftChild);
+            }
+            if (node.rightChild != this.nil) {
+                nodes.add(node.rightChild);
+            }
+        }
+    }
+
+    /**
+     * Walks from the cached maximum node to its predecessors. Entities of
+     * equal priority come in the order removeMaxEntity would remove them
+     *
+     * @return the values in order of decreasing priority
+     */
+    @Override
+    public Iterator<V> orderedIterator() {
+        return new Iterator<V>() {
+            private RBNode<E, V> node = maxNode;
+            private Iterator<V> values = node == nil ? null : node.values.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return node != nil;
+            }
+
+            @Override
+            public V next() {
+                if (node == nil) {
+                    throw new NoSuchElementException();
+                }
+                V value = values.next();
+                if (!values.hasNext()) {
+                    node = predecessor(node);
+                    values = node == nil ? null : node.values.iterator();
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Splits the tree in place, handing subtrees to the new spliterator
+     *
+     * @return a spliterator over the values in no particular order
+     */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new SubtreeSpliterator<>(this.root, this.nil, this.size);
+    }
+
+    /**
+     * Keeps whole subtrees to visit, every node before its children. A split
+     * hands half of them to the new spliterator, and when only one is left it
+     * is broken up into its root, which stays, and its children first
+     */
+    private static class SubtreeSpliterator<E, V> implements Spliterator<V> {
+
+        private final ArrayDeque<RBNode<E, V>> subtrees;
+        private final RBNode<E, V> nil;
+        //a root whose children were broken off
+        private RBNode<E, V> node;
+        //the values of the node being visited
+        private Iterator<V> values;
+        private long estimate;
+
+        SubtreeSpliterator(RBNode<E, V> root, RBNode<E, V> nil, long estimate) {
+            this.subtrees = new ArrayDeque<>();
+            if (root != nil) {
+                this.subtrees.push(root);
+            }
+            this.nil = nil;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (this.values == null || !this.values.hasNext()) {
+                RBNode<E, V> next = this.node;
+                if (next != null) {
+                    this.node = null;
+                } else {
+                    next = this.subtrees.poll();
+                    if (next == null) {
+                        return false;
+                    }
+                    this.pushChildren(next);
+                }
+                this.values = next.values.iterator();
+            }
+            action.accept(this.values.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (this.node == null && this.subtrees.size() == 1) {
+                this.node = this.subtrees.pop();
+                this.pushChildren(this.node);
+            }
+            if (this.subtrees.isEmpty()) {
+                return null;
+            }
+            SubtreeSpliterator<E, V> prefix = new SubtreeSpliterator<>(this.nil, this.nil, this.estimate >>> 1);
+            for (int i = Math.max(1, this.subtrees.size() / 2); i > 0; i--) {
+                prefix.subtrees.push(this.subtrees.pollLast());
+            }
+            this.estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        private void pushChildren(RBNode<E, V> node) {
+            if (node.rightChild != this.nil) {
+                this.subtrees.push(node.rightChild);
+            }
+            if (node.leftChild != this.nil) {
+                this.subtrees.push(node.leftChild);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     *
+     * @param priority the priority to look for
+     * @return the node holding the given priority or the sentinel
+     */
+    private RBNode<E, V> findNode(E priority) {
+        RBNode<E, V> node = this.root;
+        while (node != this.nil) {
+            int priorityOrder = priority.compareTo(node.priority);
+            if (priorityOrder < 0) {
+                node = node.leftChild;
+            } else if (priorityOrder > 0) {
+                node = node.rightChild;
+            } else {
+                break;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Adds a value to the node of its priority, creating and rebalancing the
+     * node if the priority isn't in the tree yet
+     *
+     * @param p the priority
+     * @param v the value
+     */
+    private void insertEntity(E p, V v) {
+        RBNode<E, V> parent = this.nil;
+        RBNode<E, V> node = this.root;
+        int priorityOrder = 0;
+        int depth = 0;
+        while (node != this.nil) {
+            priorityOrder = p.compareTo(node.priority);
+            depth++;
+            if (priorityOrder == 0) {
+                node.values.addLast(v);
+                this.reportInsertion(depth, depth);
+                return;
+            }
+            parent = node;
+            node = priorityOrder < 0 ? node.leftChild : node.rightChild;
+        }
+        //the new node is one level below the last node compared, and is
+        //compared with the maximum unless the tree was empty
+        this.reportInsertion(depth == 0 ? 0 : depth + 1, depth + 1);
+
+        RBNode<E, V> newNode = new RBNode<>(p, this.nil);
+        newNode.values.addLast(v);
+        newNode.parent = parent;
+        if (parent == this.nil) {
+            this.root = newNode;
+        } else if (priorityOrder < 0) {
+            parent.leftChild = newNode;
+        } else {
+            parent.rightChild = newNode;
+        }
+
+        if (this.maxNode == this.nil || p.compareTo(this.maxNode.priority) > 0) {
+            this.maxNode = newNode;
+        }
+        this.fixAfterInsertion(newNode);
+    }
+
+    /**
+     *
+     * @param comparisons the number of priorities compared by an insertion
+     * @param depth the depth of the node the value went to, the root being 1
+     */
+    private void reportInsertion(int comparisons, int depth) {
+        if (this.metrics != null) {
+            this.metrics.comparisons(comparisons);
+            this.metrics.treeDepth(depth);
+        }
+    }
+
+    private void fixAfterInsertion(RBNode<E, V> node) {
+        while (node.parent.color == RED) {
+            RBNode<E, V> grandParent = node.parent.parent;
+            if (node.parent == grandParent.leftChild) {
+                RBNode<E, V> uncle = grandParent.rightChild;
+                if (uncle.color == RED) {
+                    node.parent.color = BLACK;
+                    uncle.color = BLACK;
+                    grandParent.color = RED;
+                    node = grandParent;
+                } else {
+                    if (node == node.parent.rightChild) {
+                        node = node.parent;
+                        this.rotateLeft(node);
+                    }
+                    node.parent.color = BLACK;
+                    grandParent.color = RED;
+                    this.rotateRight(grandParent);
+                }
+            } else {
+                RBNode<E, V> uncle = grandParent.leftChild;
+                if (uncle.color == RED) {
+                    node.parent.color = BLACK;
+                    uncle.color = BLACK;
+                    grandParent.color = RED;
+                    node = grandParent;
+                } else {
+                    if (node == node.parent.leftChild) {
+                        node = node.parent;
+                        this.rotateRight(node);
+                    }
+                    node.parent.color = BLACK;
+                    grandParent.color = RED;
+                    this.rotateLeft(grandParent);
+                }
+            }
+        }
+        this.root.color = BLACK;
+    }
+
+    /**
+     * Unlinks a node from the tree and rebalances it. Nodes are moved rather
+     * than having their contents copied, so the cached max node stays valid
+     *
+     * @param node the node to remove
+     */
+    private void deleteNode(RBNode<E, V> node) {
+        if (node == this.maxNode) {
+            this.maxNode = this.predecessor(node);
+        }
+
+        RBNode<E, V> replaced = node;
+        boolean removedColor = replaced.color;
+        RBNode<E, V> child;
+        if (node.leftChild == this.nil) {
+            child = node.rightChild;
+            this.transplant(node, node.rightChild);
+        } else if (node.rightChild == this.nil) {
+            child = node.leftChild;
+            this.transplant(node, node.leftChild);
+        } else {
+            replaced = this.minimum(node.rightChild);
+            removedColor = replaced.color;
+            child = replaced.rightChild;
+            if (replaced.parent == node) {
+                child.parent = replaced;
+            } else {
+                this.transplant(replaced, replaced.rightChild);
+                replaced.rightChild = node.rightChild;
+                replaced.rightChild.parent = replaced;
+            }
+            this.transplant(node, replaced);
+            replaced.leftChild = node.leftChild;
+            replaced.leftChild.parent = replaced;
+            replaced.color = node.color;
+        }
+
+        if (removedColor == BLACK) {
+            this.fixAfterDeletion(child);
+        }
+    }
+
+    private void fixAfterDeletion(RBNode<E, V> node) {
+        while (node != this.root && node.color == BLACK) {
+            if (node == node.parent.leftChild) {
+                RBNode<E, V> sibling = node.parent.rightChild;
+                if (sibling.color == RED) {
+                    sibling.color = BLACK;
+                    node.parent.color = RED;
+                    this.rotateLeft(node.parent);
+                    sibling = node.parent.rightChild;
+                }
+                if (sibling.leftChild.color == BLACK && sibling.rightChild.color == BLACK) {
+                    sibling.color = RED;
+                    node = node.parent;
+                } else {
+                    if (sibling.rightChild.color == BLACK) {
+                        sibling.leftChild.color = BLACK;
+                        sibling.color = RED;
+                        this.rotateRight(sibling);
+                        sibling = node.parent.rightChild;
+                    }
+                    sibling.color = node.parent.color;
+                    node.parent.color = BLACK;
+                    sibling.rightChild.color = BLACK;
+                    this.rotateLeft(node.parent);
+                    node = this.root;
+                }
+            } else {
+                RBNode<E, V> sibling = node.parent.leftChild;
+                if (sibling.color == RED) {
+                    sibling.color = BLACK;
+                    node.parent.color = RED;
+                    this.rotateRight(node.parent);
+                    sibling = node.parent.leftChild;
+                }
+                if (sibling.rightChild.color == BLACK && sibling.leftChild.color == BLACK) {
+                    sibling.color = RED;
+                    node = node.parent;
+                } else {
+                    if (sibling.leftChild.color == BLACK) {
+                        sibling.rightChild.color = BLACK;
+                        sibling.color = RED;
+                        this.rotateLeft(sibling);
+                        sibling = node.parent.leftChild;
+                    }
+                    sibling.color = node.parent.color;
+                    node.parent.color = BLACK;
+                    sibling.leftChild.color = BLACK;
+                    this.rotateRight(node.parent);
+                    node = this.root;
+                }
+            }
+        }
+        node.color = BLACK;
+    }
+
+    /**
+     * Replaces the subtree rooted at oldNode by the one rooted at newNode
+     */
+    private void transplant(RBNode<E, V> oldNode, RBNode<E, V> newNode) {
+        if (oldNode.parent == this.nil) {
+            this.root = newNode;
+        } else if (oldNode == oldNode.parent.leftChild) {
+            oldNode.parent.leftChild = newNode;
+        } else {
+            oldNode.parent.rightChild = newNode;
+        }
+        newNode.parent = oldNode.parent;
+    }
+
+    private void rotateLeft(RBNode<E, V> node) {
+        RBNode<E, V> pivot = node.rightChild;
+        node.rightChild = pivot.leftChild;
+        if (pivot.leftChild != this.nil) {
+            pivot.leftChild.parent = node;
+        }
+        this.transplant(node, pivot);
+        pivot.leftChild = node;
+        node.parent = pivot;
+    }
+
+    private void rotateRight(RBNode<E, V> node) {
+        RBNode<E, V> pivot = node.leftChild;
+        node.leftChild = pivot.rightChild;
+        if (pivot.rightChild != this.nil) {
+            pivot.rightChild.parent = node;
+        }
+        this.transplant(node, pivot);
+        pivot.rightChild = node;
+        node.parent = pivot;
+    }
+
+    private RBNode<E, V> minimum(RBNode<E, V> node) {
+        while (node.leftChild != this.nil) {
+            node = node.leftChild;
+        }
+        return node;
+    }
+
+    private RBNode<E, V> maximum(RBNode<E, V> node) {
+        while (node.rightChild != this.nil) {
+            node = node.rightChild;
+        }
+        return node;
+    }
+
+    /**
+     *
+     * @param node a node in the tree
+     * @return the node with the next lower priority or the sentinel
+     */
+    private RBNode<E, V> predecessor(RBNode<E, V> node) {
+        if (node.leftChild != this.nil) {
+            return this.maximum(node.leftChild);
+        }
+        RBNode<E, V> parent = node.parent;
+        while (parent != this.nil && node == parent.leftChild) {
+            node = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+}
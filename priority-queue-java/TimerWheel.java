@@ -0,0 +1,254 @@
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A hierarchical timer wheel: the bucket queue specialised for deadlines, where
+ * time only moves forward. There are 4 wheels of 64 slots. Wheel 0 has a slot
+ * per tick, wheel 1 a slot per 64 ticks, wheel 2 per 4096 ticks and so on, so
+ * together they cover 2^24 ticks ahead of the current time. A timer goes into
+ * the wheel of the highest 6-bit digit in which its deadline differs from the
+ * current time, and is cascaded into a lower wheel when time reaches its slot.
+ * Timers further away wait in an overflow list.
+ *
+ * Scheduling is O(1) and a timer is cascaded at most 3 times. Every wheel
+ * keeps a 64-bit occupancy bitmap, so advancing the time skips empty slots
+ * with a single bit scan instead of ticking through them. Timers fire in
+ * order of deadline, and timers with equal deadlines in the order they were
+ * scheduled.
+ *
+ * @author aladago
+ * @param <V> the value of the timer
+ */
+public class TimerWheel<V> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int WHEELS = 4;
+    private static final int INITIAL_SLOT_SIZE = 4;
+
+    private static class Slot {
+
+        long[] deadlines;
+        Object[] values;
+        int size;
+
+        Slot() {
+            this.deadlines = new long[INITIAL_SLOT_SIZE];
+            this.values = new Object[INITIAL_SLOT_SIZE];
+        }
+
+        void add(long deadline, Object value) {
+            if (this.size == this.deadlines.length) {
+                this.deadlines = Arrays.copyOf(this.deadlines, 2 * this.size);
+                this.values = Arrays.copyOf(this.values, 2 * this.size);
+            }
+            this.deadlines[this.size] = deadline;
+            this.values[this.size] = value;
+            this.size++;
+        }
+
+        void clear() {
+            Arrays.fill(this.values, 0, this.size, null);
+            this.size = 0;
+        }
+
+        /**
+         * The values are only ever added as V, so reading one back as V is safe
+         */
+        @SuppressWarnings("unchecked")
+        <V> V value(int i) {
+            return (V) this.values[i];
+        }
+    }
+
+    private final Slot[][] wheels;
+    private final long[] occupied;
+    private final Slot overflow;
+    //the overflow timers are moved here while they are placed again
+    private final Slot spare;
+    private long currentTime;
+    private int size;
+
+    /**
+     *
+     * @param startTime the current time, in ticks
+     */
+    public TimerWheel(long startTime) {
+        this.wheels = new Slot[WHEELS][SLOTS];
+        for (Slot[] wheel : this.wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+        this.occupied = new long[WHEELS];
+        this.overflow = new Slot();
+        this.spare = new Slot();
+        this.currentTime = startTime;
+    }
+
+    /**
+     *
+     * @param deadline the tick at which the timer fires. A deadline which has
+     * already passed fires on the next call to advance
+     * @param value the value returned when the timer fires
+     */
+    public void schedule(long deadline, V value) {
+        this.place(Math.max(deadline, this.currentTime), value);
+        this.size++;
+    }
+
+    /**
+     * Moves the current time forward and fires every timer whose deadline
+     * has been reached
+     *
+     * @param now the new current time
+     * @param expired where the values of the fired timers are put, in order
+     * of deadline
+     * @return the number of timers fired
+     */
+    public int advance(long now, Collection<? super V> expired) {
+        if (now < this.currentTime) {
+            throw new RuntimeException("Can't move time back from " + this.currentTime + " to " + now);
+        }
+        int fired = 0;
+        while (this.size > 0) {
+            //fire the slots of wheel 0 which have been reached
+            long pending = this.occupied[0] & (-1L << (this.currentTime & (SLOTS - 1)));
+            while (pending != 0) {
+                int slot = Long.numberOfTrailingZeros(pending);
+                long deadline = (this.currentTime & ~(long) (SLOTS - 1)) | slot;
+                if (deadline > now) {
+                    this.moveTo(now);
+                    return fired;
+                }
+                this.currentTime = deadline;
+                fired += this.fire(this.wheels[0][slot], expired);
+                this.occupied[0] &= ~(1L << slot);
+                pending &= pending - 1;
+            }
+            if (!this.cascadeNext(now)) {
+                break;
+            }
+        }
+        this.moveTo(now);
+        return fired;
+    }
+
+    /**
+     *
+     * @return the number of timers which haven't fired
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size < 1;
+    }
+
+    /**
+     *
+     * @return the time passed to the last call of advance, or the start time
+     */
+    public long getCurrentTime() {
+        return this.currentTime;
+    }
+
+    /**
+     * Moves the timers of the earliest occupied slot above wheel 0 (or of the
+     * overflow list) into lower wheels, provided that slot starts no later
+     * than now
+     *
+     * @return false if nothing is due by now
+     */
+    private boolean cascadeNext(long now) {
+        for (int wheel = 1; wheel < WHEELS; wheel++) {
+            if (this.occupied[wheel] == 0) {
+                continue;
+            }
+            int slot = Long.numberOfTrailingZeros(this.occupied[wheel]);
+            int shift = SLOT_BITS * wheel;
+            long start = (this.currentTime & ~((1L << (shift + SLOT_BITS)) - 1)) | ((long) slot << shift);
+            if (start > now) {
+                return false;
+            }
+            this.currentTime = start;
+            this.occupied[wheel] &= ~(1L << slot);
+            this.redistribute(this.wheels[wheel], slot);
+            return true;
+        }
+        if (this.overflow.size == 0) {
+            return false;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < this.overflow.size; i++) {
+            earliest = Math.min(earliest, this.overflow.deadlines[i]);
+        }
+        if (earliest > now) {
+            return false;
+        }
+        this.currentTime = earliest;
+        this.redistributeOverflow();
+        return true;
+    }
+
+    /**
+     * Sets the current time to now, which must be before every pending
+     * deadline. Only the overflow list can hold timers whose wheel depends on
+     * how far the time moved
+     */
+    private void moveTo(long now) {
+        boolean leftBlock = ((now ^ this.currentTime) >>> (SLOT_BITS * WHEELS)) != 0;
+        this.currentTime = now;
+        if (leftBlock && this.overflow.size > 0) {
+            this.redistributeOverflow();
+        }
+    }
+
+    /**
+     * Every timer of a slot starting at the current time belongs to a lower
+     * wheel, so the slot can be emptied while its timers are placed
+     */
+    private void redistribute(Slot[] wheel, int slot) {
+        Slot timers = wheel[slot];
+        for (int i = 0; i < timers.size; i++) {
+            this.place(timers.deadlines[i], timers.values[i]);
+        }
+        timers.clear();
+    }
+
+    private void redistributeOverflow() {
+        Slot timers = this.spare;
+        for (int i = 0; i < this.overflow.size; i++) {
+            timers.add(this.overflow.deadlines[i], this.overflow.values[i]);
+        }
+        this.overflow.clear();
+        for (int i = 0; i < timers.size; i++) {
+            this.place(timers.deadlines[i], timers.values[i]);
+        }
+        timers.clear();
+    }
+
+    private void place(long deadline, Object value) {
+        long difference = deadline ^ this.currentTime;
+        int wheel = difference == 0 ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / SLOT_BITS;
+        if (wheel >= WHEELS) {
+            this.overflow.add(deadline, value);
+            return;
+        }
+        int slot = (int) (deadline >>> (SLOT_BITS * wheel)) & (SLOTS - 1);
+        this.wheels[wheel][slot].add(deadline, value);
+        this.occupied[wheel] |= 1L << slot;
+    }
+
+    private int fire(Slot slot, Collection<? super V> expired) {
+        int fired = slot.size;
+        for (int i = 0; i < fired; i++) {
+            expired.add(slot.<V>value(i));
+        }
+        slot.clear();
+        this.size -= fired;
+        return fired;
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.Comparator;
+
+/**
+ * QuickSelect for lists of objects ordered by a Comparator, and argselect: selection which
+ * permutes an array of indices into the data instead of the data itself. Argselect leaves the
+ * data untouched, so many threads can query one large shared array at once, each with its own
+ * index array, and no copy of the data is made.
+ * Both use the introselect loop of QuickSelect.
+ * @author maxwellaladago
+ *
+ */
+public class ComparatorQuickSelect {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	private static final int NINTHER_THRESHOLD = 40;
+
+	/**
+	 * Compares the data at two indices
+	 */
+	interface IndexComparator {
+		int compare(int i, int j);
+	}
+
+	/**
+	 * Selects an order statistic of a list of objects. The objects are reordered in place.
+	 * @param values a list of objects from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @param comparator the order of the objects
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException
+	 */
+	public <T> T quickSelect(T [] values, int k, Comparator<? super T> comparator) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		return this.select(values, 0, values.length, k - 1, comparator);
+	}
+
+	/**
+	 * Finds the index of an order statistic of the real numbers at a set of indices. The indices
+	 * are reordered so that indices[k - 1] is the index of the k-th order statistic, with the
+	 * indices of no greater numbers before it and of no smaller numbers after it. The numbers
+	 * themselves are not changed. Numbers are ordered as by Double.compare
+	 * @param values the real numbers
+	 * @param indices the indices into values to select among, e.g. 0 to values.length - 1
+	 * @param k the i-th order statistic
+	 * @return the index of the k-th order statistic
+	 * @throws RuntimeException
+	 */
+	public int argSelect(double [] values, int [] indices, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, indices.length);
+		return this.argSelect(indices, 0, indices.length, k - 1, (i, j) -> Double.compare(values[i], values[j]));
+	}
+
+	/**
+	 * argSelect for floats. Numbers are ordered as by Float.compare
+	 */
+	public int argSelect(float [] values, int [] indices, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, indices.length);
+		return this.argSelect(indices, 0, indices.length, k - 1, (i, j) -> Float.compare(values[i], values[j]));
+	}
+
+	/**
+	 * argSelect for long integers
+	 */
+	public int argSelect(long [] values, int [] indices, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, indices.length);
+		return this.argSelect(indices, 0, indices.length, k - 1, (i, j) -> Long.compare(values[i], values[j]));
+	}
+
+	/**
+	 * argSelect for integers
+	 */
+	public int argSelect(int [] values, int [] indices, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, indices.length);
+		return this.argSelect(indices, 0, indices.length, k - 1, (i, j) -> Integer.compare(values[i], values[j]));
+	}
+
+	/**
+	 * argSelect for objects ordered by a Comparator
+	 */
+	public <T> int argSelect(T [] values, int [] indices, int k, Comparator<? super T> comparator)
+			throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, indices.length);
+		return this.argSelect(indices, 0, indices.length, k - 1, (i, j) -> comparator.compare(values[i], values[j]));
+	}
+
+	/**
+	 * @param n the size of a list
+	 * @return the indices 0 to n - 1, to pass to argSelect
+	 */
+	public static int [] indices(int n) {
+		int [] indices = new int[n];
+		for (int i = 0; i < n; i++) {
+			indices[i] = i;
+		}
+		return indices;
+	}
+
+	/**
+	 * The introselect loop of QuickSelect.select for objects
+	 */
+	<T> T select(T [] values, int lowerIndex, int upperIndex, int index, Comparator<? super T> comparator) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			T pivot = medianOfMedians ? this.medianOfMedians(values, lowerIndex, upperIndex, comparator)
+					: this.samplePivot(values, lowerIndex, upperIndex, comparator);
+			int lt = lowerIndex;
+			int i = lowerIndex;
+			int gt = upperIndex - 1;
+			while (i <= gt) {
+				int order = comparator.compare(values[i], pivot);
+				if (order < 0)
+					this.swap(values, lt++, i++);
+				else if (order > 0)
+					this.swap(values, i, gt--);
+				else
+					i++;
+			}
+			bounds[0] = lt;
+			bounds[1] = gt + 1;
+
+			if (index < bounds[0])
+				upperIndex = bounds[0];
+			else if (index >= bounds[1])
+				lowerIndex = bounds[1];
+			else
+				return values[index];
+
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(values, lowerIndex, upperIndex, comparator);
+		return values[index];
+	}
+
+	/**
+	 * The introselect loop of QuickSelect.select over indices. The pivot is an index into the
+	 * data, which stays valid however the indices are permuted
+	 */
+	int argSelect(int [] indices, int lowerIndex, int upperIndex, int index, IndexComparator comparator) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			int pivot = medianOfMedians ? this.medianOfMedians(indices, lowerIndex, upperIndex, comparator)
+					: this.samplePivot(indices, lowerIndex, upperIndex, comparator);
+			int lt = lowerIndex;
+			int i = lowerIndex;
+			int gt = upperIndex - 1;
+			while (i <= gt) {
+				int order = comparator.compare(indices[i], pivot);
+				if (order < 0)
+					this.swap(indices, lt++, i++);
+				else if (order > 0)
+					this.swap(indices, i, gt--);
+				else
+					i++;
+			}
+			bounds[0] = lt;
+			bounds[1] = gt + 1;
+
+			if (index < bounds[0])
+				upperIndex = bounds[0];
+			else if (index >= bounds[1])
+				lowerIndex = bounds[1];
+			else
+				return indices[index];
+
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(indices, lowerIndex, upperIndex, comparator);
+		return indices[index];
+	}
+
+	private <T> void swap(T [] values, int i, int j) {
+		T temp = values[i];
+		values[i] = values[j];
+		values[j] = temp;
+	}
+
+	private void swap(int [] indices, int i, int j) {
+		int temp = indices[i];
+		indices[i] = indices[j];
+		indices[j] = temp;
+	}
+
+	private <T> void insertionSort(T [] values, int lowerIndex, int upperIndex, Comparator<? super T> comparator) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			T value = values[i];
+			int j = i - 1;
+			while (j >= lowerIndex && comparator.compare(values[j], value) > 0) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+
+	private void insertionSort(int [] indices, int lowerIndex, int upperIndex, IndexComparator comparator) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			int value = indices[i];
+			int j = i - 1;
+			while (j >= lowerIndex && comparator.compare(indices[j], value) > 0) {
+				indices[j + 1] = indices[j];
+				j--;
+			}
+			indices[j + 1] = value;
+		}
+	}
+
+	private <T> T medianOf3(T a, T b, T c, Comparator<? super T> comparator) {
+		if (comparator.compare(a, b) < 0)
+			return comparator.compare(b, c) < 0 ? b : (comparator.compare(a, c) < 0 ? c : a);
+		return comparator.compare(a, c) < 0 ? a : (comparator.compare(b, c) < 0 ? c : b);
+	}
+
+	private int medianOf3(int a, int b, int c, IndexComparator comparator) {
+		if (comparator.compare(a, b) < 0)
+			return comparator.compare(b, c) < 0 ? b : (comparator.compare(a, c) < 0 ? c : a);
+		return comparator.compare(a, c) < 0 ? a : (comparator.compare(b, c) < 0 ? c : b);
+	}
+
+	private <T> T samplePivot(T [] values, int lowerIndex, int upperIndex, Comparator<? super T> comparator) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD)
+			return this.medianOf3(values[lowerIndex], values[mid], values[last], comparator);
+
+		int step = size / 8;
+		return this.medianOf3(
+				this.medianOf3(values[lowerIndex], values[lowerIndex + step], values[lowerIndex + 2 * step], comparator),
+				this.medianOf3(values[mid - step], values[mid], values[mid + step], comparator),
+				this.medianOf3(values[last - 2 * step], values[last - step], values[last], comparator),
+				comparator);
+	}
+
+	private int samplePivot(int [] indices, int lowerIndex, int upperIndex, IndexComparator comparator) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD)
+			return this.medianOf3(indices[lowerIndex], indices[mid], indices[last], comparator);
+
+		int step = size / 8;
+		return this.medianOf3(
+				this.medianOf3(indices[lowerIndex], indices[lowerIndex + step], indices[lowerIndex + 2 * step], comparator),
+				this.medianOf3(indices[mid - step], indices[mid], indices[mid + step], comparator),
+				this.medianOf3(indices[last - 2 * step], indices[last - step], indices[last], comparator),
+				comparator);
+	}
+
+	private <T> T medianOfMedians(T [] values, int lowerIndex, int upperIndex, Comparator<? super T> comparator) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(values, group, groupEnd, comparator);
+			this.swap(values, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.select(values, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2, comparator);
+	}
+
+	private int medianOfMedians(int [] indices, int lowerIndex, int upperIndex, IndexComparator comparator) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(indices, group, groupEnd, comparator);
+			this.swap(indices, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.argSelect(indices, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2, comparator);
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		ComparatorQuickSelect quickSelect = new ComparatorQuickSelect();
+		String [] words = {"pear", "fig", "banana", "kiwi", "apple"};
+		System.out.println("The second shortest word (kiwi or pear): "
+				+ quickSelect.quickSelect(words, 2, Comparator.comparingInt(String::length)));
+
+		double [] values = {5, 2, 6, 3, 1, 7, 4};
+		int [] indices = ComparatorQuickSelect.indices(values.length);
+		int index = quickSelect.argSelect(values, indices, 6);
+		System.out.println("The 6-th order statistic (6.0) is at index 2: " + index + ", values unchanged: "
+				+ java.util.Arrays.toString(values));
+
+		long [] timestamps = new long[1000000];
+		for (int i = 0; i < timestamps.length; i++) {
+			timestamps[i] = (1L << 60) + timestamps.length - i;
+		}
+		index = quickSelect.argSelect(timestamps, ComparatorQuickSelect.indices(timestamps.length), 1);
+		System.out.println("The smallest timestamp is the last (999999): " + index);
+	}
+}
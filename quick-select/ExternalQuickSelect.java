@@ -0,0 +1,358 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Selects order statistics of files of binary doubles too large for the heap, e.g. metric dumps
+ * of tens of GB. The file is read sequentially in chunks through a FileChannel, and no more
+ * than a configurable heap budget is used:
+ *
+ * The first pass keeps a uniform random sample of the numbers (and all of them, if they fit).
+ * Every further pass takes two pivots from the sample of the candidate range which very likely
+ * bracket the wanted order statistic (as Floyd and Rivest do) and are close enough that the
+ * numbers between them fit the budget, counts the numbers below, above and equal to them, and
+ * gathers the numbers strictly between. When the order statistic is one of the pivots, their
+ * counts tell so. When it lies between the pivots, it is selected from the gathered numbers in
+ * memory by QuickSelect, so two passes over the file are typical. Otherwise the candidate range
+ * shrinks to one side, sampled during the same pass, and another pass follows. Long runs of
+ * equal numbers therefore cost no extra passes.
+ *
+ * Numbers are compared as Double.compare orders them: -0.0 before 0.0, and NaN after
+ * everything. Internally every double is a long whose signed order is that order.
+ * @author maxwellaladago
+ *
+ */
+public class ExternalQuickSelect {
+	public static final long DEFAULT_HEAP_BUDGET = 64L << 20;
+	private static final long MIN_HEAP_BUDGET = 1L << 20;
+	private static final int MAX_SAMPLE_SIZE = 1 << 16;
+	private static final int MAX_CHUNK_BYTES = 1 << 19;
+
+	private final ByteOrder byteOrder;
+	private final int sampleSize;
+	private final int chunkBytes;
+	// how many numbers may be gathered in memory
+	private final int capacity;
+	private final PrimitiveQuickSelect quickSelect;
+	private final Random random;
+	private int passes;
+
+	public ExternalQuickSelect() {
+		this(DEFAULT_HEAP_BUDGET, ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * @param heapBudget about how many bytes of heap a selection may use, at least 1 MB
+	 * @param byteOrder the byte order of the doubles in the files, BIG_ENDIAN as written by
+	 * DataOutputStream
+	 */
+	public ExternalQuickSelect(long heapBudget, ByteOrder byteOrder) {
+		if (heapBudget < MIN_HEAP_BUDGET)
+			throw new RuntimeException("Error: a heap budget of " + heapBudget + " bytes is too small. "
+					+ "Try at least " + MIN_HEAP_BUDGET);
+		this.byteOrder = byteOrder;
+		// three samples take at most a quarter of the budget, the chunk and its copy another
+		this.sampleSize = (int) Math.min(MAX_SAMPLE_SIZE, heapBudget / (3 * 8 * 4));
+		this.chunkBytes = (int) Math.min(MAX_CHUNK_BYTES, heapBudget / 8) & ~7;
+		this.capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+				(heapBudget - 3L * 8 * this.sampleSize - 2L * this.chunkBytes) / 8);
+		this.quickSelect = new PrimitiveQuickSelect();
+		this.random = new Random();
+	}
+
+	/**
+	 * @return how many times the last selection read the file
+	 */
+	public int getPasses() {
+		return this.passes;
+	}
+
+	/**
+	 * Selects an order statistic of the doubles in a file
+	 * @param file a file of binary doubles, 8 bytes each
+	 * @param k the i-th order statistic, from 1 to the number of doubles
+	 * @return the k-th order statistic among the doubles
+	 * @throws IOException if the file can't be read
+	 * @throws RuntimeException
+	 */
+	public double quickSelect(Path file, long k) throws IOException, RuntimeException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long bytes = channel.size();
+			if (bytes % 8 != 0)
+				throw new RuntimeException("Error: " + file + " has " + bytes + " bytes, which isn't a whole "
+						+ "number of doubles");
+			long n = bytes / 8;
+			if (k <= 0)
+				throw new RuntimeException("Error: k = " + k + "? 0 or negative order "
+						+ "statistic  doesn't make sense. Try again");
+			else if (k > n)
+				throw new RuntimeException("Error: " + k + "-th order statistic  doesn't make sense "
+						+ "for a list of size " + n);
+			return toDouble(this.select(channel, n, k));
+		}
+	}
+
+	/**
+	 * The candidate range [lowKey, highKey] holds size numbers, the k-th of which is wanted.
+	 * Every pass leaves the numbers equal to its pivots out of the next range
+	 */
+	private long select(FileChannel channel, long size, long k) throws IOException {
+		Pass pass = new Pass(this.sampleSize, (int) Math.min(this.capacity, size), this.chunkBytes,
+				this.byteOrder, this.random);
+		long lowKey = Long.MIN_VALUE;
+		long highKey = Long.MAX_VALUE;
+		long [] sample = null;
+		int sampled = 0;
+		// halves the pivot gap every time a pass gathers the whole range
+		int gapShrink = 1;
+		this.passes = 0;
+		while (true) {
+			long lowPivot = lowKey;
+			long highPivot = highKey;
+			if (sample != null && size > this.capacity) {
+				Arrays.sort(sample, 0, sampled);
+				int target = (int) Math.min(sampled - 1, (double) (k - 1) / size * sampled);
+				// the numbers between the pivots are expected to fill half the capacity
+				int gap = (int) (sampled * (double) this.capacity / (4.0 * size)) / gapShrink;
+				if (target - gap >= 0)
+					lowPivot = sample[target - gap];
+				if (target + gap < sampled)
+					highPivot = sample[target + gap];
+			}
+
+			pass.run(channel, lowKey, highKey, lowPivot, highPivot);
+			this.passes++;
+			if (k <= pass.below) {
+				highKey = lowPivot - 1;
+				size = pass.below;
+				sample = pass.belowSample.keys;
+				sampled = pass.belowSample.size;
+				gapShrink = 1;
+				continue;
+			}
+			k -= pass.below;
+			// a run of numbers equal to a pivot is settled by its count, however long it is
+			if (k <= pass.lowEqual)
+				return lowPivot;
+			k -= pass.lowEqual;
+			if (k <= pass.between) {
+				if (pass.between <= this.capacity)
+					return this.quickSelect.select(pass.gathered, 0, (int) pass.between, (int) k - 1);
+				gapShrink = sample != null && pass.between == size ? 2 * gapShrink : 1;
+				lowKey = lowPivot + 1;
+				highKey = highPivot - 1;
+				size = pass.between;
+				sample = pass.betweenSample.keys;
+				sampled = pass.betweenSample.size;
+			} else if (k <= pass.between + pass.highEqual) {
+				return highPivot;
+			} else {
+				k -= pass.between + pass.highEqual;
+				lowKey = highPivot + 1;
+				size = pass.above;
+				sample = pass.aboveSample.keys;
+				sampled = pass.aboveSample.size;
+				gapShrink = 1;
+			}
+		}
+	}
+
+	/**
+	 * One read of the file, splitting the numbers of a range at two pivots
+	 */
+	private static class Pass {
+		private final ByteBuffer bytes;
+		private final long [] chunk;
+		private final long [] gathered;
+		private final Reservoir belowSample;
+		private final Reservoir betweenSample;
+		private final Reservoir aboveSample;
+		private long below;
+		// numbers equal to a pivot are counted apart, neither gathered nor sampled
+		private long lowEqual;
+		private long between;
+		private long highEqual;
+		private long above;
+
+		Pass(int sampleSize, int capacity, int chunkBytes, ByteOrder byteOrder, Random random) {
+			this.bytes = ByteBuffer.allocateDirect(chunkBytes).order(byteOrder);
+			this.chunk = new long[chunkBytes / 8];
+			this.gathered = new long[capacity];
+			this.belowSample = new Reservoir(sampleSize, random);
+			this.betweenSample = new Reservoir(sampleSize, random);
+			this.aboveSample = new Reservoir(sampleSize, random);
+		}
+
+		/**
+		 * Counts and samples the numbers in [lowKey, highKey] below, strictly between and above
+		 * the pivots, gathering the numbers between while they fit, and counts the numbers equal
+		 * to either pivot. Equal pivots share lowEqual
+		 */
+		void run(FileChannel channel, long lowKey, long highKey, long lowPivot, long highPivot) throws IOException {
+			this.below = 0;
+			this.lowEqual = 0;
+			this.between = 0;
+			this.highEqual = 0;
+			this.above = 0;
+			this.belowSample.clear();
+			this.betweenSample.clear();
+			this.aboveSample.clear();
+			int capacity = this.gathered.length;
+			long [] chunk = this.chunk;
+			long size = channel.size();
+			for (long position = 0; position < size; ) {
+				this.bytes.clear();
+				int length = (int) Math.min(this.bytes.capacity(), size - position);
+				this.bytes.limit(length);
+				while (this.bytes.hasRemaining()) {
+					if (channel.read(this.bytes, position + this.bytes.position()) < 0)
+						throw new IOException("The file shrank while it was read");
+				}
+				position += length;
+				this.bytes.flip();
+				int count = length / 8;
+				this.bytes.asLongBuffer().get(chunk, 0, count);
+
+				for (int i = 0; i < count; i++) {
+					long key = toKey(chunk[i]);
+					if (key < lowKey || key > highKey)
+						continue;
+					if (key < lowPivot) {
+						this.below++;
+						this.belowSample.offer(key);
+					} else if (key > highPivot) {
+						this.above++;
+						this.aboveSample.offer(key);
+					} else if (key == lowPivot) {
+						this.lowEqual++;
+					} else if (key == highPivot) {
+						this.highEqual++;
+					} else {
+						if (this.between < capacity)
+							this.gathered[(int) this.between] = key;
+						this.between++;
+						this.betweenSample.offer(key);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A uniform random sample of a stream of unknown length, skipping ahead between
+	 * replacements (Li's algorithm L) so most numbers cost one comparison
+	 */
+	private static class Reservoir {
+		private final long [] keys;
+		private final Random random;
+		private int size;
+		private long seen;
+		private long next;
+		private double weight;
+
+		Reservoir(int capacity, Random random) {
+			this.keys = new long[capacity];
+			this.random = random;
+		}
+
+		void clear() {
+			this.size = 0;
+			this.seen = 0;
+			this.weight = Math.exp(Math.log(this.random.nextDouble()) / this.keys.length);
+			this.next = this.keys.length + this.skip();
+		}
+
+		void offer(long key) {
+			if (this.size < this.keys.length) {
+				this.keys[this.size++] = key;
+			} else if (this.seen == this.next) {
+				this.keys[this.random.nextInt(this.keys.length)] = key;
+				this.weight *= Math.exp(Math.log(this.random.nextDouble()) / this.keys.length);
+				this.next += 1 + this.skip();
+			}
+			this.seen++;
+		}
+
+		private long skip() {
+			return (long) (Math.log(this.random.nextDouble()) / Math.log(1 - this.weight));
+		}
+	}
+
+	/**
+	 * @return a long whose signed order is the order of Double.compare
+	 */
+	static long toKey(long bits) {
+		if ((bits & Long.MAX_VALUE) > 0x7ff0000000000000L)
+			bits = 0x7ff8000000000000L;
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	static double toDouble(long key) {
+		return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String [] args) throws IOException {
+		int n = 10000000;
+		double [] values = new double[n];
+		Random random = new Random(42);
+		Path file = Files.createTempFile("quick-select", ".bin");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			for (int i = 0; i < n; i++) {
+				values[i] = Math.round(random.nextGaussian() * 1e6) / 100.0;
+				out.writeDouble(values[i]);
+			}
+		}
+
+		// a budget of 4 MB can hold 1 in 20 of the 80 MB of numbers
+		ExternalQuickSelect external = new ExternalQuickSelect(4 << 20, ByteOrder.BIG_ENDIAN);
+		QuickSelect quickSelect = new QuickSelect();
+		for (long k : new long [] {1, n / 100, n / 2, n - 1000, n}) {
+			double selected = external.quickSelect(file, k);
+			System.out.println("The " + k + "-th smallest of " + n + " numbers on disk ("
+					+ quickSelect.quickSelect(values.clone(), (int) k) + "): " + selected
+					+ " after " + external.getPasses() + " passes");
+		}
+
+		// most numbers are 0.0, with blocks of -0.0, NaN and a few distinct numbers around them.
+		// The order statistics inside and at the edges of the blocks are settled by counting the
+		// numbers equal to the pivots, in no more than three passes
+		int m = 4000000;
+		double [] duplicates = new double[m];
+		for (int i = 0; i < m; i++) {
+			int kind = random.nextInt(100);
+			duplicates[i] = kind < 60 ? 0.0 : kind < 75 ? -0.0 : kind < 80 ? Double.NaN
+					: Math.round(random.nextGaussian() * 1e6) / 100.0;
+		}
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			for (double value : duplicates) {
+				out.writeDouble(value);
+			}
+		}
+		Arrays.sort(duplicates);
+		int failures = 0;
+		int maxPasses = 0;
+		for (long k = 1; k <= m; k += m / 50 + 1) {
+			for (long at : new long [] {k, m - k + 1}) {
+				double selected = external.quickSelect(file, at);
+				maxPasses = Math.max(maxPasses, external.getPasses());
+				if (Double.compare(selected, duplicates[(int) at - 1]) != 0 || external.getPasses() > 3)
+					failures++;
+			}
+		}
+		System.out.println("Selections among " + m + " mostly equal numbers which were wrong or took more "
+				+ "than 3 passes (0): " + failures + ", at most " + maxPasses + " passes");
+		Files.delete(file);
+	}
+}
@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * Selects order statistics of large lists of real numbers on all cores of a ForkJoinPool.
+ * Every round draws a random sample, takes from it two pivots which very likely bracket the
+ * wanted order statistic (as Floyd and Rivest do), counts in parallel how many numbers fall
+ * below, between and above them, and copies in parallel only the part holding the order
+ * statistic. That part is usually a tiny fraction of the list, so two passes over the numbers
+ * are typical. Lists shorter than a cutoff are finished by the sequential QuickSelect.
+ * Unlike QuickSelect, the numbers passed in are never reordered.
+ * Numbers are ordered as Double.compare orders them, in the rounds and in the sequential
+ * finish alike: -0.0 before 0.0, and NaN after everything.
+ * @author maxwellaladago
+ *
+ */
+public class ParallelQuickSelect {
+	/**
+	 * Lists at most this long are selected sequentially
+	 */
+	private static final int SEQUENTIAL_CUTOFF = 1 << 17;
+	/**
+	 * The smallest number of values a single task counts or copies
+	 */
+	private static final int MIN_CHUNK_SIZE = 1 << 15;
+
+	private final ForkJoinPool pool;
+	private final QuickSelect quickSelect;
+
+	public ParallelQuickSelect() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool the pool whose threads do the counting and copying
+	 */
+	public ParallelQuickSelect(ForkJoinPool pool) {
+		this.pool = pool;
+		this.quickSelect = new QuickSelect();
+	}
+
+	/**
+	 * Runs a job for every chunk index in a range, splitting the range in halves until single
+	 * chunks are left
+	 */
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int fromChunk;
+		private final int toChunk;
+		private final IntConsumer job;
+
+		ChunkTask(int fromChunk, int toChunk, IntConsumer job) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.job = job;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.toChunk - this.fromChunk == 1) {
+				this.job.accept(this.fromChunk);
+				return;
+			}
+			int mid = (this.fromChunk + this.toChunk) >>> 1;
+			invokeAll(new ChunkTask(this.fromChunk, mid, this.job), new ChunkTask(mid, this.toChunk, this.job));
+		}
+	}
+
+	/**
+	 * Selects an order statistic using all threads of the pool. The values are left unchanged.
+	 * @param values a list of real numbers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException
+	 */
+	public double quickSelect(double [] values, int k) throws RuntimeException {
+		if (k <= 0)
+			throw new RuntimeException("Error: k = " + k + "? 0 or negative order "
+					+ "statistic  doesn't make sense. Try again");
+		else if ( k >  values.length)
+			throw new RuntimeException("Error: " + k + "-th order statistic  doesn't make sense "
+					+ "for a list of size " + values.length);
+
+		return this.select(values, k - 1);
+	}
+
+	/**
+	 * @param values the real numbers to select from. Not changed
+	 * @param index the 0-based index the wanted number would have if the values were sorted
+	 * @return the number which belongs at the index
+	 */
+	double select(double [] values, int index) {
+		double [] candidates = values;
+		int size = values.length;
+		while (size > SEQUENTIAL_CUTOFF) {
+			int sampleSize = (int) Math.min(size / 4, Math.max(1024, Math.pow(size, 2.0 / 3)));
+			double [] sample = new double[sampleSize];
+			for (int i = 0; i < sampleSize; i++) {
+				sample[i] = candidates[ThreadLocalRandom.current().nextInt(size)];
+			}
+			Arrays.sort(sample);
+			// the ranks around where the order statistic should be in the sample, a few standard
+			// deviations either side
+			int expectedRank = (int) ((long) index * sampleSize / size);
+			int gap = (int) Math.sqrt(sampleSize * Math.log(size)) + 1;
+			double low = sample[Math.max(0, expectedRank - gap)];
+			double high = sample[Math.min(sampleSize - 1, expectedRank + gap)];
+
+			int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (4 * this.pool.getParallelism()) + 1);
+			int chunks = (size + chunkSize - 1) / chunkSize;
+			int [] below = new int[chunks];
+			int [] above = new int[chunks];
+			final double [] counted = candidates;
+			final int countedSize = size;
+			this.pool.invoke(new ChunkTask(0, chunks, chunk -> {
+				int end = Math.min(countedSize, (chunk + 1) * chunkSize);
+				int numBelow = 0;
+				int numAbove = 0;
+				for (int i = chunk * chunkSize; i < end; i++) {
+					int side = side(counted[i], low, high);
+					if (side < 0)
+						numBelow++;
+					else if (side > 0)
+						numAbove++;
+				}
+				below[chunk] = numBelow;
+				above[chunk] = numAbove;
+			}));
+
+			int numBelow = 0;
+			int numAbove = 0;
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				numBelow += below[chunk];
+				numAbove += above[chunk];
+			}
+
+			// keep only the part which holds the order statistic
+			int [] kept;
+			int part;
+			if (index < numBelow) {
+				kept = below;
+				part = -1;
+			} else if (index >= size - numAbove) {
+				kept = above;
+				part = 1;
+				index -= size - numAbove;
+			} else {
+				if (Double.compare(low, high) == 0)
+					return low;
+				kept = new int[chunks];
+				for (int chunk = 0; chunk < chunks; chunk++) {
+					kept[chunk] = Math.min(countedSize, (chunk + 1) * chunkSize) - chunk * chunkSize
+							- below[chunk] - above[chunk];
+				}
+				part = 0;
+				index -= numBelow;
+			}
+			int [] offsets = new int[chunks];
+			int keptSize = 0;
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				offsets[chunk] = keptSize;
+				keptSize += kept[chunk];
+			}
+
+			double [] gathered = new double[keptSize];
+			this.pool.invoke(new ChunkTask(0, chunks, chunk -> {
+				int end = Math.min(countedSize, (chunk + 1) * chunkSize);
+				int next = offsets[chunk];
+				for (int i = chunk * chunkSize; i < end; i++) {
+					if (side(counted[i], low, high) == part)
+						gathered[next++] = counted[i];
+				}
+			}));
+			candidates = gathered;
+
+			// an unlucky sample can leave most of the numbers. Rather than sampling again,
+			// the sequential selection finishes in linear time
+			if (keptSize > size / 2) {
+				size = keptSize;
+				break;
+			}
+			size = keptSize;
+		}
+
+		if (candidates == values)
+			candidates = Arrays.copyOf(values, size);
+		return this.quickSelect.select(candidates, 0, size, index);
+	}
+
+	/**
+	 * Both passes of a round must put every number on the same side, or a number counted would
+	 * not be gathered. Numbers are ordered as Double.compare orders them, so NaN lies above
+	 * everything and -0.0 below 0.0
+	 * @return -1 for a number below low, 1 for one above high and 0 for one between them
+	 */
+	private static int side(double value, double low, double high) {
+		if (Double.compare(value, low) < 0)
+			return -1;
+		return Double.compare(value, high) > 0 ? 1 : 0;
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		ParallelQuickSelect parallelQuickSelect = new ParallelQuickSelect();
+		double [] values = {5, 2, 6, 3, 1, 7, 4};
+		System.out.println(parallelQuickSelect.quickSelect(values, 6));
+		System.out.println("The values are unchanged: " + Arrays.toString(values));
+
+		int n = 10000000;
+		double [] random = new double[n];
+		for (int i = 0; i < n; i++) {
+			random[i] = ThreadLocalRandom.current().nextDouble();
+		}
+		double [] sorted = random.clone();
+		Arrays.sort(sorted);
+		System.out.println("The median of " + n + " random numbers is " + sorted[n / 2 - 1] + ": "
+				+ parallelQuickSelect.quickSelect(random, n / 2));
+
+		// one number in a hundred is NaN, which both passes must put above everything
+		for (int i = 0; i < n; i += 100) {
+			random[i] = Double.NaN;
+		}
+		sorted = random.clone();
+		Arrays.sort(sorted);
+		System.out.println("The median with NaNs mixed in is " + sorted[n / 2 - 1] + ": "
+				+ parallelQuickSelect.quickSelect(random, n / 2));
+		// ranks next to the NaNs, which the rounds and the sequential finish must order alike
+		int numbers = n - n / 100;
+		for (int k : new int [] {numbers - 5, numbers, numbers + 1, n}) {
+			System.out.println("The " + k + "-th smallest with NaNs mixed in is " + sorted[k - 1] + ": "
+					+ parallelQuickSelect.quickSelect(random, k));
+		}
+	}
+}
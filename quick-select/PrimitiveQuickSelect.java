@@ -0,0 +1,406 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * QuickSelect for lists of ints, longs and floats, so they don't have to be converted to doubles 
+ * (longs above 2^53 would lose precision) or copied. Every type has its own copy of the 
+ * introselect loop of QuickSelect, the way java.util.Arrays has a sort per primitive type, 
+ * because a shared generic version would box every number. 
+ * @author maxwellaladago
+ *
+ */
+public class PrimitiveQuickSelect {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	private static final int NINTHER_THRESHOLD = 40;
+	
+	/**
+	 * @throws RuntimeException if there is no k-th order statistic in a list of the given size
+	 */
+	static void checkOrderStatistic(int k, int size) throws RuntimeException {
+		if (k <= 0) 
+			throw new RuntimeException("Error: k = " + k + "? 0 or negative order "
+					+ "statistic  doesn't make sense. Try again");
+		else if (k > size) 
+			throw new RuntimeException("Error: " + k + "-th order statistic  doesn't make sense "
+					+ "for a list of size " + size);
+	}
+	
+	/**
+	 * Selects an order statistic of a list of integers. The values are reordered in place. 
+	 * @param values a list of integers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException 
+	 */
+	public int quickSelect(int [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		return this.select(values, 0, values.length, k - 1);
+	}
+	/**
+	 * The introselect loop of QuickSelect.select for integers
+	 */
+	int select(int [] values, int lowerIndex, int upperIndex, int index) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+		
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			int pivot = medianOfMedians ? this.medianOfMedians(values, lowerIndex, upperIndex)
+					: this.samplePivot(values, lowerIndex, upperIndex);
+			this.threeWayPartition(values, lowerIndex, upperIndex, pivot, bounds);
+			if (index < bounds[0]) 
+				upperIndex = bounds[0];
+			else if (index >= bounds[1]) 
+				lowerIndex = bounds[1];
+			else 
+				return values[index];
+			
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(values, lowerIndex, upperIndex);
+		return values[index];
+	}
+	private void threeWayPartition(int [] values, int lowerIndex, int upperIndex, int pivot, int [] bounds) {
+		int lt = lowerIndex;
+		int i = lowerIndex;
+		int gt = upperIndex - 1;
+		while (i <= gt) {
+			if (values[i] < pivot)
+				this.swap(values, lt++, i++);
+			else if (values[i] > pivot)
+				this.swap(values, i, gt--);
+			else
+				i++;
+		}
+		bounds[0] = lt;
+		bounds[1] = gt + 1;
+	}
+	private void swap(int [] values, int i, int j) {
+		int temp = values[i];
+		values[i] = values[j];
+		values[j] = temp;
+	}
+	private void insertionSort(int [] values, int lowerIndex, int upperIndex) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			int value = values[i];
+			int j = i - 1;
+			while (j >= lowerIndex && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+	private int medianOf3(int [] values, int i, int j, int l) {
+		int a = values[i], b = values[j], c = values[l];
+		if (a < b) 
+			return b < c ? b : (a < c ? c : a);
+		return a < c ? a : (b < c ? c : b);
+	}
+	int samplePivot(int [] values, int lowerIndex, int upperIndex) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD) 
+			return this.medianOf3(values, lowerIndex, mid, last);
+		
+		int step = size / 8;
+		int first = this.medianOf3(values, lowerIndex, lowerIndex + step, lowerIndex + 2 * step);
+		int middle = this.medianOf3(values, mid - step, mid, mid + step);
+		int end = this.medianOf3(values, last - 2 * step, last - step, last);
+		if (first < middle) 
+			return middle < end ? middle : (first < end ? end : first);
+		return first < end ? first : (middle < end ? end : middle);
+	}
+	private int medianOfMedians(int [] values, int lowerIndex, int upperIndex) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(values, group, groupEnd);
+			this.swap(values, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.select(values, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2);
+	}
+	
+	/**
+	 * Selects an order statistic of a list of long integers. The values are reordered in place. 
+	 * @param values a list of long integers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException 
+	 */
+	public long quickSelect(long [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		return this.select(values, 0, values.length, k - 1);
+	}
+	/**
+	 * The introselect loop of QuickSelect.select for long integers
+	 */
+	long select(long [] values, int lowerIndex, int upperIndex, int index) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+		
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			long pivot = medianOfMedians ? this.medianOfMedians(values, lowerIndex, upperIndex)
+					: this.samplePivot(values, lowerIndex, upperIndex);
+			this.threeWayPartition(values, lowerIndex, upperIndex, pivot, bounds);
+			if (index < bounds[0]) 
+				upperIndex = bounds[0];
+			else if (index >= bounds[1]) 
+				lowerIndex = bounds[1];
+			else 
+				return values[index];
+			
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(values, lowerIndex, upperIndex);
+		return values[index];
+	}
+	private void threeWayPartition(long [] values, int lowerIndex, int upperIndex, long pivot, int [] bounds) {
+		int lt = lowerIndex;
+		int i = lowerIndex;
+		int gt = upperIndex - 1;
+		while (i <= gt) {
+			if (values[i] < pivot)
+				this.swap(values, lt++, i++);
+			else if (values[i] > pivot)
+				this.swap(values, i, gt--);
+			else
+				i++;
+		}
+		bounds[0] = lt;
+		bounds[1] = gt + 1;
+	}
+	private void swap(long [] values, int i, int j) {
+		long temp = values[i];
+		values[i] = values[j];
+		values[j] = temp;
+	}
+	private void insertionSort(long [] values, int lowerIndex, int upperIndex) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			long value = values[i];
+			int j = i - 1;
+			while (j >= lowerIndex && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+	private long medianOf3(long [] values, int i, int j, int l) {
+		long a = values[i], b = values[j], c = values[l];
+		if (a < b) 
+			return b < c ? b : (a < c ? c : a);
+		return a < c ? a : (b < c ? c : b);
+	}
+	long samplePivot(long [] values, int lowerIndex, int upperIndex) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD) 
+			return this.medianOf3(values, lowerIndex, mid, last);
+		
+		int step = size / 8;
+		long first = this.medianOf3(values, lowerIndex, lowerIndex + step, lowerIndex + 2 * step);
+		long middle = this.medianOf3(values, mid - step, mid, mid + step);
+		long end = this.medianOf3(values, last - 2 * step, last - step, last);
+		if (first < middle) 
+			return middle < end ? middle : (first < end ? end : first);
+		return first < end ? first : (middle < end ? end : middle);
+	}
+	private long medianOfMedians(long [] values, int lowerIndex, int upperIndex) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(values, group, groupEnd);
+			this.swap(values, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.select(values, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2);
+	}
+	
+	/**
+	 * Selects an order statistic of a list of floats. The values are reordered in place. Floats 
+	 * are ordered as Float.compare orders them, like argSelect does: -0.0f before 0.0f, and NaN 
+	 * after everything. 
+	 * @param values a list of floats from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException 
+	 */
+	public float quickSelect(float [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		return this.select(values, 0, values.length, k - 1);
+	}
+	/**
+	 * QuickSelect.select for floats: NaNs are moved to the end and -0.0f replaced by 0.0f before 
+	 * the selection, and the leftmost zeros turned back into -0.0f after it
+	 */
+	float select(float [] values, int lowerIndex, int upperIndex, int index) {
+		int end = upperIndex;
+		int negativeZeros = 0;
+		for (int i = lowerIndex; i < end; ) {
+			float value = values[i];
+			if (value != value) {
+				values[i] = values[--end];
+				values[end] = value;
+				continue;
+			}
+			if (value == 0 && Float.floatToRawIntBits(value) != 0) {
+				values[i] = 0.0f;
+				negativeZeros++;
+			}
+			i++;
+		}
+		if (index < end) 
+			this.introSelect(values, lowerIndex, end, index);
+		for (int i = lowerIndex; negativeZeros > 0; i++) {
+			if (values[i] == 0) {
+				values[i] = -0.0f;
+				negativeZeros--;
+			}
+		}
+		return values[index];
+	}
+	/**
+	 * The introselect loop of QuickSelect for floats which are neither NaN nor -0.0f
+	 */
+	private float introSelect(float [] values, int lowerIndex, int upperIndex, int index) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+		
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			float pivot = medianOfMedians ? this.medianOfMedians(values, lowerIndex, upperIndex)
+					: this.samplePivot(values, lowerIndex, upperIndex);
+			this.threeWayPartition(values, lowerIndex, upperIndex, pivot, bounds);
+			if (index < bounds[0]) 
+				upperIndex = bounds[0];
+			else if (index >= bounds[1]) 
+				lowerIndex = bounds[1];
+			else 
+				return values[index];
+			
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(values, lowerIndex, upperIndex);
+		return values[index];
+	}
+	private void threeWayPartition(float [] values, int lowerIndex, int upperIndex, float pivot, int [] bounds) {
+		int lt = lowerIndex;
+		int i = lowerIndex;
+		int gt = upperIndex - 1;
+		while (i <= gt) {
+			if (values[i] < pivot)
+				this.swap(values, lt++, i++);
+			else if (values[i] > pivot)
+				this.swap(values, i, gt--);
+			else
+				i++;
+		}
+		bounds[0] = lt;
+		bounds[1] = gt + 1;
+	}
+	private void swap(float [] values, int i, int j) {
+		float temp = values[i];
+		values[i] = values[j];
+		values[j] = temp;
+	}
+	private void insertionSort(float [] values, int lowerIndex, int upperIndex) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			float value = values[i];
+			int j = i - 1;
+			while (j >= lowerIndex && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+	private float medianOf3(float [] values, int i, int j, int l) {
+		float a = values[i], b = values[j], c = values[l];
+		if (a < b) 
+			return b < c ? b : (a < c ? c : a);
+		return a < c ? a : (b < c ? c : b);
+	}
+	private float samplePivot(float [] values, int lowerIndex, int upperIndex) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD) 
+			return this.medianOf3(values, lowerIndex, mid, last);
+		
+		int step = size / 8;
+		float first = this.medianOf3(values, lowerIndex, lowerIndex + step, lowerIndex + 2 * step);
+		float middle = this.medianOf3(values, mid - step, mid, mid + step);
+		float end = this.medianOf3(values, last - 2 * step, last - step, last);
+		if (first < middle) 
+			return middle < end ? middle : (first < end ? end : first);
+		return first < end ? first : (middle < end ? end : middle);
+	}
+	private float medianOfMedians(float [] values, int lowerIndex, int upperIndex) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(values, group, groupEnd);
+			this.swap(values, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.introSelect(values, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2);
+	}
+	
+	/**
+	 * A small test program. 
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		PrimitiveQuickSelect quickSelect = new PrimitiveQuickSelect();
+		System.out.println("The 6-th smallest int (6): " 
+				+ quickSelect.quickSelect(new int [] {5, 2, 6, 3, 1, 7, 4}, 6));
+		long big = (1L << 60) + 1;
+		System.out.println("The largest long (" + big + "): " 
+				+ quickSelect.quickSelect(new long [] {big - 1, big, big - 2}, 3));
+		System.out.println("The median float (2.5): " 
+				+ quickSelect.quickSelect(new float [] {3.5f, 1.5f, 2.5f}, 2));
+		
+		int n = 10000000;
+		int [] sorted = new int[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = i % 1000;
+		}
+		System.out.println("The median of 0 to 999 repeated (499): " + quickSelect.quickSelect(sorted, n / 2));
+		
+		// NaN, -0.0f and 0.0f mixed in are ordered as Float.compare orders them
+		Random random = new Random(42);
+		float [] special = {Float.NaN, -0.0f, 0.0f, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY};
+		int mismatches = 0;
+		for (int test = 0; test < 3000; test++) {
+			float [] mixed = new float[1 + random.nextInt(test < 2000 ? 100 : 5000)];
+			for (int i = 0; i < mixed.length; i++) {
+				mixed[i] = random.nextInt(3) == 0 ? special[random.nextInt(special.length)] 
+						: random.nextInt(21) - 10;
+			}
+			float [] expected = mixed.clone();
+			Arrays.sort(expected);
+			int k = 1 + random.nextInt(mixed.length);
+			if (Float.compare(quickSelect.quickSelect(mixed, k), expected[k - 1]) != 0) 
+				mismatches++;
+		}
+		System.out.println("Float selections among NaN, -0.0f and 0.0f differing from Arrays.sort (0): " 
+				+ mismatches);
+	}
+}
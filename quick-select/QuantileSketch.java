@@ -0,0 +1,383 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate quantiles of an unbounded stream of real numbers in a fixed amount of memory,
+ * using a KLL sketch (Karnin, Lang and Liberty). Numbers are kept in levels of compactors:
+ * when a level is full it is sorted and every other number, starting at a random one, moves up
+ * a level where it stands for twice as many numbers. With accuracy parameter k the sketch
+ * keeps O(k) numbers and the rank of a returned quantile is off by about 1.65 / k of the
+ * stream size (1.65% for the default k = 200) with high probability.
+ *
+ * Until the stream outgrows a buffer of exactLimit numbers nothing is compacted, and
+ * quantiles are exact, selected from a copy of the buffer by QuickSelect.
+ *
+ * Sketches of separate streams can be merged, e.g. one per thread or node; the result is as
+ * accurate as a sketch of the combined stream. A sketch is not thread safe.
+ * @author maxwellaladago
+ *
+ */
+public class QuantileSketch {
+	public static final int DEFAULT_K = 200;
+	/**
+	 * The capacity of a level shrinks by this factor for every level below the top
+	 */
+	private static final double CAPACITY_DECAY = 2.0 / 3;
+	private static final int MIN_LEVEL_CAPACITY = 2;
+
+	private final int k;
+	private final int exactLimit;
+	private final QuickSelect quickSelect;
+	private final Random random;
+	private long count;
+	private double min;
+	private double max;
+	// the numbers while the sketch is exact, null after
+	private double [] buffer;
+	// the numbers of level h stand for 2^h numbers each
+	private double [][] levels;
+	private int [] levelSizes;
+	private int numLevels;
+	// how many numbers the levels hold, and may hold together
+	private int retained;
+	private int totalCapacity;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * @param k the accuracy parameter, at least 8. Memory grows and the error shrinks in
+	 * proportion to it
+	 */
+	public QuantileSketch(int k) {
+		this(k, 4 * k);
+	}
+
+	/**
+	 * @param k the accuracy parameter, at least 8
+	 * @param exactLimit up to how many numbers quantiles are exact
+	 */
+	public QuantileSketch(int k, int exactLimit) {
+		if (k < 8)
+			throw new RuntimeException("Error: k = " + k + " is too small for a sketch. Try at least 8");
+		if (exactLimit < 0)
+			throw new RuntimeException("Error: can't keep " + exactLimit + " numbers exactly");
+		this.k = k;
+		this.exactLimit = exactLimit;
+		this.quickSelect = new QuickSelect();
+		this.random = new Random();
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+		this.buffer = new double[Math.min(exactLimit, 16)];
+	}
+
+	/**
+	 * Makes a sketch whose rank error is at most about epsilon
+	 * @param epsilon the wanted normalized rank error, e.g. 0.01 for 1%
+	 * @return an empty sketch
+	 */
+	public static QuantileSketch withError(double epsilon) {
+		if (!(epsilon > 0 && epsilon < 1))
+			throw new RuntimeException("Error: a rank error of " + epsilon + " doesn't make sense");
+		return new QuantileSketch(Math.max(8, (int) Math.ceil(1.65 / epsilon)));
+	}
+
+	/**
+	 * @return the fraction of the stream size by which the rank of a quantile may be off, 0
+	 * while the sketch is exact
+	 */
+	public double getNormalizedRankError() {
+		return this.isExact() ? 0 : 1.65 / this.k;
+	}
+
+	/**
+	 * @return true while quantiles are computed from all the numbers
+	 */
+	public boolean isExact() {
+		return this.buffer != null;
+	}
+
+	/**
+	 * @return how many numbers were added, including those of merged sketches
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Adds a number of the stream in amortized O(1). NaN is ignored
+	 * @param value the number
+	 */
+	public void add(double value) {
+		if (Double.isNaN(value))
+			return;
+		this.updateMinMax(value, value);
+		this.count++;
+		if (this.buffer != null) {
+			if (this.count <= this.exactLimit) {
+				if (this.count > this.buffer.length)
+					this.buffer = Arrays.copyOf(this.buffer, (int) Math.min(this.exactLimit, 2 * this.count));
+				this.buffer[(int) this.count - 1] = value;
+				return;
+			}
+			this.startCompacting();
+		}
+		this.append(0, value);
+		this.compress();
+	}
+
+	/**
+	 * Adds all numbers of another sketch to this one. The other sketch is not changed
+	 * @param other a sketch of another stream, made with the same k
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.k != this.k)
+			throw new RuntimeException("Error: can't merge a sketch with k = " + other.k
+					+ " into one with k = " + this.k);
+		if (other == this || other.count == 0)
+			return;
+		if (other.buffer != null) {
+			for (int i = 0; i < other.count; i++) {
+				this.add(other.buffer[i]);
+			}
+			return;
+		}
+
+		// the buffer is moved into the levels while the count still says how much it holds
+		if (this.buffer != null)
+			this.startCompacting();
+		this.updateMinMax(other.min, other.max);
+		this.count += other.count;
+		for (int h = 0; h < other.numLevels; h++) {
+			for (int i = 0; i < other.levelSizes[h]; i++) {
+				this.append(h, other.levels[h][i]);
+			}
+		}
+		this.compress();
+	}
+
+	/**
+	 * Estimates a quantile by the nearest rank, as QuickSelect.quantiles does
+	 * @param q the quantile wanted, between 0 and 1
+	 * @return the q-quantile of the numbers added
+	 */
+	public double quantile(double q) {
+		return this.quantiles(new double [] {q})[0];
+	}
+
+	/**
+	 * Estimates many quantiles at once, each by the nearest rank
+	 * @param qs the quantiles wanted, each between 0 and 1
+	 * @return the qs[i]-quantile at index i
+	 */
+	public double [] quantiles(double [] qs) {
+		if (this.count == 0)
+			throw new RuntimeException("Error: an empty stream has no quantiles");
+		if (this.buffer != null)
+			return this.quickSelect.quantiles(Arrays.copyOf(this.buffer, (int) this.count), qs);
+
+		// every retained number with the weight it stands for, sorted by number
+		int retained = this.retained;
+		double [] values = new double[retained];
+		long [] weights = new long[retained];
+		int next = 0;
+		for (int h = 0; h < this.numLevels; h++) {
+			Arrays.sort(this.levels[h], 0, this.levelSizes[h]);
+			next = this.mergeSorted(values, weights, next, this.levels[h], this.levelSizes[h], 1L << h);
+		}
+
+		double [] quantiles = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			if (!(qs[i] >= 0 && qs[i] <= 1))
+				throw new RuntimeException("Error: quantile " + qs[i] + " is not between 0 and 1");
+			long rank = Math.max(1, (long) Math.ceil(qs[i] * this.count));
+			if (rank == 1 && qs[i] == 0) {
+				quantiles[i] = this.min;
+				continue;
+			}
+			if (rank == this.count) {
+				quantiles[i] = this.max;
+				continue;
+			}
+			// compacting keeps the total weight equal to the count, so the rank is always
+			// reached; stopping at the last number is only a safeguard
+			long cumulative = 0;
+			int j = 0;
+			while (j < retained - 1 && (cumulative += weights[j]) < rank)
+				j++;
+			quantiles[i] = values[j];
+		}
+		return quantiles;
+	}
+
+	/**
+	 * Merges a sorted level into the sorted numbers gathered so far
+	 * @return the number of numbers gathered
+	 */
+	private int mergeSorted(double [] values, long [] weights, int size, double [] level, int levelSize, long weight) {
+		int i = size - 1;
+		int j = levelSize - 1;
+		int to = size + levelSize - 1;
+		while (j >= 0) {
+			if (i >= 0 && values[i] > level[j]) {
+				values[to] = values[i];
+				weights[to--] = weights[i--];
+			} else {
+				values[to] = level[j--];
+				weights[to--] = weight;
+			}
+		}
+		return size + levelSize;
+	}
+
+	private void updateMinMax(double low, double high) {
+		if (Double.isNaN(this.min) || low < this.min)
+			this.min = low;
+		if (Double.isNaN(this.max) || high > this.max)
+			this.max = high;
+	}
+
+	/**
+	 * Moves the buffered numbers into the bottom level. The count must not include numbers
+	 * beyond those in the buffer yet, other than the one add is about to append
+	 */
+	private void startCompacting() {
+		double [] buffered = this.buffer;
+		long bufferedCount = Math.min(this.count, this.exactLimit);
+		this.buffer = null;
+		this.levels = new double[1][];
+		this.levelSizes = new int[1];
+		this.numLevels = 0;
+		this.addLevel();
+		for (int i = 0; i < bufferedCount; i++) {
+			this.append(0, buffered[i]);
+		}
+		this.compress();
+	}
+
+	private void append(int level, double value) {
+		while (level >= this.numLevels)
+			this.addLevel();
+		if (this.levelSizes[level] == this.levels[level].length)
+			this.levels[level] = Arrays.copyOf(this.levels[level], 2 * this.levels[level].length);
+		this.levels[level][this.levelSizes[level]++] = value;
+		this.retained++;
+	}
+
+	private void addLevel() {
+		if (this.numLevels == this.levels.length) {
+			this.levels = Arrays.copyOf(this.levels, 2 * this.numLevels);
+			this.levelSizes = Arrays.copyOf(this.levelSizes, 2 * this.numLevels);
+		}
+		this.levels[this.numLevels] = new double[16];
+		this.numLevels++;
+		this.totalCapacity = 0;
+		for (int h = 0; h < this.numLevels; h++) {
+			this.totalCapacity += this.capacity(h);
+		}
+	}
+
+	/**
+	 * The top level holds up to k numbers, every level below 2/3 as many
+	 */
+	private int capacity(int level) {
+		int depth = this.numLevels - 1 - level;
+		return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(this.k * Math.pow(CAPACITY_DECAY, depth)));
+	}
+
+	/**
+	 * While the sketch holds more numbers than all levels together may, compacts the lowest 
+	 * level which is over its own capacity. Lower levels can run over for a while, which 
+	 * saves compacting them after almost every number
+	 */
+	private void compress() {
+		while (this.retained >= this.totalCapacity) {
+			int h = 0;
+			while (this.levelSizes[h] < this.capacity(h))
+				h++;
+			if (h + 1 == this.numLevels)
+				this.addLevel();
+			double [] level = this.levels[h];
+			int size = this.levelSizes[h];
+			Arrays.sort(level, 0, size);
+			// with an odd size the smallest number stays behind
+			int kept = size % 2;
+			int offset = this.random.nextBoolean() ? 1 : 0;
+			this.levelSizes[h] = kept;
+			this.retained -= size - kept;
+			for (int i = kept + offset; i < size; i += 2) {
+				this.append(h + 1, level[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return a sketch of the numbers from to to, in a random order
+	 */
+	private static QuantileSketch sketchOf(int from, int to) {
+		double [] values = new double[to - from + 1];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = from + i;
+		}
+		Random random = new Random(from);
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			double swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+		QuantileSketch sketch = new QuantileSketch();
+		for (double value : values) {
+			sketch.add(value);
+		}
+		return sketch;
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		double [] qs = {0.5, 0.9, 0.99, 0.999};
+		QuantileSketch small = new QuantileSketch();
+		for (int i = 1; i <= 100; i++) {
+			small.add(i);
+		}
+		System.out.println("Exact (true) p50, p90, p99 and p99.9 of 1 to 100 ([50.0, 90.0, 99.0, 100.0]): "
+				+ small.isExact() + " " + Arrays.toString(small.quantiles(qs)));
+
+		// four streams sketched apart and merged
+		int n = 10000000;
+		QuantileSketch [] sketches = new QuantileSketch[4];
+		for (int s = 0; s < sketches.length; s++) {
+			sketches[s] = new QuantileSketch();
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++) {
+			sketches[random.nextInt(sketches.length)].add(i + 1);
+		}
+		for (int s = 1; s < sketches.length; s++) {
+			sketches[0].merge(sketches[s]);
+		}
+		double [] estimates = sketches[0].quantiles(qs);
+		System.out.println("p50, p90, p99 and p99.9 of 1 to " + n + " within "
+				+ sketches[0].getNormalizedRankError() * n + " ranks of [5000000, 9000000, 9900000, 9990000]: "
+				+ Arrays.toString(estimates));
+
+		// merges between exact and compacted sketches of 1 to 100000 and 100001 to 100500, and
+		// of a large sketch of 1 to 1000000 into a small one of 1000001 to 1002000
+		QuantileSketch exactIntoCompacted = sketchOf(1, 100000);
+		exactIntoCompacted.merge(sketchOf(100001, 100500));
+		QuantileSketch compactedIntoExact = sketchOf(100001, 100500);
+		compactedIntoExact.merge(sketchOf(1, 100000));
+		QuantileSketch largeIntoSmall = sketchOf(1000001, 1002000);
+		largeIntoSmall.merge(sketchOf(1, 1000000));
+		for (QuantileSketch merged : new QuantileSketch [] {exactIntoCompacted, compactedIntoExact, largeIntoSmall}) {
+			long count = merged.getCount();
+			System.out.println("Merged " + count + " numbers, exact (false) " + merged.isExact()
+					+ ", p50 within " + merged.getNormalizedRankError() * count + " ranks of " + (count + 1) / 2
+					+ ": " + merged.quantile(0.5) + ", p100 (" + count + ".0) " + merged.quantile(1));
+		}
+	}
+}
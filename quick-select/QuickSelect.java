@@ -1,28 +1,51 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
 /**
- * 
+ * Numbers are ordered as Double.compare orders them, like Arrays.sort does: -0.0 before 0.0,
+ * and NaN after everything. The comparisons of the selection can't tell these apart, so NaNs
+ * are moved to the end of a range and -0.0 is counted and replaced by 0.0 first, and put back
+ * as the smallest zeros after.
  * @author maxwellaladago
  *
  */
 public class QuickSelect {
 	/**
-	 * Partitions a list of real numbers using Lumuto's partitioning algorithm. 
-	 * Note: the entire list is not considered for partitioning. Only a range of it is considered
-	 * The pivot is the first number in the partitioning range. 
+	 * Ranges at most this long are finished with an insertion sort
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	/**
+	 * Ranges at least this long take the pivot from nine samples instead of three
+	 */
+	private static final int NINTHER_THRESHOLD = 40;
+	
+	/**
+	 * Partitions a range of real numbers around a pivot value into three parts: the numbers 
+	 * less than the pivot, the numbers equal to it and the numbers greater than it (Dijkstra's 
+	 * three-way partitioning). Lists with many duplicates shrink as fast as lists without. 
 	 * @param values the real numbers to partition. 
 	 * @param lowerIndex the index from which to start partitioning
 	 * @param upperIndex the first index to the right of the startIndex which is not considered for 
 	 * partitioning
-	 * @return An integer i indicating the partition index. Must be greater than or lowerIndex and less than 
-	 * upper Index
+	 * @param pivot the value to partition around. Must be one of the values in the range
+	 * @param bounds receives the first index of the numbers equal to the pivot and the first index 
+	 * of the numbers greater than it
 	 */
-	private int lumotoPartition(double [] values, int lowerIndex, int upperIndex) {
+	private void threeWayPartition(double [] values, int lowerIndex, int upperIndex, double pivot, int [] bounds) {
+		int lt = lowerIndex;
 		int i = lowerIndex;
-		for (int j = lowerIndex + 1; j < upperIndex; j++) {
-			if (values[j] < values[lowerIndex])
-				this.swap(values, ++i, j);
+		int gt = upperIndex - 1;
+		while (i <= gt) {
+			if (values[i] < pivot)
+				this.swap(values, lt++, i++);
+			else if (values[i] > pivot)
+				this.swap(values, i, gt--);
+			else
+				i++;
 		}
-		this.swap(values, lowerIndex, i);
-		return i;
+		bounds[0] = lt;
+		bounds[1] = gt + 1;
 	}
 	/**
 	 * change the positions of two numbers in a list. 
@@ -36,29 +59,160 @@ public class QuickSelect {
 		values[j] = temp;
 	}
 	/**
-	 * Recursively selects the k-th order statistic from a list of real numbers. 
-	 * This implementation is directly based on on the quick select algorithm
-	 * @param values the real numbers from which to select the order-statistic  
-	 * @param lowerIndex the starting index to partition the list
-	 * @param upperIndex the index marking the end of the list considered for partitioning
-	 * @param k the oder statistic needed. eg. 4-th order statistic 
-	 * @return the k-th order statistic 
+	 * Sorts a small range of real numbers in place
 	 */
-	private double quickSelect(double [] values, int lowerIndex, int upperIndex, int k) {
-		int p = this.lumotoPartition(values, lowerIndex, upperIndex);
+	private void insertionSort(double [] values, int lowerIndex, int upperIndex) {
+		for (int i = lowerIndex + 1; i < upperIndex; i++) {
+			double value = values[i];
+			int j = i - 1;
+			while (j >= lowerIndex && values[j] > value) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = value;
+		}
+	}
+	/**
+	 * @return the median of the numbers at three indices
+	 */
+	private double medianOf3(double [] values, int i, int j, int l) {
+		double a = values[i], b = values[j], c = values[l];
+		if (a < b) 
+			return b < c ? b : (a < c ? c : a);
+		return a < c ? a : (b < c ? c : b);
+	}
+	/**
+	 * Picks a pivot by sampling: the median of the first, middle and last numbers for short 
+	 * ranges and Tukey's ninther, the median of three such medians, for longer ones. Sorted and 
+	 * reverse sorted ranges get their exact median. 
+	 * @return the pivot value
+	 */
+	double samplePivot(double [] values, int lowerIndex, int upperIndex) {
+		int last = upperIndex - 1;
+		int mid = (lowerIndex + last) >>> 1;
+		int size = upperIndex - lowerIndex;
+		if (size < NINTHER_THRESHOLD) 
+			return this.medianOf3(values, lowerIndex, mid, last);
 		
-		if (p == k - 1) {
-			return values[p];
-		}else if(p > k - 1) {
-			return this.quickSelect(values, lowerIndex, p, k);
-		}else {
-			return this.quickSelect(values, p + 1, upperIndex, k);
-		}	
+		int step = size / 8;
+		double first = this.medianOf3(values, lowerIndex, lowerIndex + step, lowerIndex + 2 * step);
+		double middle = this.medianOf3(values, mid - step, mid, mid + step);
+		double end = this.medianOf3(values, last - 2 * step, last - step, last);
+		if (first < middle) 
+			return middle < end ? middle : (first < end ? end : first);
+		return first < end ? first : (middle < end ? end : middle);
+	}
+	/**
+	 * Picks a pivot by the median of medians: the median of every group of five numbers is moved 
+	 * to the front of the range and the median of those is selected. At least 3/10 of the range 
+	 * is on either side of it, which is what bounds the worst case. 
+	 * @return the pivot value
+	 */
+	private double medianOfMedians(double [] values, int lowerIndex, int upperIndex) {
+		int numMedians = 0;
+		for (int group = lowerIndex; group < upperIndex; group += 5) {
+			int groupEnd = Math.min(group + 5, upperIndex);
+			this.insertionSort(values, group, groupEnd);
+			this.swap(values, lowerIndex + numMedians, (group + groupEnd - 1) >>> 1);
+			numMedians++;
+		}
+		return this.introSelect(values, lowerIndex, lowerIndex + numMedians, lowerIndex + numMedians / 2);
+	}
+	/**
+	 * Selects the number which would be at a given index if a range of real numbers were sorted, 
+	 * and leaves it there with no greater number before it and no smaller number after it. 
+	 * @param values the real numbers from which to select
+	 * @param lowerIndex the starting index of the range
+	 * @param upperIndex the index marking the end of the range
+	 * @param index the index of the wanted number, 0-based and within the range
+	 * @return the number which belongs at the index
+	 */
+	double select(double [] values, int lowerIndex, int upperIndex, int index) {
+		int [] counts = new int[2];
+		this.separateNaNs(values, lowerIndex, upperIndex, counts);
+		if (index < counts[0]) 
+			this.introSelect(values, lowerIndex, counts[0], index);
+		this.restoreNegativeZeros(values, lowerIndex, counts[1]);
+		return values[index];
+	}
+	/**
+	 * Moves the NaNs of a range to its end and replaces every -0.0 by 0.0, in one pass. 
+	 * @param counts receives the first index of the NaNs and the number of -0.0 replaced
+	 */
+	private void separateNaNs(double [] values, int lowerIndex, int upperIndex, int [] counts) {
+		int end = upperIndex;
+		int negativeZeros = 0;
+		for (int i = lowerIndex; i < end; ) {
+			double value = values[i];
+			if (value != value) {
+				values[i] = values[--end];
+				values[end] = value;
+				continue;
+			}
+			if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+				values[i] = 0.0;
+				negativeZeros++;
+			}
+			i++;
+		}
+		counts[0] = end;
+		counts[1] = negativeZeros;
+	}
+	/**
+	 * Turns the first zeros of a range back into -0.0. A selected number has no greater one 
+	 * before it and no smaller one after it, so the leftmost zeros are the smallest. 
+	 * @param negativeZeros how many -0.0 separateNaNs replaced
+	 */
+	private void restoreNegativeZeros(double [] values, int lowerIndex, int negativeZeros) {
+		for (int i = lowerIndex; negativeZeros > 0; i++) {
+			if (values[i] == 0) {
+				values[i] = -0.0;
+				negativeZeros--;
+			}
+		}
+	}
+	/**
+	 * Selects like select, among numbers which are neither NaN nor -0.0. 
+	 * This is introselect: quick select with sampled pivots and three-way partitioning, run in a 
+	 * loop instead of recursively. Should two partitions in a row fail to halve the range, the 
+	 * rest of the selection takes the median of medians as pivot, so the running time is O(n) 
+	 * in the worst case and not only on average. 
+	 * @param values the real numbers from which to select
+	 * @param lowerIndex the starting index of the range
+	 * @param upperIndex the index marking the end of the range
+	 * @param index the index of the wanted number, 0-based and within the range
+	 * @return the number which belongs at the index
+	 */
+	private double introSelect(double [] values, int lowerIndex, int upperIndex, int index) {
+		int [] bounds = new int[2];
+		boolean medianOfMedians = false;
+		int partitions = 0;
+		int sizeAtCheck = upperIndex - lowerIndex;
+		
+		while (upperIndex - lowerIndex > INSERTION_SORT_THRESHOLD) {
+			double pivot = medianOfMedians ? this.medianOfMedians(values, lowerIndex, upperIndex)
+					: this.samplePivot(values, lowerIndex, upperIndex);
+			this.threeWayPartition(values, lowerIndex, upperIndex, pivot, bounds);
+			if (index < bounds[0]) 
+				upperIndex = bounds[0];
+			else if (index >= bounds[1]) 
+				lowerIndex = bounds[1];
+			else 
+				return values[index];
+			
+			if (!medianOfMedians && ++partitions % 2 == 0) {
+				medianOfMedians = upperIndex - lowerIndex > sizeAtCheck / 2;
+				sizeAtCheck = upperIndex - lowerIndex;
+			}
+		}
+		this.insertionSort(values, lowerIndex, upperIndex);
+		return values[index];
 	}
 	
 	/**
 	 * Selects an order statistic using the quickslect algorithm. 
-	 * Quick select uses Lumoto's partitioning algorithm. 
+	 * The values are reordered in place. The selection runs in O(n) time even on sorted 
+	 * input or input with many duplicates, and uses no recursion beyond the median of medians. 
 	 * @param values a list of real numbers from which to select an order statistic
 	 * @param k the i-th order statistic
 	 * @return the k-th order statistic among the values
@@ -72,7 +226,125 @@ public class QuickSelect {
 			throw new RuntimeException("Error: " + k + "-th order statistic  doesn't make sense "
 					+ "for a list of size " + values.length);
 		
-		return this.quickSelect(values, 0, values.length, k);
+		return this.select(values, 0, values.length, k - 1);
+	}
+	
+	/**
+	 * Selects many order statistics at once. Only the parts of the list which hold a requested 
+	 * order statistic are partitioned further, so m order statistics cost about O(n log m) instead 
+	 * of m separate selections. The values are reordered in place; afterwards the k-th order 
+	 * statistic is at index k - 1 for every requested k. 
+	 * @param values a list of real numbers from which to select the order statistics
+	 * @param ks the order statistics wanted, in any order
+	 * @return the ks[i]-th order statistic at index i
+	 * @throws RuntimeException
+	 */
+	public double [] select(double [] values, int [] ks) throws RuntimeException {
+		int [] ranks = new int[ks.length];
+		for (int i = 0; i < ks.length; i++) {
+			if (ks[i] <= 0 || ks[i] > values.length) 
+				throw new RuntimeException("Error: " + ks[i] + "-th order statistic  doesn't make sense "
+						+ "for a list of size " + values.length);
+			ranks[i] = ks[i] - 1;
+		}
+		Arrays.sort(ranks);
+		int [] counts = new int[2];
+		this.separateNaNs(values, 0, values.length, counts);
+		// the ranks among the NaNs are in place already
+		int numRanks = 0;
+		while (numRanks < ranks.length && ranks[numRanks] < counts[0]) 
+			numRanks++;
+		this.multiSelect(values, counts[0], Arrays.copyOf(ranks, numRanks));
+		this.restoreNegativeZeros(values, 0, counts[1]);
+		
+		double [] orderStatistics = new double[ks.length];
+		for (int i = 0; i < ks.length; i++) {
+			orderStatistics[i] = values[ks[i] - 1];
+		}
+		return orderStatistics;
+	}
+	/**
+	 * Selects quantiles by the nearest rank: the q-quantile of n numbers is the 
+	 * ceil(q * n)-th order statistic, and the 0-quantile the smallest number. 
+	 * The values are reordered in place. 
+	 * @param values a list of real numbers from which to select the quantiles
+	 * @param qs the quantiles wanted, each between 0 and 1, e.g. 0.5, 0.9, 0.99
+	 * @return the qs[i]-quantile at index i
+	 * @throws RuntimeException
+	 */
+	public double [] quantiles(double [] values, double [] qs) throws RuntimeException {
+		if (values.length == 0) 
+			throw new RuntimeException("Error: an empty list has no quantiles");
+		int [] ks = new int[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			if (!(qs[i] >= 0 && qs[i] <= 1)) 
+				throw new RuntimeException("Error: quantile " + qs[i] + " is not between 0 and 1");
+			ks[i] = Math.max(1, (int) Math.ceil(qs[i] * values.length));
+		}
+		return this.select(values, ks);
+	}
+	/**
+	 * Moves the k smallest numbers to the front of the list in sorted order. The rest of the 
+	 * list is left in no particular order. 
+	 * @param values a list of real numbers
+	 * @param k how many of the smallest numbers to sort, from 0 to the size of the list
+	 * @throws RuntimeException
+	 */
+	public void partialSort(double [] values, int k) throws RuntimeException {
+		if (k < 0 || k > values.length) 
+			throw new RuntimeException("Error: can't sort the " + k + " smallest numbers "
+					+ "of a list of size " + values.length);
+		if (k == 0) 
+			return;
+		this.select(values, 0, values.length, k - 1);
+		Arrays.sort(values, 0, k - 1);
+	}
+	/**
+	 * Puts the numbers which belong at a set of indices in place. Segments are kept on a stack 
+	 * together with the indices they hold; a segment with a single index is handed to select. 
+	 * A partition which leaves a part larger than 3/4 of its segment makes that part take the 
+	 * median of medians as its next pivot, which keeps the worst case in check. 
+	 * @param values the real numbers, neither NaN nor -0.0 before the end
+	 * @param end the index marking the end of the numbers
+	 * @param ranks the 0-based indices, sorted and below the end
+	 */
+	private void multiSelect(double [] values, int end, int [] ranks) {
+		int [] bounds = new int[2];
+		// lower index, upper index, first rank, end of the ranks, 1 if the last split was bad
+		ArrayDeque<int []> segments = new ArrayDeque<>();
+		if (ranks.length > 0) 
+			segments.push(new int [] {0, end, 0, ranks.length, 0});
+		
+		while (!segments.isEmpty()) {
+			int [] segment = segments.pop();
+			int lowerIndex = segment[0], upperIndex = segment[1];
+			int firstRank = segment[2], endRank = segment[3];
+			if (ranks[firstRank] == ranks[endRank - 1]) {
+				this.introSelect(values, lowerIndex, upperIndex, ranks[firstRank]);
+				continue;
+			}
+			if (upperIndex - lowerIndex <= INSERTION_SORT_THRESHOLD) {
+				this.insertionSort(values, lowerIndex, upperIndex);
+				continue;
+			}
+			
+			double pivot = segment[4] == 1 ? this.medianOfMedians(values, lowerIndex, upperIndex)
+					: this.samplePivot(values, lowerIndex, upperIndex);
+			this.threeWayPartition(values, lowerIndex, upperIndex, pivot, bounds);
+			int size = upperIndex - lowerIndex;
+			
+			int rank = firstRank;
+			while (rank < endRank && ranks[rank] < bounds[0]) 
+				rank++;
+			if (rank > firstRank) 
+				segments.push(new int [] {lowerIndex, bounds[0], firstRank, rank, 
+						bounds[0] - lowerIndex > size / 4 * 3 ? 1 : 0});
+			while (rank < endRank && ranks[rank] < bounds[1]) 
+				rank++;
+			if (rank < endRank) 
+				segments.push(new int [] {bounds[1], upperIndex, rank, endRank, 
+						upperIndex - bounds[1] > size / 4 * 3 ? 1 : 0});
+		}
 	}
 	
 	/**
@@ -98,5 +370,58 @@ public class QuickSelect {
 		}catch (RuntimeException e) {
 			System.out.println(e.getMessage());
 		}
+		
+		// sorted input used to take quadratic time and overflow the stack
+		int n = 10000000;
+		double [] sorted = new double[n];
+		for (int i = 0; i < n; i++) {
+			sorted[i] = i;
+		}
+		long start = System.nanoTime();
+		System.out.println("The median of 0 to " + (n - 1) + " (" + (n / 2 - 1) + "): " 
+				+ quickSelect.quickSelect(sorted, n / 2) + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		
+		// lists made of few distinct numbers shrink through the three-way partition
+		double [] duplicates = new double[n];
+		for (int i = 0; i < n; i++) {
+			duplicates[i] = i % 3;
+		}
+		System.out.println("The " + (n / 2) + "-th order statistic of 0, 1, 2 repeated (1): " 
+				+ quickSelect.quickSelect(duplicates, n / 2));
+		
+		// many quantiles of the same list in one go
+		double [] latencies = new double[1000];
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[(i * 7) % latencies.length] = i + 1;
+		}
+		System.out.println("p50, p90, p99 and p99.9 of 1 to 1000 ([500.0, 900.0, 990.0, 999.0]): " 
+				+ Arrays.toString(quickSelect.quantiles(latencies, new double [] {0.5, 0.9, 0.99, 0.999})));
+		quickSelect.partialSort(latencies, 5);
+		System.out.println("The 5 smallest, sorted ([1.0, 2.0, 3.0, 4.0, 5.0]): " 
+				+ Arrays.toString(Arrays.copyOf(latencies, 5)));
+		
+		// NaN, -0.0 and 0.0 mixed in are ordered as Arrays.sort orders them
+		Random random = new Random(42);
+		double [] special = {Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+		int mismatches = 0;
+		for (int test = 0; test < 3000; test++) {
+			double [] mixed = new double[1 + random.nextInt(test < 2000 ? 100 : 5000)];
+			for (int i = 0; i < mixed.length; i++) {
+				mixed[i] = random.nextInt(3) == 0 ? special[random.nextInt(special.length)] 
+						: random.nextInt(21) - 10;
+			}
+			double [] expected = mixed.clone();
+			Arrays.sort(expected);
+			int k = 1 + random.nextInt(mixed.length);
+			int [] ks = {k, 1 + random.nextInt(mixed.length), mixed.length};
+			double [] many = quickSelect.select(mixed.clone(), ks);
+			if (Double.compare(quickSelect.quickSelect(mixed.clone(), k), expected[k - 1]) != 0) 
+				mismatches++;
+			for (int i = 0; i < ks.length; i++) {
+				if (Double.compare(many[i], expected[ks[i] - 1]) != 0) 
+					mismatches++;
+			}
+		}
+		System.out.println("Selections among NaN, -0.0 and 0.0 differing from Arrays.sort (0): " + mismatches);
 	}
 }
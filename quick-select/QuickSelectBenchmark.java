@@ -0,0 +1,60 @@
+import java.util.Random;
+
+/**
+ * Compares the sequential QuickSelect with ParallelQuickSelect on lists of random real numbers.
+ * Every size is first selected a few times to warm up the JIT, then the median is selected a
+ * few more times and the best time is reported. The sequential selection reorders its list,
+ * so it gets a fresh copy every round; copying isn't timed.
+ *
+ * Usage: java QuickSelectBenchmark [maxSize]
+ * @author maxwellaladago
+ *
+ */
+public class QuickSelectBenchmark {
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int DEFAULT_MAX_SIZE = 100000000;
+
+	// consumes results so the JIT can't remove the benchmarked calls
+	private static double blackHole;
+
+	public static void main(String [] args) {
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_SIZE;
+		QuickSelect quickSelect = new QuickSelect();
+		ParallelQuickSelect parallelQuickSelect = new ParallelQuickSelect();
+		Random random = new Random(42);
+
+		System.out.printf("%d threads%n", Runtime.getRuntime().availableProcessors());
+		System.out.printf("%12s %15s %15s %10s%n", "size", "sequential ms", "parallel ms", "speedup");
+		for (int size = 1000000; size <= maxSize; size *= 10) {
+			double [] values = new double[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = random.nextDouble();
+			}
+			double [] copy = new double[size];
+
+			long sequential = Long.MAX_VALUE;
+			long parallel = Long.MAX_VALUE;
+			for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+				System.arraycopy(values, 0, copy, 0, size);
+				long start = System.nanoTime();
+				blackHole += quickSelect.quickSelect(copy, size / 2);
+				long sequentialTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				blackHole += parallelQuickSelect.quickSelect(values, size / 2);
+				long parallelTime = System.nanoTime() - start;
+
+				if (round >= WARMUP_ROUNDS) {
+					sequential = Math.min(sequential, sequentialTime);
+					parallel = Math.min(parallel, parallelTime);
+				}
+			}
+			System.out.printf("%12d %15.1f %15.1f %10.2f%n", size, sequential / 1e6, parallel / 1e6,
+					(double) sequential / parallel);
+		}
+		if (blackHole == 42) {
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Order statistics of the last W numbers of a stream, e.g. a rolling median. Instead of
+ * copying the window and running QuickSelect on every new number, O(W) each, the window is
+ * kept in an order statistic tree: a treap whose nodes know the size of their subtrees. Adding
+ * a number, evicting the oldest one and selecting any k-th smallest all take O(log W) expected
+ * time. The nodes live in parallel arrays allocated once, so a long stream allocates nothing.
+ *
+ * Numbers are ordered as Double.compare orders them: -0.0 before 0.0, and NaN after everything.
+ *
+ * selectAll processes a whole series at once. Knowing every number in advance, it replaces
+ * each one by its rank in the sorted series and counts the window in a Fenwick tree over the
+ * ranks, which is faster than the treap by a constant factor.
+ * @author maxwellaladago
+ *
+ */
+public class SlidingWindowSelect {
+	private static final int NIL = 0;
+
+	private final int windowSize;
+	// the window in arrival order, as a ring
+	private final double [] window;
+	private int oldest;
+	private int size;
+
+	// the treap; node 0 is the empty tree. Equal numbers share a node
+	private final double [] keys;
+	private final int [] counts;
+	private final int [] subtreeSizes;
+	private final int [] priorities;
+	private final int [] lefts;
+	private final int [] rights;
+	// unused nodes, linked through lefts
+	private int free;
+	private int root;
+	private final Random random;
+
+	/**
+	 * @param windowSize how many of the latest numbers to keep, at least 1
+	 */
+	public SlidingWindowSelect(int windowSize) {
+		if (windowSize < 1)
+			throw new RuntimeException("Error: a window of " + windowSize + " numbers doesn't make sense");
+		this.windowSize = windowSize;
+		this.window = new double[windowSize];
+		this.keys = new double[windowSize + 1];
+		this.counts = new int[windowSize + 1];
+		this.subtreeSizes = new int[windowSize + 1];
+		this.priorities = new int[windowSize + 1];
+		this.lefts = new int[windowSize + 1];
+		this.rights = new int[windowSize + 1];
+		this.random = new Random();
+		this.clear();
+	}
+
+	/**
+	 * Empties the window
+	 */
+	public void clear() {
+		for (int node = 1; node < this.windowSize; node++) {
+			this.lefts[node] = node + 1;
+		}
+		this.lefts[this.windowSize] = NIL;
+		this.free = 1;
+		this.root = NIL;
+		this.oldest = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * @return how many numbers the window holds, at most the window size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Adds the latest number, evicting the oldest one if the window is full
+	 * @param value the number
+	 */
+	public void add(double value) {
+		if (this.size == this.windowSize) {
+			this.root = this.remove(this.root, this.window[this.oldest]);
+			this.window[this.oldest] = value;
+			this.oldest = (this.oldest + 1) % this.windowSize;
+		} else {
+			this.window[(this.oldest + this.size) % this.windowSize] = value;
+			this.size++;
+		}
+		this.root = this.insert(this.root, value);
+	}
+
+	/**
+	 * Evicts the oldest number of the window
+	 * @return the number evicted
+	 */
+	public double evict() {
+		if (this.size == 0)
+			throw new RuntimeException("Error: can't evict from an empty window");
+		double value = this.window[this.oldest];
+		this.root = this.remove(this.root, value);
+		this.oldest = (this.oldest + 1) % this.windowSize;
+		this.size--;
+		return value;
+	}
+
+	/**
+	 * Selects an order statistic of the window
+	 * @param k the i-th order statistic, from 1 to the size of the window
+	 * @return the k-th smallest number in the window
+	 * @throws RuntimeException
+	 */
+	public double select(int k) throws RuntimeException {
+		if (k < 1 || k > this.size)
+			throw new RuntimeException("Error: Can't find " + k + "-th order statistic of a window of "
+					+ this.size + " numbers");
+		int node = this.root;
+		while (true) {
+			int left = this.subtreeSizes[this.lefts[node]];
+			if (k <= left) {
+				node = this.lefts[node];
+			} else if (k <= left + this.counts[node]) {
+				return this.keys[node];
+			} else {
+				k -= left + this.counts[node];
+				node = this.rights[node];
+			}
+		}
+	}
+
+	/**
+	 * @return the median of the window by the nearest rank, the lower one of an even window
+	 */
+	public double median() {
+		return this.select((this.size + 1) / 2);
+	}
+
+	/**
+	 * Selects an order statistic of every window of a series
+	 * @param series the numbers, in order
+	 * @param windowSize the length of a window
+	 * @param k the i-th order statistic, from 1 to the window size
+	 * @return the k-th smallest number of series[i .. i + windowSize - 1] at index i, for every
+	 * full window
+	 * @throws RuntimeException
+	 */
+	public static double [] selectAll(double [] series, int windowSize, int k) throws RuntimeException {
+		if (windowSize < 1 || windowSize > series.length)
+			throw new RuntimeException("Error: a window of " + windowSize + " numbers doesn't fit a series of "
+					+ series.length);
+		if (k < 1 || k > windowSize)
+			throw new RuntimeException("Error: Can't find " + k + "-th order statistic of a window of "
+					+ windowSize + " numbers");
+
+		// the rank of every number; equal numbers get the rank of the first of them
+		int n = series.length;
+		double [] sorted = series.clone();
+		Arrays.sort(sorted);
+		int [] ranks = new int[n];
+		for (int i = 0; i < n; i++) {
+			ranks[i] = lowerBound(sorted, series[i]);
+		}
+
+		// tree[i] counts the window numbers with ranks in (i - lowbit(i), i], 1-based
+		int [] tree = new int[n + 1];
+		int highBit = Integer.highestOneBit(n);
+		double [] selected = new double[n - windowSize + 1];
+		for (int i = 0; i < n; i++) {
+			for (int j = ranks[i] + 1; j <= n; j += j & -j) {
+				tree[j]++;
+			}
+			if (i >= windowSize) {
+				for (int j = ranks[i - windowSize] + 1; j <= n; j += j & -j) {
+					tree[j]--;
+				}
+			}
+			if (i >= windowSize - 1) {
+				// descend to the largest position with fewer than k numbers at or below it
+				int position = 0;
+				int remaining = k;
+				for (int step = highBit; step > 0; step >>= 1) {
+					if (position + step <= n && tree[position + step] < remaining) {
+						position += step;
+						remaining -= tree[position];
+					}
+				}
+				selected[i - windowSize + 1] = sorted[position];
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the medians of every window of a series, as median does
+	 */
+	public static double [] medians(double [] series, int windowSize) {
+		return selectAll(series, windowSize, (windowSize + 1) / 2);
+	}
+
+	/**
+	 * @return the first index of a sorted list holding a number not ordered before the value
+	 */
+	private static int lowerBound(double [] sorted, double value) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Double.compare(sorted[mid], value) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private int insert(int node, double value) {
+		if (node == NIL) {
+			node = this.free;
+			this.free = this.lefts[node];
+			this.keys[node] = value;
+			this.counts[node] = 1;
+			this.subtreeSizes[node] = 1;
+			this.priorities[node] = this.random.nextInt();
+			this.lefts[node] = NIL;
+			this.rights[node] = NIL;
+			return node;
+		}
+		int order = Double.compare(value, this.keys[node]);
+		if (order == 0) {
+			this.counts[node]++;
+		} else if (order < 0) {
+			this.lefts[node] = this.insert(this.lefts[node], value);
+			if (this.priorities[this.lefts[node]] > this.priorities[node])
+				node = this.rotateRight(node);
+		} else {
+			this.rights[node] = this.insert(this.rights[node], value);
+			if (this.priorities[this.rights[node]] > this.priorities[node])
+				node = this.rotateLeft(node);
+		}
+		this.update(node);
+		return node;
+	}
+
+	/**
+	 * Removes one copy of a number which is in the tree
+	 */
+	private int remove(int node, double value) {
+		int order = Double.compare(value, this.keys[node]);
+		if (order < 0) {
+			this.lefts[node] = this.remove(this.lefts[node], value);
+		} else if (order > 0) {
+			this.rights[node] = this.remove(this.rights[node], value);
+		} else if (this.counts[node] > 1) {
+			this.counts[node]--;
+		} else if (this.lefts[node] == NIL || this.rights[node] == NIL) {
+			int child = this.lefts[node] == NIL ? this.rights[node] : this.lefts[node];
+			this.lefts[node] = this.free;
+			this.free = node;
+			return child;
+		} else {
+			// rotate the node down below its child of higher priority, then remove it there
+			if (this.priorities[this.lefts[node]] > this.priorities[this.rights[node]]) {
+				node = this.rotateRight(node);
+				this.rights[node] = this.remove(this.rights[node], value);
+			} else {
+				node = this.rotateLeft(node);
+				this.lefts[node] = this.remove(this.lefts[node], value);
+			}
+		}
+		this.update(node);
+		return node;
+	}
+
+	private int rotateRight(int node) {
+		int left = this.lefts[node];
+		this.lefts[node] = this.rights[left];
+		this.rights[left] = node;
+		this.update(node);
+		return left;
+	}
+
+	private int rotateLeft(int node) {
+		int right = this.rights[node];
+		this.rights[node] = this.lefts[right];
+		this.lefts[right] = node;
+		this.update(node);
+		return right;
+	}
+
+	private void update(int node) {
+		this.subtreeSizes[node] = this.subtreeSizes[this.lefts[node]] + this.counts[node]
+				+ this.subtreeSizes[this.rights[node]];
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		SlidingWindowSelect window = new SlidingWindowSelect(3);
+		double [] series = {5, 1, 4, 2, 2, 8, 7};
+		System.out.print("Medians of the windows of 3 ([4.0, 2.0, 2.0, 2.0, 7.0]): [");
+		for (int i = 0; i < series.length; i++) {
+			window.add(series[i]);
+			if (window.size() == 3)
+				System.out.print(window.median() + (i + 1 < series.length ? ", " : "]\n"));
+		}
+		System.out.println("Batch medians, the same: " + Arrays.toString(medians(series, 3)));
+
+		// a rolling p90 of a long noisy series, checked against QuickSelect on a copy of every window
+		int n = 200000;
+		int windowSize = 1000;
+		int k = 900;
+		Random random = new Random(42);
+		double [] noisy = new double[n];
+		for (int i = 0; i < n; i++) {
+			noisy[i] = Math.round(random.nextGaussian() * 100) / 10.0;
+		}
+		QuickSelect quickSelect = new QuickSelect();
+		SlidingWindowSelect rolling = new SlidingWindowSelect(windowSize);
+		double [] batch = selectAll(noisy, windowSize, k);
+		int mismatches = 0;
+		for (int i = 0; i < n; i++) {
+			rolling.add(noisy[i]);
+			if (i >= windowSize - 1) {
+				double expected = quickSelect.quickSelect(Arrays.copyOfRange(noisy, i - windowSize + 1, i + 1), k);
+				if (rolling.select(k) != expected || batch[i - windowSize + 1] != expected)
+					mismatches++;
+			}
+		}
+		System.out.println("Rolling p90s differing from QuickSelect (0): " + mismatches);
+	}
+}
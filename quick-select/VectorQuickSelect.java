@@ -0,0 +1,323 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * QuickSelect for large lists of doubles, ints and longs with a partitioning kernel written with
+ * the Vector API, so a whole vector of numbers is compared to the pivot at once. The kernel
+ * partitions in place, like vectorized quicksorts do: one vector from each end of the range is
+ * held back so there is always room to write, the next vector is read from the end with less
+ * room, and its lanes less than the pivot are packed to the left and the others to the right.
+ * The packing shuffle comes from a lookup table indexed by the bits of the comparison mask
+ * (what Vector.compress does in newer JDKs), so every vector costs two stores and no branches.
+ *
+ * Ranges shorter than VECTOR_THRESHOLD, and ranges a vector partition fails to halve (e.g. when
+ * most numbers equal the pivot), are handed to the three-way scalar selection of QuickSelect
+ * and PrimitiveQuickSelect, which keeps the O(n) worst case. Setting the system property
+ * quickselect.vector to false makes every selection scalar.
+ *
+ * The Vector API is an incubator module: compile and run with
+ * --add-modules jdk.incubator.vector
+ * @author maxwellaladago
+ *
+ */
+public class VectorQuickSelect {
+	/**
+	 * Ranges at most this long are selected by the scalar selection
+	 */
+	static final int VECTOR_THRESHOLD = 1 << 12;
+	static final boolean ENABLED = !"false".equals(System.getProperty("quickselect.vector"));
+
+	// at most 8 lanes, so a table has at most 256 shuffles and the lane masks fit an int
+	private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED.length() > 8
+			? DoubleVector.SPECIES_512 : DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED.length() > 8
+			? LongVector.SPECIES_512 : LongVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED.length() > 8
+			? IntVector.SPECIES_256 : IntVector.SPECIES_PREFERRED;
+
+	// the shuffles packing the lanes selected by a mask at the start, or at the end, of a vector
+	private static final VectorShuffle<Double> [] DOUBLE_PACK_LOW = packLow(DOUBLE_SPECIES);
+	private static final VectorShuffle<Double> [] DOUBLE_PACK_HIGH = packHigh(DOUBLE_SPECIES);
+	private static final VectorShuffle<Long> [] LONG_PACK_LOW = packLow(LONG_SPECIES);
+	private static final VectorShuffle<Long> [] LONG_PACK_HIGH = packHigh(LONG_SPECIES);
+	private static final VectorShuffle<Integer> [] INT_PACK_LOW = packLow(INT_SPECIES);
+	private static final VectorShuffle<Integer> [] INT_PACK_HIGH = packHigh(INT_SPECIES);
+
+	private final QuickSelect quickSelect;
+	private final PrimitiveQuickSelect primitiveQuickSelect;
+
+	public VectorQuickSelect() {
+		this.quickSelect = new QuickSelect();
+		this.primitiveQuickSelect = new PrimitiveQuickSelect();
+	}
+
+	private static <E> VectorShuffle<E> [] packLow(VectorSpecies<E> species) {
+		return pack(species, false);
+	}
+
+	private static <E> VectorShuffle<E> [] packHigh(VectorSpecies<E> species) {
+		return pack(species, true);
+	}
+
+	/**
+	 * @param high whether the selected lanes go to the end of the vector instead of the start
+	 * @return a shuffle for every mask, keeping the selected lanes in order
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> VectorShuffle<E> [] pack(VectorSpecies<E> species, boolean high) {
+		int lanes = species.length();
+		VectorShuffle<E> [] shuffles = (VectorShuffle<E> []) new VectorShuffle<?>[1 << lanes];
+		int [] order = new int[lanes];
+		for (int mask = 0; mask < shuffles.length; mask++) {
+			int next = high ? lanes - Integer.bitCount(mask) : 0;
+			int other = high ? 0 : Integer.bitCount(mask);
+			for (int lane = 0; lane < lanes; lane++) {
+				if ((mask & (1 << lane)) != 0)
+					order[next++] = lane;
+				else
+					order[other++] = lane;
+			}
+			shuffles[mask] = VectorShuffle.fromArray(species, order, 0);
+		}
+		return shuffles;
+	}
+
+	/**
+	 * Selects an order statistic of a list of real numbers. The values are reordered in place.
+	 * @param values a list of real numbers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException
+	 */
+	public double quickSelect(double [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		int lowerIndex = 0;
+		int upperIndex = values.length;
+		int index = k - 1;
+		while (ENABLED && upperIndex - lowerIndex > VECTOR_THRESHOLD) {
+			int size = upperIndex - lowerIndex;
+			int split = this.partition(values, lowerIndex, upperIndex,
+					this.quickSelect.samplePivot(values, lowerIndex, upperIndex));
+			if (index < split)
+				upperIndex = split;
+			else
+				lowerIndex = split;
+			if (upperIndex - lowerIndex > size / 2)
+				break;
+		}
+		return this.quickSelect.select(values, lowerIndex, upperIndex, index);
+	}
+
+	/**
+	 * Selects an order statistic of a list of integers. The values are reordered in place.
+	 * @param values a list of integers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException
+	 */
+	public int quickSelect(int [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		int lowerIndex = 0;
+		int upperIndex = values.length;
+		int index = k - 1;
+		while (ENABLED && upperIndex - lowerIndex > VECTOR_THRESHOLD) {
+			int size = upperIndex - lowerIndex;
+			int split = this.partition(values, lowerIndex, upperIndex,
+					this.primitiveQuickSelect.samplePivot(values, lowerIndex, upperIndex));
+			if (index < split)
+				upperIndex = split;
+			else
+				lowerIndex = split;
+			if (upperIndex - lowerIndex > size / 2)
+				break;
+		}
+		return this.primitiveQuickSelect.select(values, lowerIndex, upperIndex, index);
+	}
+
+	/**
+	 * Selects an order statistic of a list of long integers. The values are reordered in place.
+	 * @param values a list of long integers from which to select an order statistic
+	 * @param k the i-th order statistic
+	 * @return the k-th order statistic among the values
+	 * @throws RuntimeException
+	 */
+	public long quickSelect(long [] values, int k) throws RuntimeException {
+		PrimitiveQuickSelect.checkOrderStatistic(k, values.length);
+		int lowerIndex = 0;
+		int upperIndex = values.length;
+		int index = k - 1;
+		while (ENABLED && upperIndex - lowerIndex > VECTOR_THRESHOLD) {
+			int size = upperIndex - lowerIndex;
+			int split = this.partition(values, lowerIndex, upperIndex,
+					this.primitiveQuickSelect.samplePivot(values, lowerIndex, upperIndex));
+			if (index < split)
+				upperIndex = split;
+			else
+				lowerIndex = split;
+			if (upperIndex - lowerIndex > size / 2)
+				break;
+		}
+		return this.primitiveQuickSelect.select(values, lowerIndex, upperIndex, index);
+	}
+
+	/**
+	 * Partitions a range in place into the numbers less than the pivot, followed by the others
+	 * (NaN included), without changing any number.
+	 * @param values the real numbers to partition
+	 * @param lowerIndex the index from which to start partitioning
+	 * @param upperIndex the index marking the end of the range
+	 * @param pivot the value to partition around
+	 * @return the first index of the numbers not less than the pivot
+	 */
+	int partition(double [] values, int lowerIndex, int upperIndex, double pivot) {
+		int lanes = DOUBLE_SPECIES.length();
+		int allLanes = (1 << lanes) - 1;
+		DoubleVector pivots = DoubleVector.broadcast(DOUBLE_SPECIES, pivot);
+		// the numbers held back, written last
+		DoubleVector first = DoubleVector.fromArray(DOUBLE_SPECIES, values, lowerIndex);
+		DoubleVector last = DoubleVector.fromArray(DOUBLE_SPECIES, values, upperIndex - lanes);
+		int readLeft = lowerIndex + lanes;
+		int readRight = upperIndex - lanes;
+		int writeLeft = lowerIndex;
+		int writeRight = upperIndex;
+		// both ends always have room for a whole vector
+		while (readRight - readLeft >= lanes) {
+			DoubleVector vector;
+			if (readLeft - writeLeft <= writeRight - readRight) {
+				vector = DoubleVector.fromArray(DOUBLE_SPECIES, values, readLeft);
+				readLeft += lanes;
+			} else {
+				readRight -= lanes;
+				vector = DoubleVector.fromArray(DOUBLE_SPECIES, values, readRight);
+			}
+			int lessBits = (int) vector.compare(VectorOperators.LT, pivots).toLong();
+			vector.rearrange(DOUBLE_PACK_LOW[lessBits]).intoArray(values, writeLeft);
+			vector.rearrange(DOUBLE_PACK_HIGH[~lessBits & allLanes]).intoArray(values, writeRight - lanes);
+			writeLeft += Integer.bitCount(lessBits);
+			writeRight -= lanes - Integer.bitCount(lessBits);
+		}
+
+		// the unread rest and the held back vectors exactly fill the gap between the writes
+		double [] rest = new double[readRight - readLeft + 2 * lanes];
+		System.arraycopy(values, readLeft, rest, 0, readRight - readLeft);
+		first.intoArray(rest, readRight - readLeft);
+		last.intoArray(rest, readRight - readLeft + lanes);
+		for (double value : rest) {
+			if (value < pivot)
+				values[writeLeft++] = value;
+			else
+				values[--writeRight] = value;
+		}
+		return writeLeft;
+	}
+
+	/**
+	 * The in-place vector partition for ints
+	 */
+	int partition(int [] values, int lowerIndex, int upperIndex, int pivot) {
+		int lanes = INT_SPECIES.length();
+		int allLanes = (1 << lanes) - 1;
+		IntVector pivots = IntVector.broadcast(INT_SPECIES, pivot);
+		IntVector first = IntVector.fromArray(INT_SPECIES, values, lowerIndex);
+		IntVector last = IntVector.fromArray(INT_SPECIES, values, upperIndex - lanes);
+		int readLeft = lowerIndex + lanes;
+		int readRight = upperIndex - lanes;
+		int writeLeft = lowerIndex;
+		int writeRight = upperIndex;
+		while (readRight - readLeft >= lanes) {
+			IntVector vector;
+			if (readLeft - writeLeft <= writeRight - readRight) {
+				vector = IntVector.fromArray(INT_SPECIES, values, readLeft);
+				readLeft += lanes;
+			} else {
+				readRight -= lanes;
+				vector = IntVector.fromArray(INT_SPECIES, values, readRight);
+			}
+			int lessBits = (int) vector.compare(VectorOperators.LT, pivots).toLong();
+			vector.rearrange(INT_PACK_LOW[lessBits]).intoArray(values, writeLeft);
+			vector.rearrange(INT_PACK_HIGH[~lessBits & allLanes]).intoArray(values, writeRight - lanes);
+			writeLeft += Integer.bitCount(lessBits);
+			writeRight -= lanes - Integer.bitCount(lessBits);
+		}
+
+		int [] rest = new int[readRight - readLeft + 2 * lanes];
+		System.arraycopy(values, readLeft, rest, 0, readRight - readLeft);
+		first.intoArray(rest, readRight - readLeft);
+		last.intoArray(rest, readRight - readLeft + lanes);
+		for (int value : rest) {
+			if (value < pivot)
+				values[writeLeft++] = value;
+			else
+				values[--writeRight] = value;
+		}
+		return writeLeft;
+	}
+
+	/**
+	 * The in-place vector partition for longs
+	 */
+	int partition(long [] values, int lowerIndex, int upperIndex, long pivot) {
+		int lanes = LONG_SPECIES.length();
+		int allLanes = (1 << lanes) - 1;
+		LongVector pivots = LongVector.broadcast(LONG_SPECIES, pivot);
+		LongVector first = LongVector.fromArray(LONG_SPECIES, values, lowerIndex);
+		LongVector last = LongVector.fromArray(LONG_SPECIES, values, upperIndex - lanes);
+		int readLeft = lowerIndex + lanes;
+		int readRight = upperIndex - lanes;
+		int writeLeft = lowerIndex;
+		int writeRight = upperIndex;
+		while (readRight - readLeft >= lanes) {
+			LongVector vector;
+			if (readLeft - writeLeft <= writeRight - readRight) {
+				vector = LongVector.fromArray(LONG_SPECIES, values, readLeft);
+				readLeft += lanes;
+			} else {
+				readRight -= lanes;
+				vector = LongVector.fromArray(LONG_SPECIES, values, readRight);
+			}
+			int lessBits = (int) vector.compare(VectorOperators.LT, pivots).toLong();
+			vector.rearrange(LONG_PACK_LOW[lessBits]).intoArray(values, writeLeft);
+			vector.rearrange(LONG_PACK_HIGH[~lessBits & allLanes]).intoArray(values, writeRight - lanes);
+			writeLeft += Integer.bitCount(lessBits);
+			writeRight -= lanes - Integer.bitCount(lessBits);
+		}
+
+		long [] rest = new long[readRight - readLeft + 2 * lanes];
+		System.arraycopy(values, readLeft, rest, 0, readRight - readLeft);
+		first.intoArray(rest, readRight - readLeft);
+		last.intoArray(rest, readRight - readLeft + lanes);
+		for (long value : rest) {
+			if (value < pivot)
+				values[writeLeft++] = value;
+			else
+				values[--writeRight] = value;
+		}
+		return writeLeft;
+	}
+
+	/**
+	 * A small test program.
+	 * @param args
+	 */
+	public static void main(String [] args) {
+		VectorQuickSelect quickSelect = new VectorQuickSelect();
+		int n = 10000000;
+		double [] reversed = new double[n];
+		int [] repeated = new int[n];
+		long [] shuffled = new long[n];
+		for (int i = 0; i < n; i++) {
+			reversed[i] = n - i;
+			repeated[i] = i % 1000;
+			shuffled[i] = (i * 7919L) % n;
+		}
+		System.out.println("The median of 1 to " + n + " reversed (" + n / 2 + ".0): "
+				+ quickSelect.quickSelect(reversed, n / 2));
+		System.out.println("The median of 0 to 999 repeated (499): " + quickSelect.quickSelect(repeated, n / 2));
+		System.out.println("The 1000-th smallest of 0 to " + (n - 1) + " shuffled (999): "
+				+ quickSelect.quickSelect(shuffled, 1000));
+	}
+}
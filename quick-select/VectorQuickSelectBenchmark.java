@@ -0,0 +1,88 @@
+import java.util.Random;
+
+/**
+ * Compares the scalar selections of QuickSelect and PrimitiveQuickSelect with VectorQuickSelect
+ * on lists of random doubles, ints and longs. Every size is first selected a few times to warm
+ * up the JIT, then the median is selected a few more times and the best time is reported. Every
+ * round selects from a fresh copy of the list; copying isn't timed.
+ *
+ * Usage: java --add-modules jdk.incubator.vector VectorQuickSelectBenchmark [maxSize]
+ * @author maxwellaladago
+ *
+ */
+public class VectorQuickSelectBenchmark {
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int DEFAULT_MAX_SIZE = 10000000;
+
+	// consumes results so the JIT can't remove the benchmarked calls
+	private static double blackHole;
+
+	private interface Selection {
+		void select(int size);
+	}
+
+	public static void main(String [] args) {
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_SIZE;
+		QuickSelect quickSelect = new QuickSelect();
+		PrimitiveQuickSelect primitiveQuickSelect = new PrimitiveQuickSelect();
+		VectorQuickSelect vectorQuickSelect = new VectorQuickSelect();
+		Random random = new Random(42);
+
+		System.out.printf("%-8s %12s %12s %12s %10s%n", "type", "size", "scalar ms", "vector ms", "speedup");
+		for (int size = 1000000; size <= maxSize; size *= 10) {
+			double [] doubles = new double[size];
+			int [] ints = new int[size];
+			long [] longs = new long[size];
+			for (int i = 0; i < size; i++) {
+				doubles[i] = random.nextDouble();
+				ints[i] = random.nextInt();
+				longs[i] = random.nextLong();
+			}
+			double [] doubleCopy = new double[size];
+			int [] intCopy = new int[size];
+			long [] longCopy = new long[size];
+
+			VectorQuickSelectBenchmark.compare("double", size,
+					n -> { System.arraycopy(doubles, 0, doubleCopy, 0, n); },
+					n -> { blackHole += quickSelect.quickSelect(doubleCopy, n / 2); },
+					n -> { blackHole += vectorQuickSelect.quickSelect(doubleCopy, n / 2); });
+			VectorQuickSelectBenchmark.compare("int", size,
+					n -> { System.arraycopy(ints, 0, intCopy, 0, n); },
+					n -> { blackHole += primitiveQuickSelect.quickSelect(intCopy, n / 2); },
+					n -> { blackHole += vectorQuickSelect.quickSelect(intCopy, n / 2); });
+			VectorQuickSelectBenchmark.compare("long", size,
+					n -> { System.arraycopy(longs, 0, longCopy, 0, n); },
+					n -> { blackHole += primitiveQuickSelect.quickSelect(longCopy, n / 2); },
+					n -> { blackHole += vectorQuickSelect.quickSelect(longCopy, n / 2); });
+		}
+		if (blackHole == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Times a scalar and a vector selection, each after a fresh copy of the list
+	 */
+	private static void compare(String type, int size, Selection copy, Selection scalar, Selection vector) {
+		long scalarTime = Long.MAX_VALUE;
+		long vectorTime = Long.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+			copy.select(size);
+			long start = System.nanoTime();
+			scalar.select(size);
+			long time = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS)
+				scalarTime = Math.min(scalarTime, time);
+
+			copy.select(size);
+			start = System.nanoTime();
+			vector.select(size);
+			time = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS)
+				vectorTime = Math.min(vectorTime, time);
+		}
+		System.out.printf("%-8s %12d %12.1f %12.1f %10.2f%n", type, size, scalarTime / 1e6, vectorTime / 1e6,
+				(double) scalarTime / vectorTime);
+	}
+}